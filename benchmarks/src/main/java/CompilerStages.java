@@ -0,0 +1,123 @@
+import assembly.instructions.Instruction;
+import ast.ArrayElem;
+import ast.AssignLHS;
+import ast.AssignRHS;
+import ast.Expression;
+import ast.Function;
+import ast.Program;
+import ast.Statement;
+import benchmark.Stages;
+import java.util.List;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/* Exposes the compiler phases to the benchmarks, see benchmark.Stages. */
+public class CompilerStages implements Stages {
+
+  @Override
+  public CommonTokenStream tokenize(CharStream input) {
+    CommonTokenStream tokens = Compiler.tokenize(input);
+    tokens.fill();
+    return tokens;
+  }
+
+  @Override
+  public ParseTree parse(CommonTokenStream tokens) {
+    return Compiler.parse((LexedTokenStream) tokens);
+  }
+
+  @Override
+  public Program buildAst(ParseTree tree) {
+    return (Program) new ASTBuilder().visit(tree);
+  }
+
+  @Override
+  public int analyse(Program ast) {
+    SemanticAnalysis semanticAnalysis = new SemanticAnalysis();
+    semanticAnalysis.traverse(ast);
+    return semanticAnalysis.getNumberOfErrors();
+  }
+
+  @Override
+  public void evaluate(Program ast) {
+    new Evaluator().visitProgram(ast);
+  }
+
+  @Override
+  public int countNodes(Program ast) {
+    int nodes = countNodes(ast.getStatement());
+    for (Function function : ast.getFunctions()) {
+      nodes += countNodes(function.getStatement());
+    }
+    return nodes;
+  }
+
+  @Override
+  public List<Instruction> generate(Program ast) {
+    return new Converter().generate(ast);
+  }
+
+  @Override
+  public List<Instruction> compile(CharStream input) {
+    return Compiler.generateAssembly(input);
+  }
+
+  private static int countNodes(Statement statement) {
+    if (statement == null) {
+      return 0;
+    }
+    int nodes = 1 + countNodes(statement.getExpression()) + countNodes(statement.getLHS())
+        + countNodes(statement.getRHS()) + countNodes(statement.getStatement1())
+        + countNodes(statement.getStatement2());
+    if (statement.getStatements() != null) {
+      for (Statement child : statement.getStatements()) {
+        nodes += countNodes(child);
+      }
+    }
+    return nodes;
+  }
+
+  private static int countNodes(AssignLHS lhs) {
+    if (lhs == null) {
+      return 0;
+    }
+    return countNodes(lhs.getArrayElem())
+        + (lhs.getPairElem() == null ? 0 : countNodes(lhs.getPairElem().getExpression()));
+  }
+
+  private static int countNodes(AssignRHS rhs) {
+    if (rhs == null) {
+      return 0;
+    }
+    int nodes = countNodes(rhs.getExpression1()) + countNodes(rhs.getExpression2())
+        + countNodes(rhs.getArray()) + countNodes(rhs.getArgList());
+    if (rhs.getPairElem() != null) {
+      nodes += countNodes(rhs.getPairElem().getExpression());
+    }
+    return nodes;
+  }
+
+  private static int countNodes(ArrayElem arrayElem) {
+    return arrayElem == null ? 0 : countNodes(arrayElem.getExpression());
+  }
+
+  private static int countNodes(List<Expression> expressions) {
+    int nodes = 0;
+    if (expressions != null) {
+      for (Expression expression : expressions) {
+        nodes += countNodes(expression);
+      }
+    }
+    return nodes;
+  }
+
+  private static int countNodes(Expression expression) {
+    if (expression == null) {
+      return 0;
+    }
+    return 1 + countNodes(expression.getArrayElem()) + countNodes(expression.getExpression1())
+        + countNodes(expression.getExpression2());
+  }
+
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import ast.Program;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/* Heap retained by the abstract syntax trees of generated programs, per statement and expression
+   node. Each tree is built from its parse tree and analysed, so the type and variable
+   annotations are counted too. The heap is measured after a full collection with the trees
+   alive and again once they are released. Run with a fixed heap, e.g. java -Xms2g -Xmx2g, for
+   stable numbers. */
+public class AstFootprint {
+
+  private static final long SEED = 42;
+  private static final int PROGRAMS = 8;
+
+  public static void main(String[] args) {
+    Stages stages = Stages.load();
+
+    measure(stages, "functions", 2000, 50, 4);
+    measure(stages, "statements", 10, 4000, 4);
+    measure(stages, "depth", 10, 50, 400);
+  }
+
+  private static void measure(Stages stages, String shape, int functions, int statements,
+      int depth) {
+
+    List<ParseTree> trees = new ArrayList<>();
+    for (int i = 0; i < PROGRAMS; i++) {
+      String source = ProgramGenerator.generate(SEED + i, functions, statements, depth);
+      trees.add(stages.parse(stages.tokenize(CharStreams.fromString(source))));
+    }
+
+    List<Program> asts = new ArrayList<>();
+    long nodes = 0;
+    for (ParseTree tree : trees) {
+      Program ast = stages.buildAst(tree);
+      stages.analyse(ast);
+      nodes += stages.countNodes(ast);
+      asts.add(ast);
+    }
+
+    long withAsts = usedHeap();
+    asts.clear();
+    long retained = withAsts - usedHeap();
+    trees.clear();
+
+    System.out.printf("%-10s %9d nodes %11d bytes %6.1f bytes/node%n",
+        shape, nodes, retained, (double) retained / nodes);
+  }
+
+  private static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+}
@@ -0,0 +1,49 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.antlr.v4.runtime.CharStreams;
+
+/* The source programs a benchmark runs over. */
+public class Corpus {
+
+  /* Reads every .wacc file under directory, in a stable order, keeping only the programs the
+     compiler turns into assembly so each benchmark measures the same, complete work. */
+  public static List<String> load(String directory, Stages stages) {
+
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(Path.of(directory))) {
+      files = walk.filter(file -> file.toString().endsWith(".wacc"))
+          .sorted()
+          .collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    List<String> sources = new ArrayList<>();
+    for (Path file : files) {
+      try {
+        String source = Files.readString(file, StandardCharsets.UTF_8);
+        stages.compile(CharStreams.fromString(source));
+        sources.add(source);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (RuntimeException e) {
+        /* Rejected or not yet supported by the code generator. */
+      }
+    }
+
+    if (sources.isEmpty()) {
+      throw new IllegalStateException("No compilable .wacc files under " + directory);
+    }
+    return sources;
+  }
+
+}
@@ -0,0 +1,49 @@
+package benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.CharStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Whole-pipeline throughput, from source text to instructions. Each operation compiles the next
+   file of the corpus, so the score is in files per second averaged over the corpus. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@State(Scope.Thread)
+public class PipelineBenchmark {
+
+  @Param("wacc_examples/valid")
+  public String corpus;
+
+  private Stages stages;
+  private List<String> sources;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    stages = Stages.load();
+    sources = Corpus.load(corpus, stages);
+  }
+
+  @Benchmark
+  public Object compileFile() {
+    String source = sources.get(next);
+    next = (next + 1) % sources.size();
+    return stages.compile(CharStreams.fromString(source));
+  }
+
+}
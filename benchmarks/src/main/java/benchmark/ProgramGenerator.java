@@ -0,0 +1,183 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/* Generates type-correct WACC programs whose size can be scaled along three independent
+   dimensions: the number of functions, the length of the statement sequence in main and the
+   nesting depth of one expression in main. Everything else stays small, so each dimension can be
+   measured on its own. The same seed and shape always give the same program.
+
+   Divisions and modulos only ever have a non-zero literal on the right, so constant folding
+   cannot divide by zero. */
+public class ProgramGenerator {
+
+  private static final int FUNCTION_STATEMENTS = 5;
+  private static final int SHALLOW_DEPTH = 2;
+
+  private final Random random;
+  private final StringBuilder program = new StringBuilder();
+
+  private final List<String> intVariables = new ArrayList<>();
+  private final List<String> boolVariables = new ArrayList<>();
+  private int functionsDeclared;
+  private int variablesDeclared;
+
+  public ProgramGenerator(long seed) {
+    this.random = new Random(seed);
+  }
+
+  public static String generate(long seed, int functions, int statements, int depth) {
+    return new ProgramGenerator(seed).program(functions, statements, depth);
+  }
+
+  private String program(int functions, int statements, int depth) {
+    program.append("begin\n");
+
+    for (int i = 0; i < functions; i++) {
+      function();
+    }
+
+    intVariables.clear();
+    boolVariables.clear();
+    declareInt("  ", literal());
+    for (int i = 0; i < statements; i++) {
+      statement("  ");
+    }
+    declareInt("  ", intExpression(depth));
+    program.append("  println ").append(pick(intVariables)).append("\nend\n");
+
+    return program.toString();
+  }
+
+  /* A function over two int parameters, which may call any function declared before it. */
+  private void function() {
+    intVariables.clear();
+    boolVariables.clear();
+    intVariables.add("a");
+    intVariables.add("b");
+
+    program.append("  int f").append(functionsDeclared).append("(int a, int b) is\n");
+    for (int i = 0; i < FUNCTION_STATEMENTS; i++) {
+      statement("    ");
+    }
+    program.append("    return ").append(intExpression(SHALLOW_DEPTH)).append("\n  end\n");
+    functionsDeclared++;
+  }
+
+  private void statement(String indent) {
+    switch (random.nextInt(7)) {
+      case 0:
+        declareInt(indent, intExpression(SHALLOW_DEPTH));
+        break;
+      case 1:
+        declareBool(indent, boolExpression(SHALLOW_DEPTH));
+        break;
+      case 2:
+        program.append(indent).append(pick(intVariables)).append(" = ")
+            .append(intExpression(SHALLOW_DEPTH)).append(" ;\n");
+        break;
+      case 3:
+        program.append(indent).append("if ").append(boolExpression(SHALLOW_DEPTH))
+            .append(" then ").append(pick(intVariables)).append(" = ")
+            .append(intExpression(SHALLOW_DEPTH))
+            .append(" else ").append(pick(intVariables)).append(" = ")
+            .append(intExpression(SHALLOW_DEPTH)).append(" fi ;\n");
+        break;
+      case 4:
+        String counter = pick(intVariables);
+        program.append(indent).append("while ").append(counter).append(" < ").append(literal())
+            .append(" do ").append(counter).append(" = ").append(counter).append(" + 1 done ;\n");
+        break;
+      case 5:
+        if (functionsDeclared > 0) {
+          declareInt(indent, "call f" + random.nextInt(functionsDeclared) + "("
+              + intExpression(SHALLOW_DEPTH) + ", " + intExpression(SHALLOW_DEPTH) + ")");
+          break;
+        }
+        declareInt(indent, intExpression(SHALLOW_DEPTH));
+        break;
+      default:
+        program.append(indent).append("println ").append(pick(intVariables)).append(" ;\n");
+        break;
+    }
+  }
+
+  private void declareInt(String indent, String rhs) {
+    String name = "v" + variablesDeclared++;
+    program.append(indent).append("int ").append(name).append(" = ").append(rhs).append(" ;\n");
+    intVariables.add(name);
+  }
+
+  private void declareBool(String indent, String rhs) {
+    String name = "v" + variablesDeclared++;
+    program.append(indent).append("bool ").append(name).append(" = ").append(rhs).append(" ;\n");
+    boolVariables.add(name);
+  }
+
+  /* An int expression nested exactly depth operators deep. One operand of every operator carries
+     the nesting and the other is a leaf, so the expression grows linearly with depth. */
+  private String intExpression(int depth) {
+    if (depth == 0) {
+      return random.nextInt(4) == 0 ? literal() : pick(intVariables);
+    }
+
+    String nested = intExpression(depth - 1);
+    String leaf = intExpression(0);
+    switch (random.nextInt(5)) {
+      case 0:
+        return "(" + nested + " / " + (random.nextInt(9) + 1) + ")";
+      case 1:
+        return "(" + nested + " % " + (random.nextInt(9) + 1) + ")";
+      case 2:
+        return random.nextBoolean() ? "(" + nested + " * " + leaf + ")"
+            : "(" + leaf + " * " + nested + ")";
+      case 3:
+        return random.nextBoolean() ? "(" + nested + " - " + leaf + ")"
+            : "(" + leaf + " - " + nested + ")";
+      default:
+        return random.nextBoolean() ? "(" + nested + " + " + leaf + ")"
+            : "(" + leaf + " + " + nested + ")";
+    }
+  }
+
+  private String boolExpression(int depth) {
+    if (depth == 0) {
+      if (boolVariables.isEmpty() || random.nextInt(4) == 0) {
+        return random.nextBoolean() ? "true" : "false";
+      }
+      return pick(boolVariables);
+    }
+
+    switch (random.nextInt(4)) {
+      case 0:
+        return "(" + intExpression(depth - 1) + " < " + intExpression(0) + ")";
+      case 1:
+        return "(" + boolExpression(depth - 1) + " && " + boolExpression(0) + ")";
+      case 2:
+        return "(" + boolExpression(depth - 1) + " || " + boolExpression(0) + ")";
+      default:
+        return "!" + boolExpression(depth - 1);
+    }
+  }
+
+  private String literal() {
+    return String.valueOf(random.nextInt(100));
+  }
+
+  private String pick(List<String> variables) {
+    return variables.get(random.nextInt(variables.size()));
+  }
+
+  /* Usage: ProgramGenerator seed functions statements depth, printing the program. */
+  public static void main(String[] args) {
+    if (args.length != 4) {
+      System.err.println("usage: ProgramGenerator <seed> <functions> <statements> <depth>");
+      System.exit(1);
+    }
+    System.out.print(generate(Long.parseLong(args[0]), Integer.parseInt(args[1]),
+        Integer.parseInt(args[2]), Integer.parseInt(args[3])));
+  }
+
+}
@@ -0,0 +1,69 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.CharStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Compile time of generated programs as one dimension of their shape grows, with the others held
+   at a small fixed size. Doubling scale doubles the input, so the scores should double too; a
+   steeper curve is a complexity regression. Run with -prof gc to get the allocated bytes per
+   compilation alongside, and -rf csv to plot both against size. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Thread)
+public class ScalingBenchmark {
+
+  private static final long SEED = 42;
+
+  @Param({"functions", "statements", "depth"})
+  public String dimension;
+
+  @Param({"1", "2", "4", "8", "16"})
+  public int scale;
+
+  private Stages stages;
+  private String source;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    int functions = 10;
+    int statements = 50;
+    int depth = 4;
+    switch (dimension) {
+      case "functions":
+        functions = 125 * scale;
+        break;
+      case "statements":
+        statements = 250 * scale;
+        break;
+      case "depth":
+        depth = 25 * scale;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown dimension " + dimension);
+    }
+
+    stages = Stages.load();
+    source = ProgramGenerator.generate(SEED, functions, statements, depth);
+  }
+
+  @Benchmark
+  public Object compile() {
+    return stages.compile(CharStreams.fromString(source));
+  }
+
+}
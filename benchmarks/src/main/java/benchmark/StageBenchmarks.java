@@ -0,0 +1,150 @@
+package benchmark;
+
+import ast.Program;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/* The time each compiler phase takes over the whole corpus. Every benchmark starts from the
+   output of the phases before it, prepared outside the measurement. The semantic analysis,
+   the evaluator and the code generator annotate or rewrite the AST, so they get freshly built
+   trees before every invocation. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class StageBenchmarks {
+
+  @State(Scope.Thread)
+  public static class Inputs {
+
+    @Param("wacc_examples/valid")
+    public String corpus;
+
+    Stages stages;
+    List<String> sources;
+    List<CommonTokenStream> tokens = new ArrayList<>();
+    List<ParseTree> trees = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      stages = Stages.load();
+      sources = Corpus.load(corpus, stages);
+      for (String source : sources) {
+        CommonTokenStream sourceTokens = stages.tokenize(CharStreams.fromString(source));
+        tokens.add(sourceTokens);
+        trees.add(stages.parse(sourceTokens));
+      }
+    }
+
+    List<Program> buildAsts() {
+      List<Program> asts = new ArrayList<>();
+      for (ParseTree tree : trees) {
+        asts.add(stages.buildAst(tree));
+      }
+      return asts;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class BuiltAsts {
+
+    List<Program> asts;
+
+    @Setup(Level.Invocation)
+    public void setUp(Inputs inputs) {
+      asts = inputs.buildAsts();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class AnalysedAsts {
+
+    List<Program> asts;
+
+    @Setup(Level.Invocation)
+    public void setUp(Inputs inputs) {
+      asts = inputs.buildAsts();
+      for (Program ast : asts) {
+        inputs.stages.analyse(ast);
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class EvaluatedAsts {
+
+    List<Program> asts;
+
+    @Setup(Level.Invocation)
+    public void setUp(Inputs inputs) {
+      asts = inputs.buildAsts();
+      for (Program ast : asts) {
+        inputs.stages.analyse(ast);
+        inputs.stages.evaluate(ast);
+      }
+    }
+  }
+
+  @Benchmark
+  public void tokenize(Inputs inputs, Blackhole blackhole) {
+    for (String source : inputs.sources) {
+      blackhole.consume(inputs.stages.tokenize(CharStreams.fromString(source)));
+    }
+  }
+
+  /* The lexed tokens are reused, rewinding each stream to its first token. */
+  @Benchmark
+  public void parse(Inputs inputs, Blackhole blackhole) {
+    for (CommonTokenStream tokens : inputs.tokens) {
+      tokens.seek(0);
+      blackhole.consume(inputs.stages.parse(tokens));
+    }
+  }
+
+  @Benchmark
+  public void buildAst(Inputs inputs, Blackhole blackhole) {
+    for (ParseTree tree : inputs.trees) {
+      blackhole.consume(inputs.stages.buildAst(tree));
+    }
+  }
+
+  @Benchmark
+  public void semanticAnalysis(Inputs inputs, BuiltAsts built, Blackhole blackhole) {
+    for (Program ast : built.asts) {
+      blackhole.consume(inputs.stages.analyse(ast));
+    }
+  }
+
+  @Benchmark
+  public void evaluate(Inputs inputs, AnalysedAsts analysed) {
+    for (Program ast : analysed.asts) {
+      inputs.stages.evaluate(ast);
+    }
+  }
+
+  @Benchmark
+  public void codegen(Inputs inputs, EvaluatedAsts evaluated, Blackhole blackhole) {
+    for (Program ast : evaluated.asts) {
+      blackhole.consume(inputs.stages.generate(ast));
+    }
+  }
+
+}
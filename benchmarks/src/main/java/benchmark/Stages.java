@@ -0,0 +1,43 @@
+package benchmark;
+
+import assembly.instructions.Instruction;
+import ast.Program;
+import java.util.List;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/* The compiler phases, one method each. The compiler classes live in the unnamed package, which
+   named packages cannot import, so the implementation is the CompilerStages class next to them
+   and is looked up by name once. */
+public interface Stages {
+
+  /* Lexes the whole input up front. */
+  CommonTokenStream tokenize(CharStream input);
+
+  ParseTree parse(CommonTokenStream tokens);
+
+  Program buildAst(ParseTree tree);
+
+  /* Returns the number of semantic errors. */
+  int analyse(Program ast);
+
+  void evaluate(Program ast);
+
+  /* The number of statement and expression nodes in the tree. */
+  int countNodes(Program ast);
+
+  List<Instruction> generate(Program ast);
+
+  /* Runs every phase above, as the compiler does for one file. */
+  List<Instruction> compile(CharStream input);
+
+  static Stages load() {
+    try {
+      return (Stages) Class.forName("CompilerStages").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
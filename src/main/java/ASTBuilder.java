@@ -1,16 +1,25 @@
-import static java.lang.System.exit;
-
-
 import antlr.BasicParser;
 import antlr.BasicParserBaseVisitor;
 import ast.*;
 
 import javax.swing.plaf.nimbus.State;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import org.antlr.v4.runtime.tree.TerminalNode;
 
 public class ASTBuilder extends BasicParserBaseVisitor<Object> {
 
+  /* Every occurrence of a name shares one String, as names repeat throughout a program. */
+  private final Map<String, String> identifiers = new HashMap<>();
+
+  private String identifier(TerminalNode ident) {
+    return identifiers.computeIfAbsent(ident.getText(), name -> name);
+  }
+
   //PROGRAM
 
   @Override
@@ -31,7 +40,7 @@ public class ASTBuilder extends BasicParserBaseVisitor<Object> {
   @Override
   public Function visitFunc(BasicParser.FuncContext ctx) {
     Type returnType = (Type) this.visit(ctx.type());
-    String ident = ctx.IDENT().getText();
+    String ident = identifier(ctx.IDENT());
     List<Param> params = visitParamList(ctx.paramList());
     Statement statement = (Statement) this.visit(ctx.stat());
 
@@ -48,7 +57,7 @@ public class ASTBuilder extends BasicParserBaseVisitor<Object> {
   @Override
   public Statement visitDeclaration(BasicParser.DeclarationContext ctx) {
     Type type = (Type) this.visit(ctx.type());
-    String ident = ctx.IDENT().getText();
+    String ident = identifier(ctx.IDENT());
     AssignRHS rhs = (AssignRHS) this.visit(ctx.assignRHS());
     return new StatementBuilder().buildDeclaration(type, ident, rhs);
   }
@@ -128,10 +137,26 @@ public class ASTBuilder extends BasicParserBaseVisitor<Object> {
 
   @Override
   public Statement visitSemi_colon(BasicParser.Semi_colonContext ctx) {
-    Statement statement1 = (Statement) visit(ctx.stat(0));
-    Statement statement2 = (Statement) visit(ctx.stat(1));
 
-    return new StatementBuilder().buildSemiColon(statement1, statement2);
+    /* The parse tree nests one level per semicolon, so walk it with an explicit stack and
+       collect the statements into a single flat sequence in program order. */
+    ArrayList<Statement> statements = new ArrayList<>();
+    Deque<BasicParser.StatContext> pending = new ArrayDeque<>();
+    pending.push(ctx);
+
+    while (!pending.isEmpty()) {
+      BasicParser.StatContext stat = pending.pop();
+      if (stat instanceof BasicParser.Semi_colonContext) {
+        BasicParser.Semi_colonContext sequence = (BasicParser.Semi_colonContext) stat;
+        pending.push(sequence.stat(1));
+        pending.push(sequence.stat(0));
+      } else {
+        statements.add((Statement) visit(stat));
+      }
+    }
+    statements.trimToSize();
+
+    return new StatementBuilder().buildSequence(statements);
   }
 
   //PARAMS
@@ -154,7 +179,7 @@ public class ASTBuilder extends BasicParserBaseVisitor<Object> {
   @Override
   public Param visitParam(BasicParser.ParamContext ctx) {
     Type type = (Type) this.visit(ctx.type());
-    String ident = ctx.IDENT().getText();
+    String ident = identifier(ctx.IDENT());
     return new Param(type, ident);
   }
 
@@ -222,7 +247,7 @@ public class ASTBuilder extends BasicParserBaseVisitor<Object> {
 
   @Override
   public AssignLHS visitIdentLHS(BasicParser.IdentLHSContext ctx) {
-    return new AssignLHSBuilder().buildIdentLHS(ctx.IDENT().getText());
+    return new AssignLHSBuilder().buildIdentLHS(identifier(ctx.IDENT()));
   }
 
   @Override
@@ -239,13 +264,13 @@ public class ASTBuilder extends BasicParserBaseVisitor<Object> {
 
   @Override
   public ArrayElem visitArrayElem(BasicParser.ArrayElemContext ctx) {
-    List<Expression> expressions = new ArrayList<>();
+    List<Expression> expressions = new ArrayList<>(ctx.expr().size());
 
     for (int i = 0; i < ctx.expr().size(); i++) {
       expressions.add((Expression) this.visit(ctx.expr(i)));
     }
 
-    return new ArrayElem(ctx.IDENT().getText(), expressions);
+    return new ArrayElem(identifier(ctx.IDENT()), expressions);
   }
 
   //PAIR-ELEM
@@ -271,7 +296,7 @@ public class ASTBuilder extends BasicParserBaseVisitor<Object> {
 
   @Override
   public AssignRHS visitArrayRHS(BasicParser.ArrayRHSContext ctx) {
-    List<Expression> expressions = new ArrayList<>();
+    List<Expression> expressions = new ArrayList<>(ctx.arrayLiter().expr().size());
 
     for (int i = 0; i < ctx.arrayLiter().expr().size(); i++) {
       expressions.add((Expression) this.visit(ctx.arrayLiter().expr(i)));
@@ -298,8 +323,8 @@ public class ASTBuilder extends BasicParserBaseVisitor<Object> {
   @Override
   public AssignRHS visitCallRHS(BasicParser.CallRHSContext ctx) {
 
-    List<Expression> expressions = new ArrayList<>();
-    String functionIdent = ctx.IDENT().getText();
+    List<Expression> expressions = new ArrayList<>(ctx.argList().expr().size());
+    String functionIdent = identifier(ctx.IDENT());
 
     for (int i = 0; i < ctx.argList().expr().size(); i++) {
       expressions.add((Expression) this.visit(ctx.argList().expr(i)));
@@ -322,8 +347,7 @@ public class ASTBuilder extends BasicParserBaseVisitor<Object> {
     long min = (long) -Math.pow(2, 31);
     long value = Long.parseLong(ctx.INTEGER().getText());
     if (value > max | value < min) {
-      System.out.println("#syntax_error: Number out of bounds#");
-      exit(100);
+      throw new CompileError(100, List.of("#syntax_error: Number out of bounds#"));
     }
     return Long.parseLong(ctx.INTEGER().getText());
   }
@@ -402,7 +426,7 @@ public class ASTBuilder extends BasicParserBaseVisitor<Object> {
   //IDENT-EXPR
   @Override
   public Expression visitIdentExpr(BasicParser.IdentExprContext ctx) {
-    return new ExpressionBuilder().buildIdentExpr(ctx.IDENT().getText());
+    return new ExpressionBuilder().buildIdentExpr(identifier(ctx.IDENT()));
   }
 
   //ARRAY-EXPR
@@ -60,10 +60,10 @@ public class ASTVisitor<T> {
         return visitWhileStatement(statement);
       case BEGIN:
         return visitBeginStatement(statement);
-      /* Returns the instructions of both statements appended together */
+      /* Returns the instructions of every statement appended together */
       //TODO: Apply Sethi-Ullman weights?
-      case CONCAT:
-        return visitConcatStatement(statement);
+      case SEQUENCE:
+        return visitSequenceStatement(statement);
     }
     return null;
   }
@@ -243,17 +243,16 @@ public class ASTVisitor<T> {
   }
 
   /**
-   * <p>Visits a concatenation statement.</p>
+   * <p>Visits a sequence of statements separated by semicolons.</p>
    *
    * <p>Can call:</p>
    * <p><b>getStatType()</b> - Returns a StatType enum.</p>
-   * <p><b>getStatement1()</b> - Returns the body of the first statement.</p>
-   * <p><b>getStatement2()</b> - Returns the body of the second statement.</p>
+   * <p><b>getStatements()</b> - Returns the statements in program order.</p>
    *
-   * @param statement while statement
-   * @return returns the assembly instructions for a while statement
+   * @param statement sequence statement
+   * @return returns the assembly instructions for a sequence statement
    */
-  public T visitConcatStatement(Statement statement) {
+  public T visitSequenceStatement(Statement statement) {
     return null;
   }
 
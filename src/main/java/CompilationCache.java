@@ -0,0 +1,229 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/* An on-disk cache of compiler output keyed on the SHA-256 of the compiler build, the compiler
+   flags and the source bytes. Successful compilations are stored as <key>.s, holding the number of
+   lexer errors the compilation reported on its first line, then those errors and then the
+   assembly. Rejected ones are stored as <key>.err, whose first line holds the exit code, the
+   stream the messages go to ("stdout" or "stderr") and the number of lexer errors reported before
+   the rejection, followed by those errors and then the error messages. A hit reports the lexer
+   errors again, so the output does not depend on whether the cache was used.
+
+   Entries are written to a temporary file and moved into place atomically, so several compiler
+   processes can share one directory. Hits refresh the modification time, and the least recently
+   used entries are deleted whenever the directory grows beyond its size limit. */
+public class CompilationCache {
+
+  public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+  private static String compilerFingerprint;
+
+  private final Path directory;
+  private final long maxBytes;
+
+  public CompilationCache(Path directory, long maxBytes) throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    Files.createDirectories(directory);
+  }
+
+  public String key(byte[] source, String flags) throws IOException {
+    MessageDigest digest = sha256();
+    digest.update(getCompilerFingerprint().getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+    digest.update(flags.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+    digest.update(source);
+    return toHex(digest.digest());
+  }
+
+  /* Copies a cached assembly file to target and passes the lexer errors stored with it to
+     warnings, returning false on a miss. */
+  public boolean copyAssembly(String key, Path target, Consumer<String> warnings)
+      throws IOException {
+    Path entry = directory.resolve(key + ".s");
+    try (BufferedReader reader = Files.newBufferedReader(entry, StandardCharsets.UTF_8)) {
+      int count = Integer.parseInt(reader.readLine());
+      List<String> lexerErrors = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        lexerErrors.add(reader.readLine());
+      }
+      try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+        reader.transferTo(writer);
+      }
+      lexerErrors.forEach(warnings);
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+    touch(entry);
+    return true;
+  }
+
+  /* Returns the cached rejection of a source, or null on a miss, after passing the lexer errors
+     reported before it to warnings. */
+  public CompileError getError(String key, Consumer<String> warnings) throws IOException {
+    Path entry = directory.resolve(key + ".err");
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(entry, StandardCharsets.UTF_8);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    touch(entry);
+    String[] status = lines.get(0).split(" ");
+    int count = Integer.parseInt(status[2]);
+    lines.subList(1, 1 + count).forEach(warnings);
+    return new CompileError(Integer.parseInt(status[0]),
+        new ArrayList<>(lines.subList(1 + count, lines.size())), status[1].equals("stderr"));
+  }
+
+  public void putAssembly(String key, Path assembly, List<String> warnings) throws IOException {
+    List<String> header = new ArrayList<>();
+    header.add(String.valueOf(warnings.size()));
+    header.addAll(warnings);
+
+    Path temp = Files.createTempFile(directory, key, ".tmp");
+    Files.write(temp, header, StandardCharsets.UTF_8);
+    Files.write(temp, Files.readAllBytes(assembly), StandardOpenOption.APPEND);
+    publish(temp, directory.resolve(key + ".s"));
+  }
+
+  public void putError(String key, CompileError error, List<String> warnings)
+      throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add(error.getExitCode() + (error.isFromParser() ? " stderr " : " stdout ")
+        + warnings.size());
+    lines.addAll(warnings);
+    lines.addAll(error.getErrorMsgs());
+
+    Path temp = Files.createTempFile(directory, key, ".tmp");
+    Files.write(temp, lines, StandardCharsets.UTF_8);
+    publish(temp, directory.resolve(key + ".err"));
+  }
+
+  private void publish(Path temp, Path entry) throws IOException {
+    try {
+      Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+    }
+    evict();
+  }
+
+  private void touch(Path entry) {
+    try {
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      /* The entry may have just been evicted by another process; the hit is still valid. */
+    }
+  }
+
+  /* Deletes least recently used entries until the cache fits within maxBytes. */
+  private void evict() throws IOException {
+    List<Path> files;
+    try (Stream<Path> list = Files.list(directory)) {
+      files = list.filter(file -> !file.toString().endsWith(".tmp")).collect(Collectors.toList());
+    }
+
+    long totalBytes = 0;
+    List<Entry> entries = new ArrayList<>();
+    for (Path file : files) {
+      try {
+        Entry entry = new Entry(file, Files.getLastModifiedTime(file).toMillis(), Files.size(file));
+        entries.add(entry);
+        totalBytes += entry.size;
+      } catch (NoSuchFileException e) {
+        /* Evicted concurrently by another compiler. */
+      }
+    }
+
+    entries.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+    for (Entry entry : entries) {
+      if (totalBytes <= maxBytes) {
+        break;
+      }
+      Files.deleteIfExists(entry.path);
+      totalBytes -= entry.size;
+    }
+  }
+
+  private static class Entry {
+
+    private final Path path;
+    private final long lastUsed;
+    private final long size;
+
+    private Entry(Path path, long lastUsed, long size) {
+      this.path = path;
+      this.lastUsed = lastUsed;
+      this.size = size;
+    }
+  }
+
+  /* Hashes the classes the compiler was loaded from, so any rebuild invalidates the cache. */
+  private static synchronized String getCompilerFingerprint() throws IOException {
+    if (compilerFingerprint != null) {
+      return compilerFingerprint;
+    }
+
+    Path location;
+    try {
+      location = Path.of(
+          CompilationCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+
+    MessageDigest digest = sha256();
+    if (Files.isDirectory(location)) {
+      List<Path> classFiles;
+      try (Stream<Path> walk = Files.walk(location)) {
+        classFiles = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+      }
+      for (Path classFile : classFiles) {
+        digest.update(location.relativize(classFile).toString().getBytes(StandardCharsets.UTF_8));
+        digest.update(Files.readAllBytes(classFile));
+      }
+    } else {
+      digest.update(Files.readAllBytes(location));
+    }
+
+    compilerFingerprint = toHex(digest.digest());
+    return compilerFingerprint;
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+}
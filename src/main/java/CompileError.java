@@ -0,0 +1,45 @@
+import java.io.PrintStream;
+import java.util.List;
+
+/* Raised when a source file is rejected, carrying the exit code the command line compiler uses:
+   100 for syntax errors and 200 for semantic errors. */
+public class CompileError extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int exitCode;
+  private final List<String> errorMsgs;
+
+  /* Whether the messages are the parser's, which ANTLR reports on stderr. */
+  private final boolean fromParser;
+
+  public CompileError(int exitCode, List<String> errorMsgs) {
+    this(exitCode, errorMsgs, false);
+  }
+
+  public CompileError(int exitCode, List<String> errorMsgs, boolean fromParser) {
+    super(String.join("\n", errorMsgs));
+    this.exitCode = exitCode;
+    this.errorMsgs = errorMsgs;
+    this.fromParser = fromParser;
+  }
+
+  public int getExitCode() {
+    return exitCode;
+  }
+
+  public List<String> getErrorMsgs() {
+    return errorMsgs;
+  }
+
+  public boolean isFromParser() {
+    return fromParser;
+  }
+
+  /* Where the command line compiler prints the messages: the parser's go to stderr and the rest,
+     the syntax errors found after parsing among them, to stdout. */
+  public PrintStream getStream() {
+    return fromParser ? System.err : System.out;
+  }
+
+}
@@ -0,0 +1,138 @@
+import assembly.instructions.Instruction;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.antlr.v4.runtime.CharStreams;
+
+/* A resident compiler listening on a loopback socket. Each connection sends one absolute source
+   path on a line, then the optimisation level on the next, left empty for the default. The first
+   line of the reply holds the exit code, the stream the compiler would print the error messages
+   on ("stdout" or "stderr") and the number of lexer errors that follow, which go to stderr. The
+   generated assembly or the error messages come after them. Keeping the JVM alive keeps the ANTLR
+   DFA caches, the library function templates and the JIT-compiled pipeline warm between requests.
+
+   Any local user can connect to the port, and error messages quote the source they are about. So
+   that the server does not read out files for others, it only compiles sources inside the
+   directory it was started in. For any other path it closes the connection without a reply, and
+   the client compiles that source itself. */
+public class CompileServer {
+
+  public static final int DEFAULT_PORT = 7575;
+
+  /* A small program touching the main compiler paths, compiled once at start-up. */
+  private static final String WARM_UP_PROGRAM = "begin\n"
+      + "int f(int x) is return x * 2 end\n"
+      + "int[] a = [1, 2, 3];\n"
+      + "pair(int, char) p = newpair(1, 'c');\n"
+      + "int i = 0;\n"
+      + "while i < len a do int y = call f(a[i]); i = i + y / 1 done;\n"
+      + "if i >= 3 && true then println \"done\" else print i fi;\n"
+      + "free p\n"
+      + "end";
+
+  private final ExecutorService workers =
+      Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+  private final Path root;
+
+  public CompileServer() throws IOException {
+    root = Path.of("").toRealPath();
+  }
+
+  public void serve(int port) throws IOException {
+
+    Compiler.generateAssembly(CharStreams.fromString(WARM_UP_PROGRAM));
+
+    try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      System.err.println("Compile server listening on port " + port);
+      while (true) {
+        Socket client = serverSocket.accept();
+        workers.submit(() -> handle(client));
+      }
+    }
+  }
+
+  private void handle(Socket client) {
+    try (client;
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(client.getOutputStream(), false, StandardCharsets.UTF_8)) {
+
+      String source = in.readLine();
+
+      /* Connections without a request are availability probes from the client script. */
+      if (source == null || source.isBlank()) {
+        return;
+      }
+
+      String level = in.readLine();
+
+      Path path = Path.of(source);
+      if (!isServed(path)) {
+        System.err.println("Compile server: refused " + source + ", which is outside " + root);
+        return;
+      }
+
+      List<String> warnings = new ArrayList<>();
+      String status;
+      StringBuilder body = new StringBuilder();
+      try {
+        int optimisationLevel = level == null || level.isEmpty()
+            ? Converter.DEFAULT_OPTIMISATION_LEVEL : Integer.parseInt(level);
+        List<Instruction> instructions =
+            Compiler.generateAssembly(path, optimisationLevel, warnings::add);
+        status = "0 stdout";
+        for (Instruction instruction : instructions) {
+          body.append(instruction).append('\n');
+        }
+      } catch (CompileError e) {
+        status = e.getExitCode() + (e.isFromParser() ? " stderr" : " stdout");
+        for (String errorMsg : e.getErrorMsgs()) {
+          body.append(errorMsg).append('\n');
+        }
+      } catch (Exception e) {
+        /* Internal compiler failures are reported to the client without stopping the server,
+           and the stack trace is kept for the server's log rather than sent as output. */
+        System.err.println("Compile server: failed to compile " + source);
+        e.printStackTrace();
+        status = "1 stderr";
+        body.append("Internal compiler error: ").append(e).append('\n');
+      }
+
+      StringBuilder reply = new StringBuilder(status).append(' ').append(warnings.size())
+          .append('\n');
+      for (String warning : warnings) {
+        reply.append(warning).append('\n');
+      }
+      out.print(reply.append(body));
+      out.flush();
+    } catch (IOException e) {
+      System.err.println("Compile server: " + e.getMessage());
+    }
+  }
+
+  /* Whether source, with any symbolic links followed, lies inside the server's directory. */
+  private boolean isServed(Path source) {
+    try {
+      return source.toRealPath().startsWith(root);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    new CompileServer().serve(port);
+  }
+
+}
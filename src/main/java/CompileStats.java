@@ -0,0 +1,195 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Wall time and allocated bytes spent in each phase of compiling one source file. Allocations
+   are read from the counter of the current thread. The functions of a file are checked and
+   generated in parallel on the fork-join pool, so the tasks run there measure their own, which
+   are then added to the phase with addAllocatedBytes. */
+public class CompileStats {
+
+  public enum Phase {
+    LEX("lex"),
+    PARSE("parse"),
+    BUILD_AST("buildAst"),
+    SEMANTIC_ANALYSIS("semanticAnalysis"),
+    EVALUATE("evaluate"),
+    CODEGEN("codegen"),
+    WRITE("write");
+
+    private final String jsonName;
+
+    Phase(String jsonName) {
+      this.jsonName = jsonName;
+    }
+  }
+
+  @FunctionalInterface
+  public interface Work<T, E extends Exception> {
+    T run() throws E;
+  }
+
+  /* Accepted everywhere a CompileStats is expected when no report was asked for. */
+  public static final CompileStats DISABLED = new CompileStats(null, false);
+
+  private static final com.sun.management.ThreadMXBean ALLOCATION_COUNTER = allocationCounter();
+
+  private final String file;
+  private final boolean enabled;
+  private final Map<Phase, long[]> phases = new EnumMap<>(Phase.class);
+  private final Map<String, Integer> peepholeHits = new LinkedHashMap<>();
+  private boolean cached;
+
+  public CompileStats(String file) {
+    this(file, true);
+  }
+
+  private CompileStats(String file, boolean enabled) {
+    this.file = file;
+    this.enabled = enabled;
+  }
+
+  /* Runs work, charging its wall time and allocations to the given phase. */
+  public <T, E extends Exception> T time(Phase phase, Work<T, E> work) throws E {
+    if (!enabled) {
+      return work.run();
+    }
+
+    long startBytes = allocatedBytes();
+    long startNanos = System.nanoTime();
+    try {
+      return work.run();
+    } finally {
+      add(phase, System.nanoTime() - startNanos, allocatedBytes() - startBytes);
+    }
+  }
+
+  /* Moves wall time and allocations already charged to one phase over to another, for phases
+     that are interleaved such as code generation and writing the output. */
+  public void transfer(Phase from, Phase to, long nanos, long bytes) {
+    if (enabled) {
+      add(from, -nanos, -bytes);
+      add(to, nanos, bytes);
+    }
+  }
+
+  /* Charges allocations made on other threads on behalf of a phase, which the counter of the
+     current thread does not see. */
+  public void addAllocatedBytes(Phase phase, long bytes) {
+    if (enabled) {
+      add(phase, 0, bytes);
+    }
+  }
+
+  /* Counts the rewrites made by each peephole rule, to see which of them pay off. */
+  public void addPeepholeHits(Map<String, Integer> hits) {
+    if (enabled) {
+      hits.forEach((rule, count) -> peepholeHits.merge(rule, count, Integer::sum));
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setCached() {
+    cached = true;
+  }
+
+  public static long allocatedBytes() {
+    return ALLOCATION_COUNTER == null
+        ? 0 : ALLOCATION_COUNTER.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private void add(Phase phase, long nanos, long bytes) {
+    long[] totals = phases.computeIfAbsent(phase, key -> new long[2]);
+    totals[0] += nanos;
+    totals[1] += bytes;
+  }
+
+  /* A JSON object holding the per-file reports followed by the totals over all of them. */
+  public static String toJson(List<CompileStats> files) {
+    CompileStats total = new CompileStats(null);
+    StringBuilder json = new StringBuilder("{\n  \"files\": [");
+
+    for (int i = 0; i < files.size(); i++) {
+      CompileStats stats = files.get(i);
+      json.append(i == 0 ? "\n" : ",\n")
+          .append("    {\"file\": ").append(quote(stats.file))
+          .append(", \"cached\": ").append(stats.cached)
+          .append(", \"phases\": ");
+      stats.appendPhases(json);
+      json.append(", \"peepholeHits\": ");
+      stats.appendPeepholeHits(json);
+      json.append('}');
+
+      for (Map.Entry<Phase, long[]> phase : stats.phases.entrySet()) {
+        total.add(phase.getKey(), phase.getValue()[0], phase.getValue()[1]);
+      }
+      total.addPeepholeHits(stats.peepholeHits);
+    }
+
+    json.append("\n  ],\n  \"total\": {\"files\": ").append(files.size()).append(", \"phases\": ");
+    total.appendPhases(json);
+    json.append(", \"peepholeHits\": ");
+    total.appendPeepholeHits(json);
+    return json.append("}\n}\n").toString();
+  }
+
+  private void appendPhases(StringBuilder json) {
+    long totalNanos = 0;
+    long totalBytes = 0;
+
+    json.append('{');
+    for (Map.Entry<Phase, long[]> phase : phases.entrySet()) {
+      long[] totals = phase.getValue();
+      json.append('"').append(phase.getKey().jsonName).append("\": {\"wallNanos\": ")
+          .append(totals[0]).append(", \"allocatedBytes\": ").append(totals[1]).append("}, ");
+      totalNanos += totals[0];
+      totalBytes += totals[1];
+    }
+    json.append("\"all\": {\"wallNanos\": ").append(totalNanos)
+        .append(", \"allocatedBytes\": ").append(totalBytes).append("}}");
+  }
+
+  private void appendPeepholeHits(StringBuilder json) {
+    json.append('{');
+    String separator = "";
+    for (Map.Entry<String, Integer> rule : peepholeHits.entrySet()) {
+      json.append(separator).append(quote(rule.getKey())).append(": ").append(rule.getValue());
+      separator = ", ";
+    }
+    json.append('}');
+  }
+
+  private static String quote(String string) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (char c : string.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < ' ') {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+
+  private static com.sun.management.ThreadMXBean allocationCounter() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return null;
+    }
+    com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+    if (!counter.isThreadAllocatedMemorySupported()) {
+      return null;
+    }
+    counter.setThreadAllocatedMemoryEnabled(true);
+    return counter;
+  }
+
+}
@@ -1,11 +1,30 @@
 import antlr.*;
 import assembly.instructions.Instruction;
 import ast.Program;
-import java.io.FileWriter;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.io.IOException;
@@ -15,9 +34,8 @@ import static java.lang.System.exit;
 
 public class Compiler {
 
-  public static CommonTokenStream tokenize(CharStream input) {
-    BasicLexer lexer = new BasicLexer(input);
-    return new CommonTokenStream(lexer);
+  public static LexedTokenStream tokenize(CharStream input) {
+    return new LexedTokenStream(input);
   }
 
   public static String parseTree(CommonTokenStream tokens) {
@@ -26,13 +44,54 @@ public class Compiler {
     return tree.toStringTree(parser);
   }
 
-  public static ParseTree parse(CommonTokenStream tokens) {
+  public static ParseTree parse(LexedTokenStream tokens) {
+    return parse(tokens, System.err::println);
+  }
+
+  /* Parses tokens, passing the lexer's errors to warnings if the program is accepted all the
+     same. */
+  public static ParseTree parse(LexedTokenStream tokens, Consumer<String> warnings) {
     BasicParser parser = new BasicParser(tokens);
+
+    /* Try the faster SLL prediction first, giving up at the first error. SLL never accepts an
+       invalid program, so only inputs it rejects are parsed again in full LL mode, which also
+       produces the usual error messages. The lexer's errors are held back until it is known
+       which pass reports them. */
+    tokens.reportErrorsTo(null);
+    parser.removeErrorListeners();
+    parser.setErrorHandler(new BailErrorStrategy());
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    try {
+      ParseTree tree = parser.prog();
+      tokens.getErrorMsgs().forEach(warnings);
+      return tree;
+    } catch (ParseCancellationException e) {
+      tokens.seek(0);
+      parser.reset();
+      parser.setErrorHandler(new DefaultErrorStrategy());
+      parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+    }
+
+    /* Collect syntax errors, the lexer's among them in the order the parser reaches them, instead
+       of printing them so callers decide how to report them. */
+    List<String> errorMsgs = new ArrayList<>();
+    tokens.reportErrorsTo(errorMsgs::add);
+    parser.addErrorListener(new BaseErrorListener() {
+      @Override
+      public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+          int charPositionInLine, String msg, RecognitionException e) {
+        errorMsgs.add("line " + line + ":" + charPositionInLine + " " + msg);
+      }
+    });
+
     ParseTree tree = parser.prog();
 
+    /* Errors from the lexer alone do not reject a program, as the lexer skips what it cannot
+       read, but they are still reported. */
     if (parser.getNumberOfSyntaxErrors() > 0) {
-      exit(100);
+      throw new CompileError(100, errorMsgs, true);
     }
+    errorMsgs.forEach(warnings);
 
     return tree;
   }
@@ -42,72 +101,285 @@ public class Compiler {
     return parseTree(tokenize(input));
   }
 
-  public static Program compile(String filename) throws IOException {
+  /* Runs the front end, throwing a CompileError rather than exiting when the input is rejected. */
+  public static Program analyse(CharStream input) {
+    return analyse(input, CompileStats.DISABLED);
+  }
 
-    Path filepath = Path.of(filename);
+  public static Program analyse(CharStream input, CompileStats stats) {
+    return analyse(input, stats, System.err::println);
+  }
 
-    CharStream input = CharStreams.fromPath(filepath);
+  public static Program analyse(CharStream input, CompileStats stats,
+      Consumer<String> warnings) {
 
-    ParseTree tree = parse(tokenize(input));
+    /* The token stream is filled eagerly so lexing is not charged to the parser. The lexer's
+       errors are still reported as the parser reaches them. */
+    LexedTokenStream tokens = stats.time(CompileStats.Phase.LEX, () -> {
+      LexedTokenStream lexed = tokenize(input);
+      lexed.fill();
+      return lexed;
+    });
+    ParseTree tree = stats.time(CompileStats.Phase.PARSE, () -> parse(tokens, warnings));
 
     ASTBuilder astBuilder = new ASTBuilder();
-    Program ast = (Program) astBuilder.visit(tree);
+    Program ast =
+        stats.time(CompileStats.Phase.BUILD_AST, () -> (Program) astBuilder.visit(tree));
 
     SemanticAnalysis semanticAnalysis = new SemanticAnalysis();
-    semanticAnalysis.traverse(ast);
+    stats.time(CompileStats.Phase.SEMANTIC_ANALYSIS, () -> {
+      semanticAnalysis.traverse(ast);
+      return null;
+    });
+    stats.addAllocatedBytes(CompileStats.Phase.SEMANTIC_ANALYSIS,
+        semanticAnalysis.getForkedAllocatedBytes());
 
     if (semanticAnalysis.getNumberOfErrors() > 0) {
-      for (String errorMsg : semanticAnalysis.getErrorMsgs()) {
-        System.out.println(errorMsg);
-      }
-      exit(200);
+      throw new CompileError(200, semanticAnalysis.getErrorMsgs());
     }
 
     return ast;
   }
 
+  private static void reportAndExit(CompileError error) {
+    for (String errorMsg : error.getErrorMsgs()) {
+      error.getStream().println(errorMsg);
+    }
+    exit(error.getExitCode());
+  }
+
+  public static Program compile(String filename) throws IOException {
+
+    Path filepath = Path.of(filename);
+
+    CharStream input = CharStreams.fromPath(filepath);
+
+    try {
+      return analyse(input);
+    } catch (CompileError e) {
+      reportAndExit(e);
+      return null;
+    }
+  }
+
   public static Program compileProgram(String program) {
 
     CharStream input = CharStreams.fromString(program);
 
-    ParseTree tree = parse(tokenize(input));
+    try {
+      return analyse(input);
+    } catch (CompileError e) {
+      reportAndExit(e);
+      return null;
+    }
+  }
+
+  /* Runs the front end and folds constant expressions, ready for code generation. */
+  private static Program evaluate(CharStream input, CompileStats stats,
+      Consumer<String> warnings) {
 
-    ASTBuilder astBuilder = new ASTBuilder();
-    Program ast = (Program) astBuilder.visit(tree);
+    Program ast = analyse(input, stats, warnings);
 
-    SemanticAnalysis semanticAnalysis = new SemanticAnalysis();
-    semanticAnalysis.traverse(ast);
+    Evaluator evaluator = new Evaluator();
+    stats.time(CompileStats.Phase.EVALUATE, () -> evaluator.visitProgram(ast));
 
-    if (semanticAnalysis.getNumberOfErrors() > 0) {
-      for (String errorMsg : semanticAnalysis.getErrorMsgs()) {
-        System.out.println(errorMsg);
+    return ast;
+  }
+
+  public static List<Instruction> generateAssembly(CharStream input) {
+    return generateAssembly(input, Converter.DEFAULT_OPTIMISATION_LEVEL, System.err::println);
+  }
+
+  public static List<Instruction> generateAssembly(CharStream input, int optimisationLevel,
+      Consumer<String> warnings) {
+
+    Program ast = evaluate(input, CompileStats.DISABLED, warnings);
+
+    /* A fresh Converter per file keeps labels and messages local to this compilation. */
+    Converter converter = new Converter(optimisationLevel);
+    return converter.generate(ast);
+  }
+
+  /* Generates the assembly for input straight into output, one function at a time, so the whole
+     program never has to be held in memory as instructions. */
+  public static void emitAssembly(CharStream input, Path output, int optimisationLevel,
+      CompileStats stats, Consumer<String> warnings) throws IOException {
+
+    Program ast = evaluate(input, stats, warnings);
+
+    /* Code generation and writing are interleaved, so the time spent writing each block is
+       moved from the code generation phase to the write phase as it happens. */
+    Converter converter = new Converter(optimisationLevel);
+    stats.time(CompileStats.Phase.CODEGEN, () -> {
+      try (BufferedWriter writer = Files.newBufferedWriter(output)) {
+        converter.emitProgram(ast, instructions -> {
+          long startBytes = CompileStats.allocatedBytes();
+          long startNanos = System.nanoTime();
+          for (Instruction instruction : instructions) {
+            writer.write(instruction.toString());
+            writer.write('\n');
+          }
+          stats.transfer(CompileStats.Phase.CODEGEN, CompileStats.Phase.WRITE,
+              System.nanoTime() - startNanos, CompileStats.allocatedBytes() - startBytes);
+        });
       }
-      exit(200);
+      return null;
+    });
+    stats.addAllocatedBytes(CompileStats.Phase.CODEGEN, converter.getForkedAllocatedBytes());
+    stats.addPeepholeHits(converter.getPeepholeHits());
+  }
+
+  public static List<Instruction> generateAssembly(Path filepath, int optimisationLevel,
+      Consumer<String> warnings) throws IOException {
+    return generateAssembly(CharStreams.fromPath(filepath), optimisationLevel, warnings);
+  }
+
+  private static Path assemblyPath(Path filepath) {
+    String fileNameWithExtension = filepath.getFileName().toString();
+    return Path.of(
+        fileNameWithExtension.substring(0, fileNameWithExtension.lastIndexOf(".")) + ".s");
+  }
+
+  public static void writeAssembly(Path filepath, CompilerOptions options, CompileStats stats)
+      throws IOException {
+
+    Path output = assemblyPath(filepath);
+    CompilationCache cache = options.getCache();
+
+    if (cache == null) {
+      emitAssembly(CharStreams.fromPath(filepath), output, options.getOptimisationLevel(), stats,
+          System.err::println);
+      return;
     }
 
-    return ast;
+    /* Look the source up by content before lexing it. */
+    byte[] source = Files.readAllBytes(filepath);
+    String key = cache.key(source, options.getCodegenFlags());
+
+    if (cache.copyAssembly(key, output, System.err::println)) {
+      stats.setCached();
+      return;
+    }
+    CompileError cachedError = cache.getError(key, System.err::println);
+    if (cachedError != null) {
+      stats.setCached();
+      throw cachedError;
+    }
+
+    /* The lexer's errors are stored with the entry, so a hit reports them again. */
+    List<String> warnings = new ArrayList<>();
+    try {
+      emitAssembly(CharStreams.fromStream(new ByteArrayInputStream(source)), output,
+          options.getOptimisationLevel(), stats, warning -> {
+            System.err.println(warning);
+            warnings.add(warning);
+          });
+    } catch (CompileError e) {
+      cache.putError(key, e, warnings);
+      throw e;
+    }
+    cache.putAssembly(key, output, warnings);
   }
 
-  public static void main(String[] args) throws IOException {
+  /* Expands directories into the .wacc files they contain, in a stable order. */
+  public static List<Path> collectSources(List<String> args) throws IOException {
+
+    List<Path> sources = new ArrayList<>();
+
+    for (String arg : args) {
+      Path path = Path.of(arg);
+      if (Files.isDirectory(path)) {
+        try (Stream<Path> walk = Files.walk(path)) {
+          sources.addAll(walk.filter(file -> file.toString().endsWith(".wacc"))
+              .sorted()
+              .collect(Collectors.toList()));
+        }
+      } else {
+        sources.add(path);
+      }
+    }
 
-    Path filename = Path.of(args[0]);
+    return sources;
+  }
 
-    Program ast = compile(new String(args[0]));
+  /* Compiles every source on a worker pool sized to the number of available cores. Rejected
+     files are reported in input order and the highest exit code is returned, or 1 if two sources
+     would be compiled to the same file. */
+  public static int compileBatch(List<Path> sources, CompilerOptions options)
+      throws IOException {
+
+    /* Each output is named after its source's file name alone, so two sources sharing one would
+       race to write the same file. Refuse such a batch before compiling any of it. */
+    Map<Path, Path> outputs = new HashMap<>();
+    for (Path source : sources) {
+      Path other = outputs.putIfAbsent(assemblyPath(source), source);
+      if (other != null) {
+        System.err.println(other + " and " + source + " would both be compiled to "
+            + assemblyPath(source));
+        return 1;
+      }
+    }
 
-    Evaluator evaluator = new Evaluator();
-    evaluator.visitProgram(ast);
+    ExecutorService workers =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    List<Future<?>> results = new ArrayList<>();
+    List<CompileStats> stats = new ArrayList<>();
+    for (Path source : sources) {
+      CompileStats fileStats = options.newStats(source);
+      stats.add(fileStats);
+      results.add(workers.submit(() -> {
+        writeAssembly(source, options, fileStats);
+        return null;
+      }));
+    }
+    workers.shutdown();
+
+    int exitCode = 0;
+    for (int i = 0; i < results.size(); i++) {
+      try {
+        results.get(i).get();
+      } catch (ExecutionException e) {
+        if (!(e.getCause() instanceof CompileError)) {
+          throw new IOException(e.getCause());
+        }
+        CompileError error = (CompileError) e.getCause();
+        error.getStream().println(sources.get(i) + ":");
+        for (String errorMsg : error.getErrorMsgs()) {
+          error.getStream().println(errorMsg);
+        }
+        exitCode = Math.max(exitCode, error.getExitCode());
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+    }
+
+    options.reportStats(stats);
+    return exitCode;
+  }
 
-    Converter converter = new Converter();
-    List<Instruction> instructions = converter.visitProgram(ast);
+  public static void main(String[] args) throws IOException {
+
+    CompilerOptions options = CompilerOptions.parse(args);
+    List<String> sources = options.getSources();
+
+    if (sources.size() == 1 && !Files.isDirectory(Path.of(sources.get(0)))) {
+      Path source = Path.of(sources.get(0));
+      CompileStats stats = options.newStats(source);
+      try {
+        writeAssembly(source, options, stats);
+      } catch (CompileError e) {
+        options.reportStats(List.of(stats));
+        reportAndExit(e);
+      }
+      options.reportStats(List.of(stats));
+      return;
+    }
 
-    String fileNameWithExtension = filename.getFileName().toString();
-    String fileName =
-        fileNameWithExtension.substring(0, fileNameWithExtension.lastIndexOf(".")) + ".s";
-    FileWriter binFileWriter = new FileWriter(fileName);
-    for (Instruction instruction : instructions) {
-      binFileWriter.write(instruction.toString() + '\n');
+    int exitCode = compileBatch(collectSources(sources), options);
+    if (exitCode != 0) {
+      exit(exitCode);
     }
-    binFileWriter.close();
 
   }
 
@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/* Command line options of the compiler. Options start with "--"; every other argument is a
+   source file or a directory of source files. */
+public class CompilerOptions {
+
+  private final List<String> sources = new ArrayList<>();
+  private CompilationCache cache;
+  private boolean stats;
+  private Path statsFile;
+  private int optimisationLevel = Converter.DEFAULT_OPTIMISATION_LEVEL;
+
+  public static CompilerOptions parse(String[] args) throws IOException {
+
+    CompilerOptions options = new CompilerOptions();
+    String cacheDirectory = null;
+    long cacheBytes = CompilationCache.DEFAULT_MAX_BYTES;
+
+    for (String arg : args) {
+      if (arg.startsWith("--cache=")) {
+        cacheDirectory = arg.substring("--cache=".length());
+      } else if (arg.startsWith("--cache-size=")) {
+        cacheBytes = Long.parseLong(arg.substring("--cache-size=".length()));
+      } else if (arg.startsWith("--opt-level=")) {
+        options.optimisationLevel = Integer.parseInt(arg.substring("--opt-level=".length()));
+      } else if (arg.equals("--stats")) {
+        options.stats = true;
+      } else if (arg.startsWith("--stats=")) {
+        options.stats = true;
+        options.statsFile = Path.of(arg.substring("--stats=".length()));
+      } else {
+        options.sources.add(arg);
+      }
+    }
+
+    if (cacheDirectory != null) {
+      options.cache = new CompilationCache(Path.of(cacheDirectory), cacheBytes);
+    }
+
+    return options;
+  }
+
+  public List<String> getSources() {
+    return sources;
+  }
+
+  public CompilationCache getCache() {
+    return cache;
+  }
+
+  /* Returns a per-file report to fill in, or CompileStats.DISABLED without --stats. */
+  public CompileStats newStats(Path source) {
+    return stats ? new CompileStats(source.toString()) : CompileStats.DISABLED;
+  }
+
+  /* Writes the JSON report to the --stats=FILE file, or to standard error for plain --stats so
+     it does not mix with the error messages on standard output. */
+  public void reportStats(List<CompileStats> files) throws IOException {
+    if (!stats) {
+      return;
+    }
+    String json = CompileStats.toJson(files);
+    if (statsFile == null) {
+      System.err.print(json);
+    } else {
+      Files.writeString(statsFile, json);
+    }
+  }
+
+  /* 0 turns the optimisations off. */
+  public int getOptimisationLevel() {
+    return optimisationLevel;
+  }
+
+  /* The options that change the generated code, used as part of the cache key. */
+  public String getCodegenFlags() {
+    return "O" + optimisationLevel;
+  }
+
+}
@@ -1,1968 +1,826 @@
 import assembly.*;
+import assembly.PredefinedFunctions.Functions;
 import assembly.instructions.*;
 import ast.*;
+import ir.*;
 
-import ast.Type.EType;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 
-import static assembly.PredefinedFunctions.*;
 import static assembly.PredefinedFunctions.Functions.*;
 import static assembly.LibraryFunctions.*;
 import static assembly.instructions.Directive.DirectiveType;
-import static ast.Type.EType.*;
 
-public class Converter extends ASTVisitor<List<Instruction>> {
+/* Generates the assembly of a program. Each function, and main, is lowered to a control flow graph
+   of quads by an IRBuilder, given machine registers by the RegisterAllocator, and then translated
+   here into instructions, quad by quad.
 
-  /* A list of general purpose registers: r4, r5, r6, r7, r8, r9, r10 and r11. */ List<Register> unusedRegisters = initialiseGeneralRegisters();
+   A function keeps every callee-saved register it is allocated, together with lr, at the top of
+   its frame. Below them are the variable and spill slots it uses, one word each, and below those
+   the arguments of any call being made. */
+public class Converter {
 
-  /* Function return registers. */
+  /* Function argument and return registers, and the scratch register. */
   private final Register r0 = new Register(0);
   private final Register r1 = new Register(1);
+  private final Register r12 = new Register(12);
 
   /* Special registers. */
   private final Register sp = new Register(13);
   private final Register lr = new Register(14);
   private final Register pc = new Register(15);
 
-  private int spLocation = 0;
-  private int labelNum = 0;
-  private int functionByte = 0;
-  SymbolTable currentST;
+  /* The function being generated: the callee-saved registers its prologue pushes, the offset of
+     each variable and spill slot it uses and the bytes they take, and the bytes of call arguments
+     pushed so far, which move every slot further from sp. */
+  private ControlFlowGraph graph;
+  private List<Register> savedRegisters;
+  private int[] frameOffsets;
+  private int frameBytes;
+  private int argumentBytes = 0;
 
-  /* Pre-defined Functions List. */
-  private final Set<Functions> predefinedFunctions = new HashSet<>();
-  private final Set<LFunctions> libraryFunctions = new HashSet<>();
+  /* The labels of the blocks that are branched to, and the number of uses of each temp. */
+  private final Map<BasicBlock, Numbering.Name> blockLabels = new HashMap<>();
+  private int[] useCounts;
 
-  private String getLabel() {
-    int result = labelNum;
-    labelNum++;
-    return "L" + result;
-  }
-
-  private Type getExpressionType(Expression expr) {
-
-    if (expr == null) {
-      return null;
-    }
-
-    Type nextType;
-
-    switch (expr.getExprType()) {
-
-      case INTLITER:
-      case NEG:
-      case ORD:
-      case LEN:
-      case DIVIDE:
-      case MULTIPLY:
-      case MODULO:
-      case PLUS:
-      case MINUS:
-        return new Type(INT);
-
-      case BOOLLITER:
-      case NOT:
-      case GT:
-      case GTE:
-      case LT:
-      case LTE:
-      case EQ:
-      case NEQ:
-      case AND:
-      case OR:
-        return new Type(BOOL);
-
-      case CHARLITER:
-      case CHR:
-        return new Type(CHAR);
-
-      case STRINGLITER:
-        return new Type(STRING);
-
-      case IDENT:
-        return currentST.getType(expr.getIdent());
-
-      case ARRAYELEM:
-        ArrayElem arrayElem = expr.getArrayElem();
-        Type result = currentST.getType(arrayElem.getIdent());
-        for (int i = 0; i < arrayElem.getExpression().size(); i++) {
-          result = result.getArrayType();
-        }
-        return result;
-
-      case BRACKETS:
-        return getExpressionType(expr.getExpression1());
-
-      case REFERENCE:
-        nextType = getExpressionType(expr.getExpression1());
-        if (nextType.getType() == DEREFERENCE) {
-          return nextType.getArrayType();
-        }
-        return new Type(REFERENCE, nextType);
-
-      case DEREFERENCE:
-        nextType = getExpressionType(expr.getExpression1());
-        if (nextType.getType() == REFERENCE) {
-          return nextType.getArrayType();
-        }
-        return new Type(DEREFERENCE, nextType);
-
-    }
-    return null;
-  }
-
-  private List<Register> initialiseGeneralRegisters() {
-
-    List<Register> registers = new ArrayList<>();
-
-    registers.add(new Register(4));
-    registers.add(new Register(5));
-    registers.add(new Register(6));
-    registers.add(new Register(7));
-    registers.add(new Register(8));
-    registers.add(new Register(9));
-    registers.add(new Register(10));
-    registers.add(new Register(11));
-
-    return registers;
-  }
-
-  private Register popUnusedRegister() {
-    Register register = unusedRegisters.get(0);
-    unusedRegisters.remove(register);
-    return register;
-  }
-
-  private void pushUnusedRegister(Register register) {
-    unusedRegisters.add(0, register);
-  }
-
-  private int sizeOfTypeOnStack(Type type) {
-
-    if (type == null) {
-      return 4;
-    }
-
-    switch (type.getType()) {
-      case INT:
-      case PAIR:
-      case ARRAY:
-      case STRING:
-      case REFERENCE:
-        //TODO: unsure if dereference should also be of size 4
-      case DEREFERENCE:
-        return 4;
-      case CHAR:
-      case BOOL:
-        return 1;
-    }
-
-    return 0;
-  }
-
-  private int totalBytesInScope(Statement statement) {
-    return totalBytesInStatement(statement) + maxBeginStatement(statement);
-  }
-
-  private int totalBytesInStatement(Statement statement) {
-
-    switch (statement.getStatType()) {
-
-      case DECLARATION:
-        return sizeOfTypeOnStack(statement.getLhsType());
-
-      case CONCAT:
-        return totalBytesInStatement(statement.getStatement1()) + totalBytesInStatement(
-            statement.getStatement2());
-
-      case WHILE:
-        return totalBytesInStatement(statement.getStatement1()) + maxBeginStatement(statement);
-
-      case IF:
-        int stat1Size = totalBytesInStatement(statement.getStatement1());
-        int stat2Size = totalBytesInStatement(statement.getStatement2());
-        return Math.max(stat1Size, stat2Size);
-    }
-
-    return 0;
-  }
-
-  private int maxBeginStatement(Statement statement) {
-
-    List<Statement> beginStatements = getBeginStatements(statement);
-
-    int size = 0;
-    for (Statement s : beginStatements) {
-      int sSize = totalBytesInScope(s.getStatement1());
-      if (sSize > size) {
-        size = sSize;
-      }
-    }
-
-    return size;
-  }
-
-  private List<Statement> getBeginStatements(Statement statement) {
-
-    List<Statement> beginStatements = new ArrayList<>();
-
-    if (statement.getStatType() == Statement.StatType.BEGIN) {
-      beginStatements.add(statement);
-    }
-
-    if (statement.getStatType() == Statement.StatType.CONCAT) {
-      beginStatements.addAll(getBeginStatements(statement.getStatement1()));
-      beginStatements.addAll(getBeginStatements(statement.getStatement2()));
-    }
-
-    return beginStatements;
-  }
-
-  @Override
-  public List<Instruction> visitProgram(Program program) {
-
-    List<Instruction> instructions = new ArrayList<>();
-
-    /* Generate the assembly instructions for each function. */
-    for (Function function : program.getFunctions()) {
-      instructions.addAll(visitFunction(function));
-    }
-
-    instructions.add(new LABEL("main:"));
-
-    instructions.add(new PUSH(lr));
-
-    int totalBytes = totalBytesInScope(program.getStatement());
-    spLocation = totalBytes;
-
-    while (totalBytes > 0) {
-      instructions.add(new SUB(sp, sp, new Operand2(Math.min(1024, totalBytes))));
-      totalBytes -= 1024;
-    }
-
-    totalBytes = spLocation;
-
-    currentST = new SymbolTable(null);
-
-    /* Generate the assembly instructions for the program body. */
-    instructions.addAll(visitStatement(program.getStatement()));
-
-    while (totalBytes > 0) {
-      instructions.add(new ADD(sp, sp, new Operand2(Math.min(1024, totalBytes))));
-      totalBytes -= 1024;
-    }
-
-    instructions.add(new LDR(r0, 0));
-    instructions.add(new POP(pc));
-    instructions.add(new Directive(DirectiveType.LTORG));
-
-    if (!libraryFunctions.isEmpty()) {
-      instructions.addAll(0, getInstructions(libraryFunctions, predefinedFunctions));
-    }
-
-    instructions.add(0, new Directive(DirectiveType.TEXT));
-    instructions.add(1, new LABEL(""));
-
-    instructions.add(2, new Directive(DirectiveType.GLOBAL));
-
-    if (!predefinedFunctions.isEmpty()) {
-      instructions.addAll(getInstructions(predefinedFunctions));
-      instructions.add(0, new Directive(DirectiveType.DATA));
-      instructions.add(1, new LABEL(""));
-      instructions.add(2, new LABEL(""));
-    }
-    instructions.addAll(2, getMessages());
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitFunction(Function function) {
-
-    List<Instruction> instructions = new ArrayList<>();
-
-    /* Everytime entering a new function, functionByte is updated */
-    functionByte = totalBytesInScope(function.getStatement());
-
-    /* Initialise symbol table. */
-    currentST = new SymbolTable(null);
-
-    /* Function wrapper instructions. */
-    instructions.add(new LABEL(function.getIdent() + ":"));
-    instructions.add(new PUSH(lr));
-
-    /* Move stack pointer to allocate space on the stack for the function to use. */
-    int totalBytes = totalBytesInScope(function.getStatement());
-    spLocation = totalBytes;
-
-    while (totalBytes > 1024) {
-      instructions.add(new SUB(sp, sp, new Operand2(1024)));
-      totalBytes -= 1024;
-    }
-    if (totalBytes > 0) {
-      instructions.add(new SUB(sp, sp, new Operand2(totalBytes)));
-    }
-
-    totalBytes = spLocation;
-
-    /* Add parameters to symbol table. */
-    int stackOffset = totalBytes + 4;
-    for (Param param : function.getParams()) {
-      currentST.newVariable(param.getIdent(), param.getType());
-      currentST.setSPMapping(param.getIdent(), stackOffset);
-      stackOffset += sizeOfTypeOnStack(param.getType());
-    }
-
-    /* Evaluate function body. */
-    instructions.addAll(visitStatement(function.getStatement()));
-
-    instructions.add(new Directive(DirectiveType.LTORG));
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitSkipStatement(Statement statement) {
-    /* Generate instructions when a skip statement is found, that is, no instructions. */
-    return Collections.emptyList();
-  }
-
-  @Override
-  public List<Instruction> visitDeclarationStatement(Statement statement) {
-
-    /* Generate instructions to evaluate the RHS and put the result into the first unused register. */
-    List<Instruction> instructions = new ArrayList<>(visitRHS(statement.getRHS()));
-
-    /* Retrieve the first register which is where the value of the RHS is stored. */
-    Register rn = popUnusedRegister();
-
-    int stackOffset = spLocation - sizeOfTypeOnStack(statement.getLhsType());
-
-    String suffix = "";
-
-    if (sizeOfTypeOnStack(statement.getLhsType()) == 1) {
-      suffix = "B";
-    }
-
-    if (stackOffset > 0) {
-      // STR rn, [sp, #i]
-      instructions.add(new STR(rn, new Operand2(sp, stackOffset), suffix));
-    } else {
-      // STR rn, [sp]
-      instructions.add(new STR(rn, new Operand2(sp), suffix));
-    }
-
-    /* Add the variable to the symbol table. */
-    currentST.setSPMapping(statement.getLhsIdent(), stackOffset);
-    currentST.newVariable(statement.getLhsIdent(), statement.getLhsType());
-
-    /* Update the spLocation variable to point to the next available space on the stack. */
-    spLocation = stackOffset;
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitReassignmentStatement(Statement statement) {
-
-    /* Evaluate RHS expression and store result in rn. */
-    List<Instruction> instructions = new ArrayList<>(visitRHS(statement.getRHS()));
-
-    /* Retrieve first unused register. */
-    Register rn = popUnusedRegister();
-
-    /* Code generation when the LHS is an identity. */
-    if (statement.getLHS().getAssignType() == AssignLHS.LHSType.IDENT) {
-      int stackOffset = currentST.getSPMapping(statement.getLHS().getIdent());
-
-      Expression expression = new ExpressionBuilder().buildIdentExpr(statement.getLHS().getIdent());
-
-      String suffix = "";
-
-      if (sizeOfTypeOnStack(getExpressionType(expression)) == 1) {
-        suffix = "B";
-      }
-
-      if (stackOffset > 0) {
-        // STR rn, [sp, #i]
-        instructions.add(new STR(rn, new Operand2(sp, stackOffset), suffix));
-      } else {
-        // STR rn, [sp]
-        instructions.add(new STR(rn, new Operand2(sp), suffix));
-      }
-
-      pushUnusedRegister(rn);
-
-      return instructions;
-    }
-
-    /* Code generation when the LHS is a pair element or array element. */
-
-    /* Evaluate the LHS and store its address in rm. */
-    instructions.addAll(visitLHS(statement.getLHS()));
-
-    /* Retrieve the next unused register. */
-    Register rm = popUnusedRegister();
-
-    Type type = currentST.getType(getIdentFromLHS(statement.getLHS()));
-
-    if (statement.getLHS().getAssignType() == AssignLHS.LHSType.PAIRELEM) {
-      if (statement.getLHS().getPairElem().getType() == PairElem.PairElemType.FST) {
-        type = type.getFstType();
-      } else {
-        type = type.getSndType();
-      }
-    }
-
-    if (statement.getLHS().getAssignType() == AssignLHS.LHSType.ARRAYELEM) {
-      type = getExpressionType(
-          new ExpressionBuilder().buildArrayExpr(statement.getLHS().getArrayElem()));
-    }
-
-    if (sizeOfTypeOnStack(type) == 1) {
-      instructions.add(new STR(rn, new Operand2(rm), "B"));
-    } else {
-      instructions.add(new STR(rn, new Operand2(rm)));
-    }
-
-    /* Mark registers as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitIdentLHS(AssignLHS lhs) {
-
-    List<Instruction> instructions = new ArrayList<>();
-
-    int stackOffset = currentST.getSPMapping(lhs.getIdent());
-
-    Register rn = popUnusedRegister();
-
-    instructions.add(new ADD(rn, sp, new Operand2(stackOffset)));
-
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitArrayElemLHS(AssignLHS lhs) {
-
-    /* Set ArrayLookup flag to true. */
-    predefinedFunctions.add(P_CHECK_ARRAY_BOUNDS);
-
-    ArrayElem arrayElem = lhs.getArrayElem();
-    List<Instruction> instructions = new ArrayList<>();
-    int size = sizeOfTypeOnStack(currentST.getType(arrayElem.getIdent()).getArrayType());
-
-    /* Find where the array address is stored on the stack. */
-    int stackOffset = currentST.getSPMapping(arrayElem.getIdent());
-
-    /* Allocate one register: rn for this function to use. */
-    Register rn = popUnusedRegister();
-
-    // ADD rn, sp, #offset
-    instructions.add(new ADD(rn, sp, new Operand2(stackOffset)));
-
-    for (Expression expression : arrayElem.getExpression()) {
-
-      /* Evaluate the index of the ArrayElem and store it in rm. */
-      instructions.addAll(visitExpression(expression));
-
-      /* Retrieve the register rm which contains the value of the index. */
-      Register rm = popUnusedRegister();
-
-      // LDR rn, [rn]
-      instructions.add(new LDR(rn, new Operand2(rn)));
-
-      // MOV r0, rm
-      instructions.add(new MOV(r0, new Operand2(rm)));
-
-      // MOV r1, rn
-      instructions.add(new MOV(r1, new Operand2(rn)));
-
-      // BL p_check_array_bounds
-      instructions.add(new Branch("p_check_array_bounds").setSuffix("L"));
-
-      // ADD rn, rn, #4
-      instructions.add(new ADD(rn, rn, new Operand2(4)));
-
-      if (size == 1) {
-        // ADD rn, rn, rm
-        instructions.add(new ADD(rn, rn, new Operand2(rm)));
-      } else {
-        // ADD rn, rn, rm, LSL #2
-        instructions.add(new ADD(rn, rn, new Operand2(rm), 2));
-      }
-
-      pushUnusedRegister(rm);
-    }
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitIfStatement(Statement statement) {
-
-    /* Evaluate the condition expression. */
-    List<Instruction> instructions = new ArrayList<>(visitExpression(statement.getExpression()));
-
-    /* Generate instructions for the 'if' clause of the statement and change scope. */
-    currentST = new SymbolTable(currentST);
-    int temp = spLocation;
-    List<Instruction> statementOneInstructions = new ArrayList<>(
-        visitStatement(statement.getStatement1()));
-    spLocation = temp;
-    currentST = currentST.getParent();
-
-    /* Generate instructions for the 'else' clause of the statement and change scope. */
-    currentST = new SymbolTable(currentST);
-    temp = spLocation;
-    List<Instruction> statementTwoInstructions = new ArrayList<>(
-        visitStatement(statement.getStatement2()));
-    spLocation = temp;
-    currentST = currentST.getParent();
-
-    if (!expressionContainsIdent(statement.getExpression())) {
-      if (evaluateExpression(statement.getExpression()).getBoolLiter()) {
-        return statementOneInstructions;
-      } else {
-        return statementTwoInstructions;
-      }
-    }
-
-    /* Generate Labels. */
-    String label1 = getLabel();
-    String label2 = getLabel();
-
-    /* Retrieve the register containing the result from evaluating the condition. */
-    Register rn = popUnusedRegister();
-
-    // CMP rn, #0
-    instructions.add(new CMP(rn, new Operand2(0)));
-
-    // BEQ Lx
-    instructions.add(new Branch(label1, Conditionals.EQ));
-
-    /* Mark the register rn as no longer in use. */
-    pushUnusedRegister(rn);
-    instructions.addAll(statementOneInstructions);
-
-    // B Lx+1
-    instructions.add(new Branch(label2));
-
-    // Lx:
-    instructions.add(new LABEL(label1 + ":"));
-
-    instructions.addAll(statementTwoInstructions);
-
-    // Lx+1:
-    instructions.add(new LABEL(label2 + ":"));
-
-    return instructions;
-  }
-
-  private Boolean expressionContainsIdent(Expression expression) {
-    switch (expression.getExprType()) {
-      case IDENT:
-      case ARRAYELEM:
-        return true;
-      case NOT:
-      case BRACKETS:
-      case NEG:
-      case LEN:
-      case ORD:
-      case CHR:
-        return expressionContainsIdent(expression.getExpression1());
-      case DIVIDE:
-      case MULTIPLY:
-      case MODULO:
-      case PLUS:
-      case MINUS:
-      case GT:
-      case GTE:
-      case LT:
-      case LTE:
-      case EQ:
-      case NEQ:
-      case AND:
-      case OR:
-        return expressionContainsIdent(expression.getExpression1()) || expressionContainsIdent(
-            expression.getExpression2());
-      default:
-        return false;
-    }
-  }
-
-  private Expression evaluateExpression(Expression expression) {
-    switch (expression.getExprType()) {
-      case INTLITER:
-      case BOOLLITER:
-      case CHARLITER:
-      case STRINGLITER:
-        return expression;
-      case NOT:
-        boolean bool = evaluateExpression(expression.getExpression1()).getBoolLiter();
-        return new ExpressionBuilder().buildBoolExpr(!bool);
-      case NEG:
-        long integer = evaluateExpression(expression.getExpression1()).getIntLiter();
-        return new ExpressionBuilder().buildIntExpr(-integer);
-      case ORD:
-        long ord = evaluateExpression(expression.getExpression1()).getCharLiter();
-        return new ExpressionBuilder().buildIntExpr(ord);
-      case CHR:
-        char chr = (char) evaluateExpression(expression.getExpression1()).getIntLiter();
-        return new ExpressionBuilder().buildCharExpr(chr);
-      case DIVIDE:
-        long arg1 = evaluateExpression(expression.getExpression1()).getIntLiter();
-        long arg2 = evaluateExpression(expression.getExpression2()).getIntLiter();
-        return new ExpressionBuilder().buildIntExpr(arg1 / arg2);
-      case MULTIPLY:
-        arg1 = evaluateExpression(expression.getExpression1()).getIntLiter();
-        arg2 = evaluateExpression(expression.getExpression2()).getIntLiter();
-        return new ExpressionBuilder().buildIntExpr(arg1 * arg2);
-      case MODULO:
-        arg1 = evaluateExpression(expression.getExpression1()).getIntLiter();
-        arg2 = evaluateExpression(expression.getExpression2()).getIntLiter();
-        return new ExpressionBuilder().buildIntExpr(arg1 % arg2);
-      case PLUS:
-        arg1 = evaluateExpression(expression.getExpression1()).getIntLiter();
-        arg2 = evaluateExpression(expression.getExpression2()).getIntLiter();
-        return new ExpressionBuilder().buildIntExpr(arg1 + arg2);
-      case MINUS:
-        arg1 = evaluateExpression(expression.getExpression1()).getIntLiter();
-        arg2 = evaluateExpression(expression.getExpression2()).getIntLiter();
-        return new ExpressionBuilder().buildIntExpr(arg1 - arg2);
-      case GT:
-        arg1 = evaluateExpression(expression.getExpression1()).getIntLiter();
-        arg2 = evaluateExpression(expression.getExpression2()).getIntLiter();
-        return new ExpressionBuilder().buildBoolExpr(arg1 > arg2);
-      case GTE:
-        arg1 = evaluateExpression(expression.getExpression1()).getIntLiter();
-        arg2 = evaluateExpression(expression.getExpression2()).getIntLiter();
-        return new ExpressionBuilder().buildBoolExpr(arg1 >= arg2);
-      case LT:
-        arg1 = evaluateExpression(expression.getExpression1()).getIntLiter();
-        arg2 = evaluateExpression(expression.getExpression2()).getIntLiter();
-        return new ExpressionBuilder().buildBoolExpr(arg1 < arg2);
-      case LTE:
-        arg1 = evaluateExpression(expression.getExpression1()).getIntLiter();
-        arg2 = evaluateExpression(expression.getExpression2()).getIntLiter();
-        return new ExpressionBuilder().buildBoolExpr(arg1 <= arg2);
-      case EQ:
-        boolean bool1 = evaluateExpression(expression.getExpression1()).getBoolLiter();
-        boolean bool2 = evaluateExpression(expression.getExpression2()).getBoolLiter();
-        return new ExpressionBuilder().buildBoolExpr(Objects.equals(bool1, bool2));
-      case NEQ:
-        bool1 = evaluateExpression(expression.getExpression1()).getBoolLiter();
-        bool2 = evaluateExpression(expression.getExpression2()).getBoolLiter();
-        return new ExpressionBuilder().buildBoolExpr(!Objects.equals(bool1, bool2));
-      case AND:
-        bool1 = evaluateExpression(expression.getExpression1()).getBoolLiter();
-        bool2 = evaluateExpression(expression.getExpression2()).getBoolLiter();
-        return new ExpressionBuilder().buildBoolExpr(bool1 && bool2);
-      case OR:
-        bool1 = evaluateExpression(expression.getExpression1()).getBoolLiter();
-        bool2 = evaluateExpression(expression.getExpression2()).getBoolLiter();
-        return new ExpressionBuilder().buildBoolExpr(bool1 || bool2);
-      case BRACKETS:
-        return evaluateExpression(expression.getExpression1());
-      default:
-        return null;
-    }
-  }
-
-  @Override
-  public List<Instruction> visitWhileStatement(Statement statement) {
-
-    List<Instruction> instructions = new ArrayList<>();
-
-    if (!expressionContainsIdent(statement.getExpression())) {
-      if (!statement.getExpression().getBoolLiter()) {
-        return instructions;
-      }
-    }
-
-    /* Generate Labels. */
-    String label1 = getLabel();
-    String label2 = getLabel();
-
-    // B Lx
-    instructions.add(new Branch(label1));
-
-    // Lx+1:
-    instructions.add(new LABEL(label2 + ":"));
-
-    /* Generate code for the while body and change scope. */
-    currentST = new SymbolTable(currentST);
-    int temp = spLocation;
-    instructions.addAll(visitStatement(statement.getStatement1()));
-    spLocation = temp;
-    currentST = currentST.getParent();
-
-    // Lx:
-    instructions.add(new LABEL(label1 + ":"));
-
-    /* Evaluate the condition expression. */
-    instructions.addAll(visitExpression(statement.getExpression()));
-
-    /* Retrieve register containing the evaluation of the conditional. */
-    Register rn = popUnusedRegister();
-
-    // CMP rn, #1
-    instructions.add(new CMP(rn, new Operand2(1)));
-
-    // BEQ Lx+1
-    instructions.add(new Branch(label2, Conditionals.EQ));
-
-    /* Mark the register rn as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitBeginStatement(Statement statement) {
-
-    /* Generate code for begin body and change scope. */
-    currentST = new SymbolTable(currentST);
-    int temp = spLocation;
-    List<Instruction> instructions = new ArrayList<>(visitStatement(statement.getStatement1()));
-    spLocation = temp;
-    currentST = currentST.getParent();
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitConcatStatement(Statement statement) {
-    List<Instruction> instructions = new ArrayList<>();
-
-    /* Generate the assembly code for each statement in the concatenated statement. */
-    instructions.addAll(visitStatement(statement.getStatement1()));
-    instructions.addAll(visitStatement(statement.getStatement2()));
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitReturnStatement(Statement statement) {
-
-    /* Evaluate the expression on the rhs of the return statement. */
-    List<Instruction> instructions = new ArrayList<>(visitExpression(statement.getExpression()));
-
-    /* Allocate a register to use for the duration of this function. */
-    Register rn = popUnusedRegister();
-
-    // MOV r0, rn
-    instructions.add(new MOV(r0, new Operand2(rn)));
-
-    instructions.add(new ADD(sp, sp, new Operand2(functionByte)));
-
-    instructions.add(new POP(pc));
-
-    /* Mark the allocated register as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitIntLiterExp(Expression expression) {
-
-    /* Allocate a register: rn for this function to use. */
-    Register rn = popUnusedRegister();
-
-    List<Instruction> instructions = new ArrayList<>();
-
-    // LDR rn, =i
-    instructions.add(new LDR(rn, expression.getIntLiter()));
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitBoolLiterExp(Expression expression) {
-
-    /* Allocate a register: rn for this function to use. */
-    Register rn = popUnusedRegister();
-
-    long boolVal = expression.getBoolLiter() ? 1 : 0;
-
-    List<Instruction> instructions = new ArrayList<>();
-
-    // MOV rn, #(1 | 0)
-    instructions.add(new MOV(rn, boolVal));
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitCharLiterExp(Expression expression) {
-
-    /* Allocate a register: rn for this function to use. */
-    Register rn = popUnusedRegister();
-
-    List<Instruction> instructions = new ArrayList<>();
-
-    // MOV rn, #charVal
-    switch (expression.getCharLiter()) {
-      case '\0':
-        instructions.add(new MOV(rn, 0));
-        break;
-      case '\b':
-        instructions.add(new MOV(rn, 8));
-        break;
-      case '\t':
-        instructions.add(new MOV(rn, 9));
-        break;
-      case '\n':
-        instructions.add(new MOV(rn, 10));
-        break;
-      case '\f':
-        instructions.add(new MOV(rn, 12));
-        break;
-      case '\r':
-        instructions.add(new MOV(rn, 13));
-        break;
-      default:
-        instructions.add(new MOV(rn, (Character) expression.getCharLiter()));
-    }
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitStringLiterExp(Expression expression) {
-
-    List<Instruction> instructions = new ArrayList<>();
-
-    String string = expression.getStringLiter();
-
-    String message = string.substring(string.indexOf('"') + 1, string.lastIndexOf('"'));
-    int messageLength = getMessageLength(message);
-
-    /* Generate a message number for the string. */
-    String msgLabel = getMessageLabel();
-    addMessage(new LABEL(msgLabel + ":"));
-    // length - 2 to remove to ensure quotation marks aren't include in the length
-    addMessage(new WORD(messageLength));
-    addMessage(new ASCII(string));
-
-    /* Allocate a register: rn for this function to use. */
-    Register rn = popUnusedRegister();
-
-    // LDR rn, =msg_0
-    instructions.add(new LDR(rn, msgLabel));
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  private int getMessageLength(String message) {
-
-    int messageLength = 0;
-
-    for (int i = 0; i < message.length(); i++) {
-      if (message.charAt(i) == '\\') {
-        i++;
-      }
-      messageLength++;
-    }
-
-    return messageLength;
-  }
-
-  @Override
-  public List<Instruction> visitIdentExp(Expression expression) {
-
-    List<Instruction> instructions = new ArrayList<>();
-
-    /* Retrieve the position of the variable on the stack from the symbol table. */
-    int stackOffset = currentST.getSPMapping(expression.getIdent());
-
-    /* Allocate a register: rn for this function to use. */
-    Register rn = popUnusedRegister();
-
-    String suffix = "";
-
-    if (sizeOfTypeOnStack(getExpressionType(expression)) == 1) {
-      suffix = "SB";
-    }
-
-    if (stackOffset != 0) {
-      instructions.add(new LDR(rn, new Operand2(sp, stackOffset), suffix));
-    } else {
-      instructions.add(new LDR(rn, new Operand2(sp), suffix));
-    }
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitArrayElemExp(Expression expression) {
-
-    AssignLHS assignLHS = new AssignLHSBuilder().buildArrayLHS(expression.getArrayElem());
-
-    Type type = currentST.getType(expression.getArrayElem().getIdent());
-
-    /* Calculate the address of the Array Elem and store it in register rn. */
-    List<Instruction> instructions = new ArrayList<>(visitLHS(assignLHS));
-
-    /* Retrieve the register rn, which contains the address of the array elem. */
-    Register rn = popUnusedRegister();
-
-    // LDR(SB) rn, [rn]
-    if (sizeOfTypeOnStack(type.getArrayType()) == 1) {
-      instructions.add(new LDR(rn, new Operand2(rn), "SB"));
-    } else {
-      instructions.add(new LDR(rn, new Operand2(rn)));
-    }
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  private String getIdentFromLHS(AssignLHS lhs) {
-    switch (lhs.getAssignType()) {
-      case ARRAYELEM:
-        return lhs.getArrayElem().getIdent();
-      //TODO Check PAIRELEM ident is correct
-      case PAIRELEM:
-        return lhs.getPairElem().getExpression().getIdent();
-      default:
-        return lhs.getIdent();
-    }
-  }
-
-  private List<Instruction> translateUnaryExpression(Expression expression) {
-    /* Generate assembly instructions for the expression. */
-    return new ArrayList<>(visitExpression(expression.getExpression1()));
-  }
-
-  @Override
-  public List<Instruction> visitNotExp(Expression expression) {
-    List<Instruction> instructions = translateUnaryExpression(expression);
-
-    /* Allocate a register: rn for this function to use. */
-    Register rn = popUnusedRegister();
-
-    // EOR rn, rn, #1
-    instructions.add(new EOR(rn, rn, new Operand2(1)));
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitNegExp(Expression expression) {
-
-    predefinedFunctions.add(P_THROW_OVERFLOW_ERROR);
-
-    List<Instruction> instructions = translateUnaryExpression(expression);
-
-    /* Allocate a register: rn for this function to use. */
-    Register rn = popUnusedRegister();
-
-    // RSBS rn, rn, #0
-    instructions.add(new RSB(rn, rn, new Operand2(0), Flags.S));
-
-    // BLVS p_throw_overflow_error
-    instructions.add(new Branch("p_throw_overflow_error", Conditionals.VS).setSuffix("L"));
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitLenExp(Expression expression) {
-    List<Instruction> instructions = translateUnaryExpression(expression);
-
-    /* Allocate a register: rn for this function to use. */
-    Register rn = popUnusedRegister();
-
-    // LDR rn, [rn]
-    instructions.add(new LDR(rn, new Operand2(rn)));
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitOrdExp(Expression expression) {
-    // MOV r4, expr
-    return translateUnaryExpression(expression);
-  }
-
-  @Override
-  public List<Instruction> visitChrExp(Expression expression) {
-    // MOV r4, expr
-    return translateUnaryExpression(expression);
-  }
-
-  @Override
-  public List<Instruction> visitReferenceExp(Expression expression) {
-    /* Allocate a register: rn for this function to use. */
-    Register rn = popUnusedRegister();
-
-    List<Instruction> instructions = new ArrayList<>();
-
-    // ADD rn, sp #i
-    instructions.add(new ADD(rn, sp,
-        new Operand2(currentST.getSPMapping(expression.getExpression1().getIdent()))));
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitDereferenceExp(Expression expression) {
-    List<Instruction> instructions = translateUnaryExpression(expression);
-
-    /* Allocate a register: rn for this function to use. */
-    Register rn = popUnusedRegister();
-
-    //LDR rn, [rn]
-    instructions.add(new LDR(rn, new Operand2(rn)));
-
-    /* Mark the register used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitNull(Expression expression) {
-    ArrayList<Instruction> instructions = new ArrayList<>();
-    Register rn = popUnusedRegister();
-    instructions.add(new LDR(rn, 0));
-    pushUnusedRegister(rn);
-    return instructions;
-  }
-
-  private List<Instruction> translateBinaryExpression(Expression expression) {
-
-    /* Generate assembly instructions for the first expression. */
-    List<Instruction> instructions = new ArrayList<>(visitExpression(expression.getExpression1()));
-
-    /* Declare that rn is in use. */
-    Register rn = popUnusedRegister();
-
-    /* Decides if the compiler should switch to accumulator mode*/
-    if (Objects.equals(rn.toString(), "r10")) {
-
-      /* Push result of expression1 in R10 into stack */
-      instructions.add(new PUSH(rn));
-
-      /* Declare rn is free to use */
-      pushUnusedRegister(rn);
-
-      /* Generate code for expression2, this is put into register 10 */
-      instructions.addAll(visitExpression(expression.getExpression2()));
-
-      /* Declare that rn is in use. */
-      rn = popUnusedRegister();
-
-      /* Register rs is the final unused register R11 */
-      Register rs = popUnusedRegister();
-
-      /* The result of expression 1 on the stack is popped into register rs */
-      instructions.add(new POP(rs));
-
-      /* Declare that rs is no longer in use. */
-      pushUnusedRegister(rs);
-
-      /* Declare that rn is no longer in use. */
-      pushUnusedRegister(rn);
-
-      return instructions;
-    }
-
-    /* Generate assembly instructions for the second expression. */
-    instructions.addAll(visitExpression(expression.getExpression2()));
-
-    /* Declare that rn is no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitPlusExp(Expression expression) {
-
-    predefinedFunctions.add(P_THROW_OVERFLOW_ERROR);
-
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
-
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
-
-    // ADDS Rn, Rn, Rn+1
-    instructions.add(new ADD(rn, rn, new Operand2(rm), Flags.S));
-
-    // BLVS p_throw_overflow_error
-    instructions.add(new Branch("p_throw_overflow_error", Conditionals.VS).setSuffix("L"));
-
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitMinusExp(Expression expression) {
-
-    predefinedFunctions.add(P_THROW_OVERFLOW_ERROR);
-
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
-
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
-
-    // TODO: Is this a strong enough check?
-    /* Swap registers for accumulator register allocation. */
-    if (Objects.equals(rn.toString(), "r10")) {
-      // SUBS Rn+1, Rn+1, Rn
-      instructions.add(new SUB(rm, rm, new Operand2(rn), Flags.S));
-    } else {
-      // SUBS Rn, Rn, Rn+1
-      instructions.add(new SUB(rn, rn, new Operand2(rm), Flags.S));
-    }
-
-    // BLVS p_throw_overflow_error
-    instructions.add(new Branch("p_throw_overflow_error", Conditionals.VS).setSuffix("L"));
-
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitMulExp(Expression expression) {
-
-    predefinedFunctions.add(P_THROW_OVERFLOW_ERROR);
+  /* Pre-defined Functions List. EnumSets keep the emitted function order deterministic. */
+  private final Set<Functions> predefinedFunctions = EnumSet.noneOf(Functions.class);
+  private final Set<LFunctions> libraryFunctions = EnumSet.noneOf(LFunctions.class);
 
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
+  /* Messages and pre-defined function bodies generated for this compilation. */
+  private final PredefinedFunctions predefined = new PredefinedFunctions();
 
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
+  /* The code of the function being generated and the numbering of its labels and string
+     messages. */
+  private final InstructionBuffer code = new InstructionBuffer();
+  private final Numbering labels = new Numbering("L");
+  private final Numbering messages = new Numbering("msg_");
 
-    // SMULL rn, rm, rn, rm
-    instructions.add(new SMULL(rn, rm, rn, rm));
+  /* Labels and messages numbered so far by the functions merged into this Converter. */
+  private int labelCount = 0;
 
-    // CMP Rn+1, Rn, ASR #31
-    instructions.add(new CMP(rm, rn, new Operand2(31)));
+  /* Bytes allocated generating the merged functions on other threads, which the allocation
+     counter of the thread generating the program does not see. */
+  private long forkedAllocatedBytes = 0;
 
-    // BLNE p_throw_overflow_error
-    instructions.add(new Branch("p_throw_overflow_error", Conditionals.NE).setSuffix("L"));
+  /* How hard to optimise: at level 0 every function is translated and emitted as its IR is built.
+     From level 1 only the functions main can call are generated, constants and copies are
+     propagated through the IR, arithmetic by constants reduced, loop invariants hoisted, and
+     redundant bounds checks and dead quads deleted first, and the selected instructions pass
+     through the peephole rules. */
+  public static final int DEFAULT_OPTIMISATION_LEVEL = 1;
 
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
+  private final int optimisationLevel;
+  private final Peephole peephole = new Peephole(Peephole.standardRules());
 
-    return instructions;
+  public Converter() {
+    this(DEFAULT_OPTIMISATION_LEVEL);
   }
 
-  @Override
-  public List<Instruction> visitDivExp(Expression expression) {
-
-    //Set isDiv to True for visitProgram
-    predefinedFunctions.add(P_CHECK_DIVIDE_BY_ZERO);
-
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
+  public Converter(int optimisationLevel) {
+    this.optimisationLevel = optimisationLevel;
+  }
 
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
+  /* Returns the assembly instructions of the whole program. */
+  public List<Instruction> generate(Program program) {
 
-    // TODO: Is this a strong enough check?
-    /* Swap registers for accumulator register allocation. */
-    if (Objects.equals(rn.toString(), "r10")) {
-      // MOV R0, Rn+1
-      instructions.add(new MOV(r0, new Operand2(rm)));
+    List<Instruction> instructions = new ArrayList<>();
 
-      // MOV R1, Rn
-      instructions.add(new MOV(r1, new Operand2(rn)));
+    try {
+      emitProgram(program, instructions::addAll);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
 
-    // MOV R0, Rn
-    instructions.add(new MOV(r0, new Operand2(rn)));
-
-    // MOV R1, Rn+1
-    instructions.add(new MOV(r1, new Operand2(rm)));
-
-    // BL p_check_divide_by_zero
-    instructions.add(new Branch("p_check_divide_by_zero").setSuffix("L"));
-
-    // BL __aeabi_idiv
-    instructions.add(new Branch("__aeabi_idiv").setSuffix("L"));
-
-    // MOV Rn, R0
-    instructions.add(new MOV(rn, new Operand2(r0)));
-
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
-
     return instructions;
   }
 
-  @Override
-  public List<Instruction> visitModExp(Expression expression) {
+  /* Generates the program one function at a time, handing each block to the sink in program
+     order. The runtime routines and the data section are only known once every function has
+     been generated, so they are emitted at the end.
 
-    //Set isDiv to True for visitProgram
-    predefinedFunctions.add(P_CHECK_DIVIDE_BY_ZERO);
+     Functions do not depend on each other, so each is generated by a Converter of its own on the
+     common fork-join pool while this thread generates main. Their labels and messages are
+     numbered from zero and rebased as they are merged in program order, so the output is the same
+     as generating them one after another.
 
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
+     Each block passes through the peephole rules on its way to the sink, once its labels have
+     their final numbers. */
+  public void emitProgram(Program program, InstructionSink output) throws IOException {
 
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
+    InstructionSink sink = optimisationLevel < 1 ? output
+        : instructions -> output.emit(peephole.optimise(instructions));
 
-    // TODO: Is this a strong enough check?
-    /* Swap registers for accumulator register allocation. */
-    if (Objects.equals(rn.toString(), "r10")) {
-      // MOV R0, Rn+1
-      instructions.add(new MOV(r0, new Operand2(rm)));
+    sink.emit(List.of(new Directive(DirectiveType.TEXT), new LABEL(""),
+        new Directive(DirectiveType.GLOBAL)));
 
-      // MOV R1, Rn
-      instructions.add(new MOV(r1, new Operand2(rn)));
-    } else {
-      // MOV R0, Rn
-      instructions.add(new MOV(r0, new Operand2(rn)));
-
-      // MOV R1, Rn+1
-      instructions.add(new MOV(r1, new Operand2(rm)));
+    /* Generate the assembly instructions for each function. Without a second core to run them on
+       they are generated in place as they are merged, keeping one function in memory at a time. */
+    boolean parallel = ForkJoinPool.getCommonPoolParallelism() > 1;
+    List<ForkJoinTask<Converter>> functions = new ArrayList<>();
+    Set<String> called = optimisationLevel < 1 ? null : calledFunctions(program);
+    Thread caller = Thread.currentThread();
+    for (Function function : program.getFunctions()) {
+      if (called != null && !called.contains(function.getIdent())) {
+        continue;
+      }
+      ForkJoinTask<Converter> task = ForkJoinTask.adapt(() -> {
+        long startBytes = CompileStats.allocatedBytes();
+        Converter converter = new Converter(optimisationLevel);
+        converter.translate(new IRBuilder().buildFunction(function));
+        if (Thread.currentThread() != caller) {
+          converter.forkedAllocatedBytes = CompileStats.allocatedBytes() - startBytes;
+        }
+        return converter;
+      });
+      functions.add(parallel ? task.fork() : task);
     }
 
-    // BL p_check_divide_by_zero
-    instructions.add(new Branch("p_check_divide_by_zero").setSuffix("L"));
+    Converter main = new Converter(optimisationLevel);
+    main.translate(new IRBuilder().buildMain(program));
 
-    // BL __aeabi_idiv
-    instructions.add(new Branch("__aeabi_idivmod").setSuffix("L"));
+    for (ForkJoinTask<Converter> function : functions) {
+      sink.emit(merge(parallel ? function.join() : function.invoke()));
+    }
+    sink.emit(merge(main));
 
-    // MOV Rn, R1
-    instructions.add(new MOV(rn, new Operand2(r1)));
+    if (!libraryFunctions.isEmpty()) {
+      sink.emit(getInstructions(libraryFunctions, predefinedFunctions));
+    }
 
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
+    if (!predefinedFunctions.isEmpty()) {
+      sink.emit(predefined.getInstructions(predefinedFunctions));
+    }
 
-    return instructions;
+    if (!predefined.getMessages().isEmpty()) {
+      sink.emit(List.of(new LABEL(""), new Directive(DirectiveType.DATA), new LABEL("")));
+      sink.emit(predefined.getMessages());
+    }
   }
 
-  @Override
-  public List<Instruction> visitGreaterExp(Expression expression) {
+  /* The functions main can call, directly or through other functions. */
+  private static Set<String> calledFunctions(Program program) {
 
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
-
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
-
-    // TODO: Is this a strong enough check?
-    /* Swap registers for accumulator register allocation. */
-    if (Objects.equals(rn.toString(), "r10")) {
-      // CMP Rn+1, Rn
-      instructions.add(new CMP(rm, new Operand2(rn)));
-    } else {
-      // CMP Rn, Rn+1
-      instructions.add(new CMP(rn, new Operand2(rm)));
+    Map<String, Function> functions = new HashMap<>();
+    for (Function function : program.getFunctions()) {
+      functions.put(function.getIdent(), function);
+    }
+
+    Set<String> called = new HashSet<>();
+    Deque<Statement> pending = new ArrayDeque<>();
+    pending.push(program.getStatement());
+
+    while (!pending.isEmpty()) {
+      Statement statement = pending.pop();
+      switch (statement.getStatType()) {
+        case DECLARATION:
+        case REASSIGNMENT:
+          AssignRHS rhs = statement.getRHS();
+          if (rhs.getAssignType() == AssignRHS.RHSType.CALL
+              && called.add(rhs.getFunctionIdent())
+              && functions.containsKey(rhs.getFunctionIdent())) {
+            pending.push(functions.get(rhs.getFunctionIdent()).getStatement());
+          }
+          break;
+        case IF:
+          pending.push(statement.getStatement1());
+          pending.push(statement.getStatement2());
+          break;
+        case WHILE:
+        case BEGIN:
+          pending.push(statement.getStatement1());
+          break;
+        case SEQUENCE:
+          statement.getStatements().forEach(pending::push);
+          break;
+      }
     }
 
-    // MOVLE Rn, #0
-    instructions.add(new MOV(rn, 0, Conditionals.LE));
-
-    // MOVGT Rn, #1
-    instructions.add(new MOV(rn, 1, Conditionals.GT));
-
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
-
-    return instructions;
+    return called;
   }
 
-  @Override
-  public List<Instruction> visitGreaterEqExp(Expression expression) {
-
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
+  /* The number of times each peephole rule has rewritten the code emitted so far. */
+  public Map<String, Integer> getPeepholeHits() {
+    return peephole.getHits();
+  }
 
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
+  /* Takes over the runtime routines and messages a function's Converter needs, numbering its
+     labels and messages after those merged before it, and returns its code. */
+  private List<Instruction> merge(Converter function) {
 
-    // TODO: Is this a strong enough check?
-    /* Swap registers for accumulator register allocation. */
-    if (Objects.equals(rn.toString(), "r10")) {
-      // CMP Rn+1, Rn
-      instructions.add(new CMP(rm, new Operand2(rn)));
-    } else {
-      // CMP Rn, Rn+1
-      instructions.add(new CMP(rn, new Operand2(rm)));
-    }
+    function.labels.setBase(labelCount);
+    labelCount += function.labels.getCount();
+    predefined.addMessages(function.predefined.getMessages(), function.messages);
 
-    // MOVLT Rn, #0
-    instructions.add(new MOV(rn, 0, Conditionals.LT));
+    predefinedFunctions.addAll(function.predefinedFunctions);
+    libraryFunctions.addAll(function.libraryFunctions);
+    forkedAllocatedBytes += function.forkedAllocatedBytes;
 
-    // MOVGE Rn, #1
-    instructions.add(new MOV(rn, 1, Conditionals.GE));
+    return function.code.getInstructions();
+  }
 
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
+  /* The bytes allocated on the fork-join pool by emitProgram, for --stats. */
+  public long getForkedAllocatedBytes() {
+    return forkedAllocatedBytes;
+  }
 
-    return instructions;
+  private void translate(ControlFlowGraph graph) {
+    if (optimisationLevel >= 1) {
+      new ConstantPropagation().propagate(graph);
+      new CopyPropagation().propagate(graph);
+      new StrengthReduction().reduce(graph);
+      new LoopInvariantCodeMotion().hoist(graph);
+      new BoundsCheckElimination().eliminate(graph);
+      new DeadCodeElimination().eliminate(graph);
+    }
+    new RegisterAllocator().allocate(graph);
+    select(graph);
   }
 
-  @Override
-  public List<Instruction> visitLessExp(Expression expression) {
+  private Register registerOf(Temp temp) {
+    return new Register(temp.getRegister());
+  }
 
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
+  /* Translates the quads of a function whose temps have been allocated registers. */
+  private void select(ControlFlowGraph graph) {
 
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
+    this.graph = graph;
 
-    // TODO: Is this a strong enough check?
-    /* Swap registers for accumulator register allocation. */
-    if (Objects.equals(rn.toString(), "r10")) {
-      // CMP Rn+1, Rn
-      instructions.add(new CMP(rm, new Operand2(rn)));
-    } else {
-      // CMP Rn, Rn+1
-      instructions.add(new CMP(rn, new Operand2(rm)));
+    /* Find the callee-saved registers the function uses and how often each temp is read. */
+    useCounts = new int[graph.getTempCount()];
+    SortedSet<Integer> used = new TreeSet<>();
+    for (BasicBlock block : graph.getBlocks()) {
+      for (Quad quad : block.getQuads()) {
+        for (Temp temp : quad.getUses()) {
+          useCounts[temp.getNumber()]++;
+        }
+        if (quad.getDest() != null) {
+          used.add(quad.getDest().getRegister());
+        }
+      }
+    }
+    savedRegisters = new ArrayList<>();
+    for (int register : used) {
+      savedRegisters.add(new Register(register));
+    }
+
+    /* Give a word of the frame to each slot still in use, in slot order. */
+    frameOffsets = new int[graph.getSlotCount()];
+    frameBytes = 0;
+    boolean[] inFrame = new boolean[graph.getSlotCount()];
+    for (BasicBlock block : graph.getBlocks()) {
+      for (Quad quad : block.getQuads()) {
+        switch (quad.getOpcode()) {
+          case LOAD_SLOT:
+          case STORE_SLOT:
+          case SLOT_ADDRESS:
+            inFrame[(int) quad.getValue()] = true;
+        }
+      }
+    }
+    for (int slot = graph.getParameterCount(); slot < graph.getSlotCount(); slot++) {
+      if (inFrame[slot]) {
+        frameOffsets[slot] = frameBytes;
+        frameBytes += 4;
+      }
     }
 
-    // MOVGE Rn, #0
-    instructions.add(new MOV(rn, 0, Conditionals.GE));
+    /* Number the labels of the blocks branched to, in layout order. */
+    List<BasicBlock> blocks = graph.getBlocks();
+    Set<BasicBlock> targets = new HashSet<>();
+    for (int i = 0; i < blocks.size(); i++) {
+      targets.addAll(branchTargets(blocks.get(i), next(blocks, i)));
+    }
+    for (BasicBlock block : blocks) {
+      if (targets.contains(block)) {
+        blockLabels.put(block, labels.next());
+      }
+    }
 
-    // MOVLT Rn, #1
-    instructions.add(new MOV(rn, 1, Conditionals.LT));
+    code.add(new LABEL(graph.getName() + ":"));
 
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
+    List<Register> pushed = new ArrayList<>(savedRegisters);
+    pushed.add(lr);
+    code.add(new PUSH(pushed));
 
-    return instructions;
-  }
+    adjustStack(frameBytes, false);
 
-  @Override
-  public List<Instruction> visitLessEqExp(Expression expression) {
+    for (int i = 0; i < blocks.size(); i++) {
+      BasicBlock block = blocks.get(i);
+      if (blockLabels.containsKey(block)) {
+        code.add(new LABEL(blockLabels.get(block).definition()));
+      }
+      selectBlock(block, next(blocks, i));
+    }
 
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
+    code.add(new Directive(DirectiveType.LTORG));
+  }
 
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
+  private BasicBlock next(List<BasicBlock> blocks, int i) {
+    return i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+  }
 
-    // TODO: Is this a strong enough check?
-    /* Swap registers for accumulator register allocation. */
-    if (Objects.equals(rn.toString(), "r10")) {
-      // CMP Rn+1, Rn
-      instructions.add(new CMP(rm, new Operand2(rn)));
+  /* The blocks the terminator of block names in a branch instruction, leaving out the one it falls
+     through to. */
+  private List<BasicBlock> branchTargets(BasicBlock block, BasicBlock next) {
+    List<BasicBlock> targets = new ArrayList<>(block.getSuccessors());
+    if (targets.size() == 2 && targets.get(0) == next) {
+      targets.remove(0);
     } else {
-      // CMP Rn, Rn+1
-      instructions.add(new CMP(rn, new Operand2(rm)));
+      targets.remove(next);
     }
-
-    // MOVGT Rn, #0
-    instructions.add(new MOV(rn, 0, Conditionals.GT));
-
-    // MOVLE Rn, #1
-    instructions.add(new MOV(rn, 1, Conditionals.LE));
-
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
-
-    return instructions;
+    return targets;
   }
 
-  @Override
-  public List<Instruction> visitEqExp(Expression expression) {
-
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
-
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
-
-    // CMP Rn, Rn+1
-    instructions.add(new CMP(rn, new Operand2(rm)));
-
-    // MOVEQ Rn, #1
-    instructions.add(new MOV(rn, 1, Conditionals.EQ));
-
-    // MOVNE Rn, #0
-    instructions.add(new MOV(rn, 0, Conditionals.NE));
-
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
-
-    return instructions;
+  /* Moves sp down, or back up, by the given bytes in steps an immediate can encode. */
+  private void adjustStack(int bytes, boolean release) {
+    while (bytes > 0) {
+      Operand2 step = new Operand2(Math.min(1024, bytes));
+      code.add(release ? new ADD(sp, sp, step) : new SUB(sp, sp, step));
+      bytes -= 1024;
+    }
   }
 
-  @Override
-  public List<Instruction> visitNeqExp(Expression expression) {
-
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
-
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
-
-    // CMP Rn, Rn+1
-    instructions.add(new CMP(rn, new Operand2(rm)));
-
-    // MOVNE Rn, #1
-    instructions.add(new MOV(rn, 1, Conditionals.NE));
-
-    // MOVEQ Rn, #0
-    instructions.add(new MOV(rn, 0, Conditionals.EQ));
-
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
-
-    return instructions;
+  /* The offset of a slot from sp: parameters lie above the saved registers in the caller's
+     argument area, and every other slot in this function's frame. */
+  private int slotOffset(long slot) {
+    int offset;
+    if (slot < graph.getParameterCount()) {
+      offset = frameBytes + 4 * (savedRegisters.size() + 1)
+          + graph.getParameterOffset((int) slot);
+    } else {
+      offset = frameOffsets[(int) slot];
+    }
+    return offset + argumentBytes;
   }
 
-  @Override
-  public List<Instruction> visitAndExp(Expression expression) {
-
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
-
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
-
-    // AND r4, r4, r5
-    instructions.add(new BoolOp(BoolOp.BoolOpType.AND, rn, rn, rm));
-
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
-
-    return instructions;
+  private Operand2 address(Register base, long offset) {
+    return offset == 0 ? new Operand2(base) : new Operand2(base, (int) offset);
   }
 
-  @Override
-  public List<Instruction> visitOrExp(Expression expression) {
-
-    /* Generate assembly code to evaluate both expressions and store them in Rn, Rn+1. */
-    List<Instruction> instructions = translateBinaryExpression(expression);
-
-    /* Allocate two registers: rn and rm (rn+1) for this function to use. */
-    Register rn = popUnusedRegister();
-    Register rm = popUnusedRegister();
-
-    // ORR r4, r4, r5
-    instructions.add(new BoolOp(BoolOp.BoolOpType.ORR, rn, rn, rm));
-
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
-
-    return instructions;
+  private void load(Register dest, Operand2 address, int size) {
+    code.add(size == 1 ? new LDR(dest, address, "SB") : new LDR(dest, address));
   }
 
-  @Override
-  public List<Instruction> visitExprRHS(AssignRHS rhs) {
-    return visitExpression(rhs.getExpression1());
+  private void store(Register src, Operand2 address, int size) {
+    code.add(size == 1 ? new STR(src, address, "B") : new STR(src, address));
   }
 
-  @Override
-  public List<Instruction> visitArrayRHS(AssignRHS rhs) {
-
-    List<Expression> array = rhs.getArray();
-    List<Instruction> instructions = new ArrayList<>();
-
-    int mallocSize = 4;
-    int typeSize = 0;
-
-    /* If array is not empty get stack size of type. */
-    if (!array.isEmpty()) {
-      typeSize = sizeOfTypeOnStack(getExpressionType(array.get(0)));
-    }
-
-    for (int i = 0; i < array.size(); i++) {
-      mallocSize += typeSize;
-    }
-
-    // LDR r0, =mallocSize
-    instructions.add(new LDR(r0, mallocSize));
-
-    // BL malloc
-    instructions.add(new Branch("malloc").setSuffix("L"));
+  private void call(String routine) {
+    code.add(new Branch(routine).setSuffix("L"));
+  }
 
-    /* Allocate one register: rn for this function to use. */
-    Register rn = popUnusedRegister();
+  private Conditionals conditional(Condition condition) {
+    return Conditionals.valueOf(condition.name());
+  }
 
-    // MOV rn, r0
-    instructions.add(new MOV(rn, new Operand2(r0)));
+  private void selectBlock(BasicBlock block, BasicBlock next) {
 
-    int offset = 4;
-    for (Expression expression : array) {
+    List<Quad> quads = block.getQuads();
 
-      /* Generate instructions to evaluate each expression. */
-      instructions.addAll(visitExpression(expression));
+    for (int i = 0; i < quads.size(); i++) {
+      Quad quad = quads.get(i);
 
-      /* Retrieve the register containing the evaluated expression. */
-      Register rm = popUnusedRegister();
+      /* A comparison only read by the branch after it sets the flags the branch tests. */
+      if (quad.getOpcode() == Quad.Opcode.COMPARE && i + 1 < quads.size()) {
+        Quad branch = quads.get(i + 1);
+        if (branch.getOpcode() == Quad.Opcode.BRANCH && branch.getSrc1() == quad.getDest()
+            && useCounts[quad.getDest().getNumber()] == 1) {
+          code.add(new CMP(registerOf(quad.getSrc1()), new Operand2(registerOf(quad.getSrc2()))));
+          selectBranch(branch, quad.getCondition(), next);
+          return;
+        }
+      }
 
-      /* Store the evaluated expression into the malloc location at an offset. */
-      if (typeSize == 1) {
-        instructions.add(new STR(rm, new Operand2(rn, offset), "B"));
+      if (quad.getOpcode() == Quad.Opcode.BRANCH) {
+        code.add(new CMP(registerOf(quad.getSrc1()), new Operand2(0)));
+        selectBranch(quad, Condition.NE, next);
       } else {
-        instructions.add(new STR(rm, new Operand2(rn, offset)));
+        select(quad, next);
       }
-
-      /* Mark register rm as no longer in use. */
-      pushUnusedRegister(rm);
-
-      offset += typeSize;
     }
+  }
 
-    /* Allocate a register: rm for this function to use. */
-    Register rm = popUnusedRegister();
-
-    // LDR rm, =array.size()
-    instructions.add(new LDR(rm, array.size()));
-
-    // STR rm, [rn]
-    instructions.add(new STR(rm, new Operand2(rn)));
-
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
-
-    return instructions;
+  /* Branches to the target of a BRANCH when the flags satisfy condition, and to its else target
+     otherwise, falling through to next where it can. */
+  private void selectBranch(Quad branch, Condition condition, BasicBlock next) {
+    if (branch.getTarget() == next) {
+      code.add(new Branch(blockLabels.get(branch.getElseTarget()),
+          conditional(condition.negate())));
+      return;
+    }
+    code.add(new Branch(blockLabels.get(branch.getTarget()), conditional(condition)));
+    if (branch.getElseTarget() != next) {
+      code.add(new Branch(blockLabels.get(branch.getElseTarget())));
+    }
   }
 
-  @Override
-  public List<Instruction> visitNewPairRHS(AssignRHS rhs) {
+  private void select(Quad quad, BasicBlock next) {
 
-    predefinedFunctions.add(P_CHECK_NULL_POINTER);
+    Register dest = quad.getDest() == null ? null : registerOf(quad.getDest());
+    Register src1 = quad.getSrc1() == null ? null : registerOf(quad.getSrc1());
+    Register src2 = quad.getSrc2() == null ? null : registerOf(quad.getSrc2());
 
-    List<Instruction> instructions = new ArrayList<>();
-    Register rn, rm;
+    switch (quad.getOpcode()) {
 
-    // LDR r0, =8
-    /* Loads the value 8 into register 0, as every pair is 8 bytes on the heap. */
-    instructions.add(new LDR(r0, 8));
+      case CONST:
+        loadValue(dest, quad.getValue());
+        break;
+
+      case STRING:
+        // LDR rd, =msg_i
+        code.add(new LDR(dest, message(quad.getSymbol())));
+        break;
 
-    // BL malloc
-    instructions.add(new Branch("malloc").setSuffix("L"));
+      case MOVE:
+        if (quad.getDest().getRegister() != quad.getSrc1().getRegister()) {
+          code.add(new MOV(dest, new Operand2(src1)));
+        }
+        break;
 
-    /* Allocate one register: rn for this function to use. */
-    rn = popUnusedRegister();
+      case ADD:
+        predefinedFunctions.add(P_THROW_OVERFLOW_ERROR);
+        // ADDS rd, rn, rm
+        code.add(new ADD(dest, src1, new Operand2(src2), Flags.S));
+        // BLVS p_throw_overflow_error
+        code.add(new Branch("p_throw_overflow_error", Conditionals.VS).setSuffix("L"));
+        break;
 
-    // MOV rn, r0
-    instructions.add(new MOV(rn, new Operand2(r0)));
+      case SUB:
+        predefinedFunctions.add(P_THROW_OVERFLOW_ERROR);
+        // SUBS rd, rn, rm
+        code.add(new SUB(dest, src1, new Operand2(src2), Flags.S));
+        // BLVS p_throw_overflow_error
+        code.add(new Branch("p_throw_overflow_error", Conditionals.VS).setSuffix("L"));
+        break;
 
-    /* Evaluate the first expression in the pair. */
-    instructions.addAll(visitExpression(rhs.getExpression1()));
+      case MUL:
+        if (src2 == null) {
+          multiplyByValue(dest, src1, quad.getValue());
+          break;
+        }
+        predefinedFunctions.add(P_THROW_OVERFLOW_ERROR);
+        // SMULL rd, r12, rn, rm
+        code.add(new SMULL(dest, r12, src1, src2));
+        // CMP r12, rd, ASR #31
+        code.add(new CMP(r12, dest, new Operand2(31)));
+        // BLNE p_throw_overflow_error
+        code.add(new Branch("p_throw_overflow_error", Conditionals.NE).setSuffix("L"));
+        break;
 
+      case DIV:
+      case MOD:
+        if (src2 == null) {
+          divideByValue(quad.getOpcode(), dest, src1, quad.getValue());
+          break;
+        }
+        predefinedFunctions.add(P_CHECK_DIVIDE_BY_ZERO);
+        code.add(new MOV(r0, new Operand2(src1)));
+        code.add(new MOV(r1, new Operand2(src2)));
+        call("p_check_divide_by_zero");
+        if (quad.getOpcode() == Quad.Opcode.DIV) {
+          call("__aeabi_idiv");
+          code.add(new MOV(dest, new Operand2(r0)));
+        } else {
+          call("__aeabi_idivmod");
+          code.add(new MOV(dest, new Operand2(r1)));
+        }
+        break;
 
-    /* Retrieve the register containing the value of the first expression. */
-    rm = popUnusedRegister();
+      case NEG:
+        predefinedFunctions.add(P_THROW_OVERFLOW_ERROR);
+        // RSBS rd, rn, #0
+        code.add(new RSB(dest, src1, new Operand2(0), Flags.S));
+        // BLVS p_throw_overflow_error
+        code.add(new Branch("p_throw_overflow_error", Conditionals.VS).setSuffix("L"));
+        break;
 
-    int sizeOfExp1 = sizeOfTypeOnStack(getExpressionType(rhs.getExpression1()));
-    int sizeOfExp2 = sizeOfTypeOnStack(getExpressionType(rhs.getExpression2()));
+      case NOT:
+        // EOR rd, rn, #1
+        code.add(new EOR(dest, src1, new Operand2(1)));
+        break;
 
-    // LDR r0, =sizeOfType
-    instructions.add(new LDR(r0, sizeOfExp1));
+      case AND:
+        code.add(new BoolOp(BoolOp.BoolOpType.AND, dest, src1, src2));
+        break;
 
-    // BL malloc
-    instructions.add(new Branch("malloc").setSuffix("L"));
+      case OR:
+        code.add(new BoolOp(BoolOp.BoolOpType.ORR, dest, src1, src2));
+        break;
 
-    if (sizeOfExp1 == 1) {
-      // STRB rm, [r0]
-      instructions.add(new STR(rm, new Operand2(r0), "B"));
-    } else {
-      // STR rm, [r0]
-      instructions.add(new STR(rm, new Operand2(r0)));
-    }
+      case COMPARE:
+        // CMP rn, rm
+        code.add(new CMP(src1, new Operand2(src2)));
+        // MOV<cond> rd, #1
+        code.add(new MOV(dest, 1, conditional(quad.getCondition())));
+        // MOV<!cond> rd, #0
+        code.add(new MOV(dest, 0, conditional(quad.getCondition().negate())));
+        break;
 
-    // STR r0, [rn]
-    instructions.add(new STR(r0, new Operand2(rn)));
+      case LOAD:
+        load(dest, address(src1, quad.getValue()), quad.getSize());
+        break;
 
-    /* Mark the register rm as no longer in use. */
-    pushUnusedRegister(rm);
+      case LENGTH:
+        // LDR rd, [rn]
+        load(dest, address(src1, 0), 4);
+        break;
 
-    /* Evaluate the second expression in the pair. */
-    instructions.addAll(visitExpression(rhs.getExpression2()));
+      case STORE:
+        store(src2, address(src1, quad.getValue()), quad.getSize());
+        break;
 
-    /* Retrieve the register containing the value of the first expression. */
-    rm = popUnusedRegister();
+      case LOAD_SLOT:
+        load(dest, address(sp, slotOffset(quad.getValue())), quad.getSize());
+        break;
 
-    // LDR r0, =sizeOfType
-    instructions.add(new LDR(r0, sizeOfTypeOnStack(getExpressionType(rhs.getExpression2()))));
+      case STORE_SLOT:
+        store(src1, address(sp, slotOffset(quad.getValue())), quad.getSize());
+        break;
 
-    // BL malloc
-    instructions.add(new Branch("malloc").setSuffix("L"));
+      case SLOT_ADDRESS:
+        // ADD rd, sp, #offset
+        code.add(new ADD(dest, sp, new Operand2(slotOffset(quad.getValue()))));
+        break;
 
-    if (sizeOfExp2 == 1) {
-      // STRB rm, [r0]
-      instructions.add(new STR(rm, new Operand2(r0), "B"));
-    } else {
-      // STR rm, [r0]
-      instructions.add(new STR(rm, new Operand2(r0)));
-    }
+      case ELEMENT:
+        if (quad.getSize() == 1) {
+          // ADD rd, rn, rm
+          code.add(new ADD(dest, src1, new Operand2(src2)));
+        } else {
+          // ADD rd, rn, rm, LSL #2
+          code.add(new ADD(dest, src1, new Operand2(src2), 2));
+        }
+        // ADD rd, rd, #4
+        code.add(new ADD(dest, dest, new Operand2(4)));
+        break;
 
-    // STR r0, [rn, #4]
-    instructions.add(new STR(r0, new Operand2(rn, 4)));
+      case CHECK_BOUNDS:
+        predefinedFunctions.add(P_CHECK_ARRAY_BOUNDS);
+        code.add(new MOV(r0, new Operand2(src1)));
+        code.add(new MOV(r1, new Operand2(src2)));
+        call("p_check_array_bounds");
+        break;
 
-    /* Mark the two registers used in the evaluation of this function as no longer in use. */
-    pushUnusedRegister(rm);
-    pushUnusedRegister(rn);
+      case CHECK_NULL:
+        predefinedFunctions.add(P_CHECK_NULL_POINTER);
+        code.add(new MOV(r0, new Operand2(src1)));
+        call("p_check_null_pointer");
+        break;
 
-    return instructions;
-  }
+      case MALLOC:
+        code.add(new LDR(r0, quad.getValue()));
+        call("malloc");
+        code.add(new MOV(dest, new Operand2(r0)));
+        break;
 
-  @Override
-  public List<Instruction> visitPairElemRHS(AssignRHS rhs) {
+      case ARGUMENT:
+        // STR(B) rn, [sp, #-size]!
+        code.add((quad.getSize() == 1 ? new STR(src1, new Operand2(sp, -1), "B")
+            : new STR(src1, new Operand2(sp, -4))).setExclaim());
+        argumentBytes += quad.getSize();
+        break;
 
-    PairElem pairElem = rhs.getPairElem();
+      case CALL:
+        call(quad.getSymbol());
+        if (quad.getValue() > 0) {
+          code.add(new ADD(sp, sp, new Operand2((int) quad.getValue())));
+        }
+        argumentBytes -= quad.getValue();
+        code.add(new MOV(dest, new Operand2(r0)));
+        if (isLibraryFunction(quad.getSymbol())) {
+          libraryFunctions.add(getLibraryFunction(quad.getSymbol()));
+        }
+        break;
 
-    /* Place pairElem inside a new AssignLHS class. */
-    AssignLHS assignLHS = new AssignLHSBuilder().buildPairLHS(pairElem);
+      case RUNTIME:
+        if (src1 != null) {
+          code.add(new MOV(r0, new Operand2(src1)));
+        }
+        call(quad.getSymbol());
+        if (quad.getSymbol().startsWith("p_")) {
+          predefinedFunctions.add(Functions.valueOf(quad.getSymbol().toUpperCase()));
+        }
+        break;
 
-    /* Calculate the address of the pair elem and store it in the first unused register.
-       Uses our already defined visitPairElemLHS function to reduce duplication. */
-    List<Instruction> instructions = new ArrayList<>(visitLHS(assignLHS));
+      case JUMP:
+        if (quad.getTarget() != next) {
+          code.add(new Branch(blockLabels.get(quad.getTarget())));
+        }
+        break;
 
-    /* Retrieve first unused register. */
-    Register rn = popUnusedRegister();
+      case RETURN:
+        code.add(new MOV(r0, new Operand2(src1)));
+        adjustStack(frameBytes, true);
+        List<Register> popped = new ArrayList<>(savedRegisters);
+        popped.add(pc);
+        code.add(new POP(popped));
+        break;
 
-    Type type = getExpressionType(pairElem.getExpression());
+      case EXIT:
+        code.add(new MOV(r0, new Operand2(src1)));
+        call("exit");
+        break;
 
-    if (pairElem.getType() == PairElem.PairElemType.FST) {
-      type = type.getFstType();
-    } else {
-      type = type.getSndType();
+      default:
+        throw new IllegalStateException("unexpected " + quad);
     }
+  }
 
-    if (sizeOfTypeOnStack(type) == 1) {
-      // LDRSB rn, [rn]
-      instructions.add(new LDR(rn, new Operand2(rn), "SB"));
+  /* Puts a 32-bit constant in dest: with a MOV if it fits the unshifted 8-bit immediate, from the
+     literal pool otherwise. */
+  private void loadValue(Register dest, long value) {
+    if (value >= 0 && value <= 255) {
+      // MOV rd, #i
+      code.add(new MOV(dest, value));
     } else {
-      // LDR rn, [rn]
-      instructions.add(new LDR(rn, new Operand2(rn)));
+      // LDR rd, =i
+      code.add(new LDR(dest, value));
     }
-
-    pushUnusedRegister(rn);
-
-    return instructions;
   }
 
-  @Override
-  public List<Instruction> visitCallRHS(AssignRHS rhs) {
+  /* Multiplies by 0, 1, -1 or a power of two. A shifted product overflowed unless shifting it
+     back arithmetically gives the multiplicand again. */
+  private void multiplyByValue(Register dest, Register src, long value) {
 
-    List<Instruction> instructions = new ArrayList<>();
-    int totalSize = 0;
-
-    for (int i = rhs.getArgList().size() - 1; i >= 0; i--) {
-
-      Expression expression = rhs.getArgList().get(i);
-
-      /* Evaluate argument and store in first unused register. */
-      instructions.addAll(visitExpression(expression));
-
-      /* Retrieve the first unused register. */
-      Register rn = popUnusedRegister();
-
-      int expSize = sizeOfTypeOnStack(getExpressionType(expression));
-
-      // STR(B) rn, [sp]
-      if (expSize == 1) {
-        instructions.add(new STR(rn, new Operand2(sp, -expSize), "B").setExclaim());
-      } else {
-        instructions.add(new STR(rn, new Operand2(sp, -expSize)).setExclaim());
-      }
-
-      totalSize += expSize;
-      currentST.incrementOffset(expSize);
-
-      /* Mark register rn as no longer in use. */
-      pushUnusedRegister(rn);
+    if (value == 0) {
+      // MOV rd, #0
+      code.add(new MOV(dest, 0));
+      return;
     }
-
-    currentST.resetOffset();
-
-    // BL f_functionIdentity
-    instructions.add(new Branch(rhs.getFunctionIdent()).setSuffix("L"));
-
-    // ADD sp, sp, #totalSize
-    instructions.add(new ADD(sp, sp, new Operand2(totalSize)));
-
-    /* Retrieve the first unused register. */
-    Register rn = popUnusedRegister();
-
-    // MOV rn, r0
-    instructions.add(new MOV(rn, new Operand2(r0)));
-
-    /* Mark register rn as no longer in use. */
-    pushUnusedRegister(rn);
-
-    if (isLibraryFunction(rhs.getFunctionIdent())) {
-      libraryFunctions.add(getLibraryFunction(rhs.getFunctionIdent()));
+    if (value == 1) {
+      // MOV rd, rn
+      code.add(new MOV(dest, new Operand2(src)));
+      return;
     }
 
-    return instructions;
+    predefinedFunctions.add(P_THROW_OVERFLOW_ERROR);
+    if (value == -1) {
+      // RSBS rd, rn, #0
+      code.add(new RSB(dest, src, new Operand2(0), Flags.S));
+      // BLVS p_throw_overflow_error
+      code.add(new Branch("p_throw_overflow_error", Conditionals.VS).setSuffix("L"));
+      return;
+    }
+
+    int shift = Long.numberOfTrailingZeros(value);
+    Register product = dest.equals(src) ? r12 : dest;
+    // MOV rd, rn, LSL #k
+    code.add(new MOV(product, new Operand2(src, Shift.LSL, shift)));
+    // CMP rn, rd, ASR #k
+    code.add(new CMP(src, new Operand2(product, Shift.ASR, shift)));
+    // BLNE p_throw_overflow_error
+    code.add(new Branch("p_throw_overflow_error", Conditionals.NE).setSuffix("L"));
+    if (!product.equals(dest)) {
+      code.add(new MOV(dest, new Operand2(product)));
+    }
   }
 
-  @Override
-  public List<Instruction> visitReadStatement(Statement statement) {
-
-    /* Generate code to retrieve the address of the LHS. */
-    List<Instruction> instructions = new ArrayList<>(visitLHS(statement.getLHS()));
-
-    /* Retrieve the first unused register. */
-    Register rn = popUnusedRegister();
+  /* Divides by a nonzero value, rounding towards zero as __aeabi_idiv does, or takes the remainder
+     of doing so, which has the sign of the dividend whatever the sign of the divisor. */
+  private void divideByValue(Quad.Opcode opcode, Register dest, Register src, long value) {
 
-    // MOV r0, rn
-    instructions.add(new MOV(r0, new Operand2(rn)));
+    long magnitude = Math.abs(value);
 
-    Type type = currentST.getType(getIdentFromLHS(statement.getLHS()));
-    EType eType;
-
-    /* Find the EType of the LHS by using the AssignType. */
-    if (statement.getLHS().getAssignType() == AssignLHS.LHSType.IDENT) {
-      eType = type.getType();
-    } else if (statement.getLHS().getAssignType() == AssignLHS.LHSType.ARRAYELEM) {
-      while (type.getType() == ARRAY) {
-        type = type.getArrayType();
+    if (opcode == Quad.Opcode.MOD) {
+      if (magnitude == 1) {
+        // MOV rd, #0
+        code.add(new MOV(dest, 0));
+        return;
       }
-      eType = type.getType();
-    } else {
-      if (statement.getLHS().getPairElem().getType() == PairElem.PairElemType.FST) {
-        eType = type.getFstType().getType();
+      quotient(r12, src, magnitude, false);
+      if (Long.bitCount(magnitude) == 1) {
+        // SUB rd, rn, r12, LSL #k
+        code.add(new SUB(dest, src,
+            new Operand2(r12, Shift.LSL, Long.numberOfTrailingZeros(magnitude))));
       } else {
-        eType = type.getSndType().getType();
+        loadValue(r1, magnitude);
+        // MUL r0, r12, r1
+        code.add(new MUL(r0, r12, r1));
+        // SUB rd, rn, r0
+        code.add(new SUB(dest, src, new Operand2(r0)));
       }
+      return;
     }
 
-    /* Use int/char instruction depending on the type of the LHS. */
-    if (eType == INT) {
-      // BL p_read_int
-      instructions.add(new Branch("p_read_int").setSuffix("L"));
-      predefinedFunctions.add(P_READ_INT);
-    } else if (eType == CHAR) {
-      // BL p_read_char
-      instructions.add(new Branch("p_read_char").setSuffix("L"));
-      predefinedFunctions.add(P_READ_CHAR);
+    if (value == 1) {
+      // MOV rd, rn
+      code.add(new MOV(dest, new Operand2(src)));
+    } else if (value == -1) {
+      // RSB rd, rn, #0, which like __aeabi_idiv leaves the most negative int as it is
+      code.add(new RSB(dest, src, new Operand2(0)));
+    } else {
+      quotient(dest, src, magnitude, value < 0);
     }
-
-    /* Mark register rn as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
-
-  @Override
-  public List<Instruction> visitFreeStatement(Statement statement) {
-
-    predefinedFunctions.add(P_FREE_PAIR);
-
-    /* Evaluate the expression to be printed and store the result in the first unused register. */
-    List<Instruction> instructions = new ArrayList<>(visitExpression(statement.getExpression()));
-
-    /* Retrieve the first unused register. */
-    Register rn = popUnusedRegister();
-
-    // MOV r0, rn
-    instructions.add(new MOV(r0, new Operand2(rn)));
-    // BL p_free_pair
-    instructions.add(new Branch("p_free_pair").setSuffix("L"));
-
-    /* Mark register rn as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
   }
 
-  @Override
-  public List<Instruction> visitExitStatement(Statement statement) {
-    //TODO: check if need exit code?
-    List<Instruction> instructions = new ArrayList<>();
-    long exitCode = 0;
-
-    /* Retrieve the first unused register. */
-    Register rn = popUnusedRegister();
-
-    if (statement.getExpression().getIdent() == null) {
-      exitCode = statement.getExpression().getIntLiter();
-
-      // LDR rn, =exitCode
-      instructions.add(new LDR(rn, exitCode));
-
-      // MOV r0, rn
-      instructions.add(new MOV(r0, new Operand2(rn)));
+  /* Puts the quotient of src by a divisor of at least 2, negated if asked, in dest, reading src
+     until the last instruction so the two may be the same register. Powers of two shift a negative
+     dividend biased up by one less than the divisor, so the shift rounds towards zero. Any other
+     divisor multiplies by its magic number from Hacker's Delight (10-1), takes the high word of the
+     product shifted right, and adds one if the dividend is negative. */
+  private void quotient(Register dest, Register src, long divisor, boolean negated) {
 
-    } else {
-      exitCode = currentST.getSPMapping(statement.getExpression().getIdent());
-
-      // LDR rn, [sp]
-      instructions.add(new LDR(rn, new Operand2(sp)));
-
-      // MOV r0, rn
-      instructions.add(new MOV(r0, new Operand2(rn)));
+    if (Long.bitCount(divisor) == 1) {
+      int shift = Long.numberOfTrailingZeros(divisor);
+      if (shift == 1) {
+        // ADD r12, rn, rn, LSR #31
+        code.add(new ADD(r12, src, new Operand2(src, Shift.LSR, 31)));
+      } else {
+        // MOV r12, rn, ASR #31
+        code.add(new MOV(r12, new Operand2(src, Shift.ASR, 31)));
+        // ADD r12, rn, r12, LSR #32-k
+        code.add(new ADD(r12, src, new Operand2(r12, Shift.LSR, 32 - shift)));
+      }
+      // MOV rd, r12, ASR #k
+      code.add(new MOV(dest, new Operand2(r12, Shift.ASR, shift)));
+      if (negated) {
+        // RSB rd, rd, #0
+        code.add(new RSB(dest, dest, new Operand2(0)));
+      }
+      return;
     }
-    // BL exit
-    instructions.add(new Branch("exit").setSuffix("L"));
-
-    /* Mark register rn as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
-  }
 
-  @Override
-  public List<Instruction> visitPrintStatement(Statement statement) {
-
-    /* Evaluate the expression to be printed and store the result in the first unused register. */
-    List<Instruction> instructions = new ArrayList<>(visitExpression(statement.getExpression()));
-
-    /* Retrieve the first unused register. */
-    Register rn = popUnusedRegister();
-
-    // MOV r0, rn
-    instructions.add(new MOV(r0, new Operand2(rn)));
-
-    // Type of expression is stored
-    Type type = getExpressionType(statement.getExpression());
-
-    if (Objects.equals(type, new Type(INT))) {
-      // BL p_print_int
-      instructions.add(new Branch("p_print_int").setSuffix("L"));
-      predefinedFunctions.add(P_PRINT_INT);
-    } else if (Objects.equals(type, new Type(STRING)) || Objects.equals(type,
-        new Type(ARRAY, new Type(CHAR)))) {
-      // BL p_print_string
-      instructions.add(new Branch("p_print_string").setSuffix("L"));
-      predefinedFunctions.add(P_PRINT_STRING);
-    } else if (Objects.equals(type, new Type(BOOL))) {
-      // BL p_print_bool
-      instructions.add(new Branch("p_print_bool").setSuffix("L"));
-      predefinedFunctions.add(P_PRINT_BOOL);
-    } else if (Objects.equals(type, new Type(CHAR))) {
-      // BL putchar
-      instructions.add(new Branch("putchar").setSuffix("L"));
-    } else {
-      // For printing arrays and pairs
-      // BL p_print_reference
-      instructions.add(new Branch("p_print_reference").setSuffix("L"));
-      predefinedFunctions.add(P_PRINT_REFERENCE);
+    long[] magic = magic(divisor);
+    loadValue(r0, magic[0]);
+    // SMULL r1, r12, rn, r0
+    code.add(new SMULL(r1, r12, src, r0));
+    if (magic[0] < 0) {
+      // ADD r12, r12, rn
+      code.add(new ADD(r12, r12, new Operand2(src)));
     }
+    if (magic[1] > 0) {
+      // MOV r12, r12, ASR #s
+      code.add(new MOV(r12, new Operand2(r12, Shift.ASR, (int) magic[1])));
+    }
+    if (negated) {
+      // RSB rd, r12, rn, ASR #31
+      code.add(new RSB(dest, r12, new Operand2(src, Shift.ASR, 31)));
+    } else {
+      // SUB rd, r12, rn, ASR #31
+      code.add(new SUB(dest, r12, new Operand2(src, Shift.ASR, 31)));
+    }
+  }
+
+  /* The signed multiplier and shift dividing by a divisor from 2 to 2^31 - 1, which need not be a
+     power of two, as Hacker's Delight (10-1) finds them. */
+  private static long[] magic(long divisor) {
+
+    long twoToThe31 = 1L << 31;
+    long absoluteNc = twoToThe31 - 1 - twoToThe31 % divisor;
+    int power = 31;
+    long q1 = twoToThe31 / absoluteNc;
+    long r1 = twoToThe31 - q1 * absoluteNc;
+    long q2 = twoToThe31 / divisor;
+    long r2 = twoToThe31 - q2 * divisor;
+    long delta;
+    do {
+      power++;
+      q1 *= 2;
+      r1 *= 2;
+      if (r1 >= absoluteNc) {
+        q1++;
+        r1 -= absoluteNc;
+      }
+      q2 *= 2;
+      r2 *= 2;
+      if (r2 >= divisor) {
+        q2++;
+        r2 -= divisor;
+      }
+      delta = divisor - r2;
+    } while (q1 < delta || q1 == delta && r1 == 0);
 
-    //TODO: check how much to add to rn after each branch link (happens when multiple print statements)
-
-    /* Mark register rn as no longer in use. */
-    pushUnusedRegister(rn);
-
-    return instructions;
+    return new long[] {(int) (q2 + 1), power - 32};
   }
 
-  @Override
-  public List<Instruction> visitPrintlnStatement(Statement statement) {
+  private Numbering.Name message(String string) {
 
-    predefinedFunctions.add(P_PRINT_LN);
+    String text = string.substring(string.indexOf('"') + 1, string.lastIndexOf('"'));
 
-    List<Instruction> instructions = new ArrayList<>(visitPrintStatement(statement));
+    Numbering.Name name = messages.next();
+    predefined.addMessage(new LABEL(name.definition()));
+    predefined.addMessage(new WORD(getMessageLength(text)));
+    predefined.addMessage(new ASCII(string));
 
-    // BL p_print_ln
-    instructions.add(new Branch("p_print_ln").setSuffix("L"));
-
-    return instructions;
+    return name;
   }
 
-  @Override
-  public List<Instruction> visitPairElemLHS(AssignLHS lhs) {
-
-    predefinedFunctions.add(P_CHECK_NULL_POINTER);
-
-    PairElem pairElem = lhs.getPairElem();
-
-    /* Calculate address of pair and store it in rn. */
-    List<Instruction> instructions = new ArrayList<>(visitExpression(pairElem.getExpression()));
-
-    /* Allocate one register: rn for this function to use. */
-    Register rn = popUnusedRegister();
-
-    // MOV r0, rn
-    instructions.add(new MOV(r0, new Operand2(rn)));
+  private int getMessageLength(String message) {
 
-    // BL p_check_null_pointer
-    instructions.add(new Branch("p_check_null_pointer").setSuffix("L"));
+    int messageLength = 0;
 
-    if (pairElem.getType() == PairElem.PairElemType.FST) {
-      // LDR rn, [rn]
-      instructions.add(new LDR(rn, new Operand2(rn)));
-    } else {
-      // LDR rn, [rn, #4]
-      instructions.add(new LDR(rn, new Operand2(rn, 4)));
+    for (int i = 0; i < message.length(); i++) {
+      if (message.charAt(i) == '\\') {
+        i++;
+      }
+      messageLength++;
     }
 
-    pushUnusedRegister(rn);
-
-    return instructions;
+    return messageLength;
   }
 }
@@ -1,15 +1,16 @@
-import ast.ArrayElem;
 import ast.AssignLHS;
 import ast.AssignRHS;
 import ast.Expression;
-import ast.ExpressionBuilder;
 import ast.Function;
 import ast.Program;
 import ast.Statement;
-import java.util.Objects;
 
+/* Simplifies every expression of a program in place with a Simplifier, once, before code
+   generation, so that constant expressions and conditions reach it already folded. */
 public class Evaluator extends ASTVisitor<Expression> {
 
+  private final Simplifier simplifier = new Simplifier();
+
   @Override
   public Expression visitProgram(Program program) {
 
@@ -34,81 +35,50 @@ public class Evaluator extends ASTVisitor<Expression> {
 
   @Override
   public Expression visitReassignmentStatement(Statement statement) {
+    visitLHS(statement.getLHS());
     visitRHS(statement.getRHS());
     return null;
   }
 
-  private boolean isExpressionIdentOrArrayElem(Expression expression) {
-    if (expression == null) {
-      return true;
-    } else if (expression.getExprType() == Expression.ExprType.CHARLITER
-        || expression.getExprType() == Expression.ExprType.BOOLLITER
-        || expression.getExprType() == Expression.ExprType.INTLITER
-        || expression.getExprType() == Expression.ExprType.STRINGLITER) {
-      return false;
-    }
-
-    return ((expression.getIdent() != null) || (expression.getArrayElem() != null)) || (
-        isExpressionIdentOrArrayElem(expression.getExpression1()) && isExpressionIdentOrArrayElem(
-            expression.getExpression2()));
+  @Override
+  public Expression visitReadStatement(Statement statement) {
+    visitLHS(statement.getLHS());
+    return null;
   }
 
   @Override
   public Expression visitFreeStatement(Statement statement) {
-    Expression expression = statement.getExpression();
-    if (isExpressionIdentOrArrayElem(expression)) {
-      return null;
-    }
-    expression.setExpression(visitExpression(expression));
+    simplifier.simplify(statement.getExpression());
     return null;
   }
 
   @Override
   public Expression visitReturnStatement(Statement statement) {
-    Expression expression = statement.getExpression();
-    if (isExpressionIdentOrArrayElem(expression)) {
-      return null;
-    }
-    expression.setExpression(visitExpression(expression));
+    simplifier.simplify(statement.getExpression());
     return null;
   }
 
   @Override
   public Expression visitExitStatement(Statement statement) {
-    Expression expression = statement.getExpression();
-    if (isExpressionIdentOrArrayElem(expression)) {
-      return null;
-    }
-    expression.setExpression(visitExpression(expression));
+    simplifier.simplify(statement.getExpression());
     return null;
   }
 
   @Override
   public Expression visitPrintStatement(Statement statement) {
-    Expression expression = statement.getExpression();
-    if (isExpressionIdentOrArrayElem(expression)) {
-      return null;
-    }
-    expression.setExpression(visitExpression(expression));
+    simplifier.simplify(statement.getExpression());
     return null;
   }
 
   @Override
   public Expression visitPrintlnStatement(Statement statement) {
-    Expression expression = statement.getExpression();
-    if (isExpressionIdentOrArrayElem(expression)) {
-      return null;
-    }
-    expression.setExpression(visitExpression(expression));
+    simplifier.simplify(statement.getExpression());
     return null;
   }
 
   @Override
   public Expression visitIfStatement(Statement statement) {
-    Expression expression = statement.getExpression();
-    if (!isExpressionIdentOrArrayElem(expression)) {
-      expression.setExpression(visitExpression(expression));
-    }
+    simplifier.simplify(statement.getExpression());
     visitStatement(statement.getStatement1());
     visitStatement(statement.getStatement2());
     return null;
@@ -116,10 +86,7 @@ public class Evaluator extends ASTVisitor<Expression> {
 
   @Override
   public Expression visitWhileStatement(Statement statement) {
-    Expression expression = statement.getExpression();
-    if (!isExpressionIdentOrArrayElem(expression)) {
-      expression.setExpression(visitExpression(expression));
-    }
+    simplifier.simplify(statement.getExpression());
     visitStatement(statement.getStatement1());
     return null;
   }
@@ -131,303 +98,59 @@ public class Evaluator extends ASTVisitor<Expression> {
   }
 
   @Override
-  public Expression visitIntLiterExp(Expression expression) {
-    return expression;
-  }
-
-  @Override
-  public Expression visitBoolLiterExp(Expression expression) {
-    return expression;
-  }
-
-  @Override
-  public Expression visitCharLiterExp(Expression expression) {
-    return expression;
-  }
-
-  @Override
-  public Expression visitStringLiterExp(Expression expression) {
-    return expression;
-  }
-
-  @Override
-  public Expression visitIdentExp(Expression expression) {
-    return expression;
-  }
-
-  @Override
-  public Expression visitArrayElemExp(Expression expression) {
-    ArrayElem arrayElem = expression.getArrayElem();
-    for (Expression exp : arrayElem.getExpression()) {
-      if (!isExpressionIdentOrArrayElem(exp)) {
-        exp.setExpression(visitExpression(exp));
-      }
+  public Expression visitSequenceStatement(Statement statement) {
+    for (Statement s : statement.getStatements()) {
+      visitStatement(s);
     }
     return null;
   }
 
   @Override
-  public Expression visitNotExp(Expression expression) {
-    Expression expression1 = expression.getExpression1();
-    if (isExpressionIdentOrArrayElem(expression1)) {
-      return expression1;
-    }
-    boolean bool = visitExpression(expression1).getBoolLiter();
-    return new ExpressionBuilder().buildBoolExpr(!bool);
-  }
-
-  @Override
-  public Expression visitNegExp(Expression expression) {
-    Expression expression1 = expression.getExpression1();
-    if (isExpressionIdentOrArrayElem(expression1)) {
-      return expression1;
-    }
-    long integer = visitExpression(expression1).getIntLiter();
-    return new ExpressionBuilder().buildIntExpr(-integer);
-  }
-
-  @Override
-  public Expression visitLenExp(Expression expression) {
-    Expression exp = expression.getExpression1();
-    if (isExpressionIdentOrArrayElem(exp)) {
-      return exp;
-    }
-    exp.setExpression(visitExpression(exp));
-    return expression;
-  }
-
-  @Override
-  public Expression visitOrdExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1())) {
-      return expression;
-    }
-    long ord = visitExpression(expression.getExpression1()).getCharLiter();
-    return new ExpressionBuilder().buildIntExpr(ord);
-  }
-
-  @Override
-  public Expression visitChrExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1())) {
-      return expression;
-    }
-    char chr = (char) visitExpression(expression.getExpression1()).getIntLiter();
-    return new ExpressionBuilder().buildCharExpr(chr);
-  }
-
-  @Override
-  public Expression visitDivExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1()) || isExpressionIdentOrArrayElem(
-        expression.getExpression2())) {
-      return expression;
-    }
-    long arg1 = visitExpression(expression.getExpression1()).getIntLiter();
-    long arg2 = visitExpression(expression.getExpression2()).getIntLiter();
-    return new ExpressionBuilder().buildIntExpr(arg1 / arg2);
-  }
-
-  @Override
-  public Expression visitMulExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1()) || isExpressionIdentOrArrayElem(
-        expression.getExpression2())) {
-      return expression;
-    }
-    long arg1 = visitExpression(expression.getExpression1()).getIntLiter();
-    long arg2 = visitExpression(expression.getExpression2()).getIntLiter();
-    return new ExpressionBuilder().buildIntExpr(arg1 * arg2);
-  }
-
-  @Override
-  public Expression visitModExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1()) || isExpressionIdentOrArrayElem(
-        expression.getExpression2())) {
-      return expression;
-    }
-    long arg1 = visitExpression(expression.getExpression1()).getIntLiter();
-    long arg2 = visitExpression(expression.getExpression2()).getIntLiter();
-    return new ExpressionBuilder().buildIntExpr(arg1 % arg2);
-  }
-
-  @Override
-  public Expression visitPlusExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1()) || isExpressionIdentOrArrayElem(
-        expression.getExpression2())) {
-      return expression;
-    }
-    long arg1 = visitExpression(expression.getExpression1()).getIntLiter();
-    long arg2 = visitExpression(expression.getExpression2()).getIntLiter();
-    return new ExpressionBuilder().buildIntExpr(arg1 + arg2);
-  }
-
-  @Override
-  public Expression visitMinusExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1()) || isExpressionIdentOrArrayElem(
-        expression.getExpression2())) {
-      return expression;
-    }
-    long arg1 = visitExpression(expression.getExpression1()).getIntLiter();
-    long arg2 = visitExpression(expression.getExpression2()).getIntLiter();
-    return new ExpressionBuilder().buildIntExpr(arg1 - arg2);
-  }
-
-  @Override
-  public Expression visitGreaterExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1()) || isExpressionIdentOrArrayElem(
-        expression.getExpression2())) {
-      return expression;
-    }
-    long arg1 = visitExpression(expression.getExpression1()).getIntLiter();
-    long arg2 = visitExpression(expression.getExpression2()).getIntLiter();
-    return new ExpressionBuilder().buildBoolExpr(arg1 > arg2);
-  }
-
-  @Override
-  public Expression visitGreaterEqExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1()) || isExpressionIdentOrArrayElem(
-        expression.getExpression2())) {
-      return expression;
-    }
-    long arg1 = visitExpression(expression.getExpression1()).getIntLiter();
-    long arg2 = visitExpression(expression.getExpression2()).getIntLiter();
-    return new ExpressionBuilder().buildBoolExpr(arg1 >= arg2);
-  }
-
-  @Override
-  public Expression visitLessExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1()) || isExpressionIdentOrArrayElem(
-        expression.getExpression2())) {
-      return expression;
-    }
-    long arg1 = visitExpression(expression.getExpression1()).getIntLiter();
-    long arg2 = visitExpression(expression.getExpression2()).getIntLiter();
-    return new ExpressionBuilder().buildBoolExpr(arg1 < arg2);
-  }
-
-  @Override
-  public Expression visitLessEqExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1()) || isExpressionIdentOrArrayElem(
-        expression.getExpression2())) {
-      return expression;
-    }
-    long arg1 = visitExpression(expression.getExpression1()).getIntLiter();
-    long arg2 = visitExpression(expression.getExpression2()).getIntLiter();
-    return new ExpressionBuilder().buildBoolExpr(arg1 <= arg2);
-  }
-
-  @Override
-  public Expression visitEqExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1()) || isExpressionIdentOrArrayElem(
-        expression.getExpression2())) {
-      return expression;
-    }
-    boolean bool1 = visitExpression(expression.getExpression1()).getBoolLiter();
-    boolean bool2 = visitExpression(expression.getExpression2()).getBoolLiter();
-    return new ExpressionBuilder().buildBoolExpr(Objects.equals(bool1, bool2));
-  }
-
-  @Override
-  public Expression visitNeqExp(Expression expression) {
-    if (isExpressionIdentOrArrayElem(expression.getExpression1()) || isExpressionIdentOrArrayElem(
-        expression.getExpression2())) {
-      return expression;
-    }
-    boolean bool1 = visitExpression(expression.getExpression1()).getBoolLiter();
-    boolean bool2 = visitExpression(expression.getExpression2()).getBoolLiter();
-    return new ExpressionBuilder().buildBoolExpr(!Objects.equals(bool1, bool2));
+  public Expression visitExprRHS(AssignRHS rhs) {
+    simplifier.simplify(rhs.getExpression1());
+    return null;
   }
 
   @Override
-  public Expression visitAndExp(Expression expression) {
-    Expression expression1 = expression.getExpression1();
-    Expression expression2 = expression.getExpression2();
-    boolean bool1 = visitExpression(expression1).getBoolLiter();
-    boolean bool2 = visitExpression(expression2).getBoolLiter();
-
-    if (isExpressionIdentOrArrayElem(expression1) && isExpressionIdentOrArrayElem(expression2)) {
-      return expression;
-    } else if (!bool1 || !bool2) {
-      Expression exp = new ExpressionBuilder().buildBoolExpr(false);
-      expression.setExpression(exp);
-      return exp;
-    } else if (isExpressionIdentOrArrayElem(expression1)) {
-      expression.setExpression(expression1);
-      return expression1;
-    } else if (isExpressionIdentOrArrayElem(expression2)) {
-      expression.setExpression(expression2);
-      return expression2;
-    } else {
-      Expression exp = new ExpressionBuilder().buildBoolExpr(true);
-      expression.setExpression(exp);
-      return exp;
+  public Expression visitArrayRHS(AssignRHS rhs) {
+    for (Expression element : rhs.getArray()) {
+      simplifier.simplify(element);
     }
+    return null;
   }
 
   @Override
-  public Expression visitOrExp(Expression expression) {
-    Expression expression1 = expression.getExpression1();
-    Expression expression2 = expression.getExpression2();
-    boolean bool1 = visitExpression(expression1).getBoolLiter();
-    boolean bool2 = visitExpression(expression2).getBoolLiter();
-
-    if (isExpressionIdentOrArrayElem(expression1) && isExpressionIdentOrArrayElem(expression2)) {
-      return expression;
-    } else if (bool1 || bool2) {
-      Expression exp = new ExpressionBuilder().buildBoolExpr(true);
-      expression.setExpression(exp);
-      return exp;
-    } else if (isExpressionIdentOrArrayElem(expression1)) {
-      expression.setExpression(expression1);
-      return expression1;
-    } else if (isExpressionIdentOrArrayElem(expression2)) {
-      expression.setExpression(expression2);
-      return expression2;
-    } else {
-      Expression exp = new ExpressionBuilder().buildBoolExpr(false);
-      expression.setExpression(exp);
-      return exp;
-    }
+  public Expression visitNewPairRHS(AssignRHS rhs) {
+    simplifier.simplify(rhs.getExpression1());
+    simplifier.simplify(rhs.getExpression2());
+    return null;
   }
 
   @Override
-  public Expression visitExprRHS(AssignRHS rhs) {
-    Expression expression = rhs.getExpression1();
-    if (!isExpressionIdentOrArrayElem(expression)) {
-      expression.setExpression(visitExpression(expression));
-    }
+  public Expression visitPairElemRHS(AssignRHS rhs) {
+    simplifier.simplify(rhs.getPairElem().getExpression());
     return null;
   }
 
   @Override
-  public Expression visitNewPairRHS(AssignRHS rhs) {
-    Expression expression1 = rhs.getExpression1();
-    Expression expression2 = rhs.getExpression2();
-    if (isExpressionIdentOrArrayElem(expression1) || isExpressionIdentOrArrayElem(expression2)) {
-      return null;
+  public Expression visitCallRHS(AssignRHS rhs) {
+    for (Expression argument : rhs.getArgList()) {
+      simplifier.simplify(argument);
     }
-    expression1.setExpression(visitExpression(expression1));
-    expression2.setExpression(visitExpression(expression2));
     return null;
   }
 
   @Override
   public Expression visitArrayElemLHS(AssignLHS lhs) {
-    ArrayElem arrayElem = lhs.getArrayElem();
-    return visitExpression(new ExpressionBuilder().buildArrayExpr(arrayElem));
-  }
-
-  @Override
-  public Expression visitPairElemLHS(AssignLHS lhs) {
-    Expression expression = lhs.getPairElem().getExpression();
-    if (isExpressionIdentOrArrayElem(expression)) {
-      return null;
+    for (Expression index : lhs.getArrayElem().getExpression()) {
+      simplifier.simplify(index);
     }
-    expression.setExpression(visitExpression(expression));
     return null;
   }
 
   @Override
-  public Expression visitConcatStatement(Statement statement) {
-    visitStatement(statement.getStatement1());
-    visitStatement(statement.getStatement2());
+  public Expression visitPairElemLHS(AssignLHS lhs) {
+    simplifier.simplify(lhs.getPairElem().getExpression());
     return null;
   }
 }
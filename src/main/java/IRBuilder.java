@@ -0,0 +1,853 @@
+import ast.*;
+import ir.*;
+import ir.Quad.Opcode;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static assembly.LibraryFunctions.isLibraryFunction;
+import static ast.Type.EType.*;
+
+/* Lowers the body of a function, or of main, to a control flow graph of three-address quads.
+
+   Every visit appends to the current block. Expressions return the temp holding their value and
+   left-hand sides the temp holding the address they assign to.
+
+   Each variable is a temp of its own, which the register allocator can keep in a register for as
+   long as it is live. Only variables whose address a reference takes stay in the frame slots
+   semantic analysis numbered for them. */
+public class IRBuilder extends ASTVisitor<Temp> {
+
+  private ControlFlowGraph graph;
+  private BasicBlock block;
+
+  /* The temp of each variable, indexed by slot, or null for a variable kept in its slot. */
+  private Temp[] variables;
+  private final Set<Temp> variableTemps = new HashSet<>();
+
+  /* The registers each expression needs and whether it can fail, worked out once per node. */
+  private final Map<Expression, Integer> registersNeeded = new IdentityHashMap<>();
+  private final Map<Expression, Boolean> canFail = new IdentityHashMap<>();
+
+  public ControlFlowGraph buildFunction(Function function) {
+
+    /* Record where the caller pushed each parameter. */
+    List<Param> params = function.getParams();
+    int[] parameterOffsets = new int[params.size()];
+    int offset = 0;
+    for (Param param : params) {
+      parameterOffsets[param.getSymbol().getSlot()] = offset;
+      offset += sizeOf(param.getType());
+    }
+
+    graph = new ControlFlowGraph(function.getIdent(), function.getSlotCount(), parameterOffsets);
+    place(graph.newBlock());
+    createVariables(function.getSlotCount(), function.getStatement());
+
+    /* Parameters kept in temps are loaded from the caller's argument area on entry. */
+    for (Param param : params) {
+      Symbol symbol = param.getSymbol();
+      if (variables[symbol.getSlot()] != null) {
+        add(Quad.loadSlot(variables[symbol.getSlot()], symbol.getSlot(), sizeOf(param.getType())));
+      }
+    }
+
+    visitStatement(function.getStatement());
+
+    /* Every path through a function returns or exits, so this block cannot be reached. */
+    if (!block.isTerminated()) {
+      add(Quad.ret(constant(0)));
+    }
+
+    return graph;
+  }
+
+  public ControlFlowGraph buildMain(Program program) {
+
+    graph = new ControlFlowGraph("main", program.getSlotCount(), new int[0]);
+    place(graph.newBlock());
+    createVariables(program.getSlotCount(), program.getStatement());
+
+    visitStatement(program.getStatement());
+
+    if (!block.isTerminated()) {
+      add(Quad.ret(constant(0)));
+    }
+
+    return graph;
+  }
+
+  private void createVariables(int slotCount, Statement body) {
+
+    BitSet addressTaken = new BitSet(slotCount);
+    findAddressTaken(body, addressTaken);
+
+    variables = new Temp[slotCount];
+    for (int slot = 0; slot < slotCount; slot++) {
+      if (!addressTaken.get(slot)) {
+        variables[slot] = graph.newTemp();
+        variableTemps.add(variables[slot]);
+      }
+    }
+  }
+
+  /* Marks the slots of the variables the statement takes a reference to. */
+  private void findAddressTaken(Statement statement, BitSet slots) {
+
+    switch (statement.getStatType()) {
+      case DECLARATION:
+        findAddressTaken(statement.getRHS(), slots);
+        break;
+      case REASSIGNMENT:
+        findAddressTaken(statement.getLHS(), slots);
+        findAddressTaken(statement.getRHS(), slots);
+        break;
+      case READ:
+        findAddressTaken(statement.getLHS(), slots);
+        break;
+      case IF:
+        findAddressTaken(statement.getExpression(), slots);
+        findAddressTaken(statement.getStatement1(), slots);
+        findAddressTaken(statement.getStatement2(), slots);
+        break;
+      case WHILE:
+        findAddressTaken(statement.getExpression(), slots);
+        findAddressTaken(statement.getStatement1(), slots);
+        break;
+      case BEGIN:
+        findAddressTaken(statement.getStatement1(), slots);
+        break;
+      case SEQUENCE:
+        for (Statement s : statement.getStatements()) {
+          findAddressTaken(s, slots);
+        }
+        break;
+      default:
+        findAddressTaken(statement.getExpression(), slots);
+    }
+  }
+
+  private void findAddressTaken(AssignLHS lhs, BitSet slots) {
+    if (lhs.getAssignType() == AssignLHS.LHSType.ARRAYELEM) {
+      for (Expression index : lhs.getArrayElem().getExpression()) {
+        findAddressTaken(index, slots);
+      }
+    } else if (lhs.getAssignType() == AssignLHS.LHSType.PAIRELEM) {
+      findAddressTaken(lhs.getPairElem().getExpression(), slots);
+    }
+  }
+
+  private void findAddressTaken(AssignRHS rhs, BitSet slots) {
+    switch (rhs.getAssignType()) {
+      case EXPR:
+        findAddressTaken(rhs.getExpression1(), slots);
+        break;
+      case ARRAY:
+        for (Expression element : rhs.getArray()) {
+          findAddressTaken(element, slots);
+        }
+        break;
+      case NEWPAIR:
+        findAddressTaken(rhs.getExpression1(), slots);
+        findAddressTaken(rhs.getExpression2(), slots);
+        break;
+      case PAIRELEM:
+        findAddressTaken(rhs.getPairElem().getExpression(), slots);
+        break;
+      case CALL:
+        for (Expression argument : rhs.getArgList()) {
+          findAddressTaken(argument, slots);
+        }
+        break;
+    }
+  }
+
+  private void findAddressTaken(Expression expression, BitSet slots) {
+
+    if (expression == null) {
+      return;
+    }
+
+    if (expression.getExprType() == Expression.ExprType.REFERENCE) {
+      slots.set(expression.getExpression1().getSymbol().getSlot());
+    } else if (expression.getExprType() == Expression.ExprType.ARRAYELEM) {
+      for (Expression index : expression.getArrayElem().getExpression()) {
+        findAddressTaken(index, slots);
+      }
+    }
+
+    findAddressTaken(expression.getExpression1(), slots);
+    findAddressTaken(expression.getExpression2(), slots);
+  }
+
+  /* The bytes a value of the type takes in a variable, an argument or an array. */
+  static int sizeOf(Type type) {
+
+    if (type == null) {
+      return 4;
+    }
+
+    switch (type.getType()) {
+      case CHAR:
+      case BOOL:
+        return 1;
+      default:
+        return 4;
+    }
+  }
+
+  /* The type semantic analysis recorded on expression; null for the null pair literal. */
+  private Type typeOf(Expression expression) {
+    return expression == null ? null : expression.getType();
+  }
+
+  private void add(Quad quad) {
+    block.add(quad);
+  }
+
+  /* Makes block the current block, laying it out after those placed before it. */
+  private void place(BasicBlock block) {
+    graph.addBlock(block);
+    this.block = block;
+  }
+
+  /* Ends the current block with a terminator. Anything lowered after it is unreachable and goes
+     into a block of its own. */
+  private void terminate(Quad terminator) {
+    add(terminator);
+    place(graph.newBlock());
+  }
+
+  private Temp constant(long value) {
+    Temp dest = graph.newTemp();
+    add(Quad.constant(dest, value));
+    return dest;
+  }
+
+  private Temp unary(Opcode opcode, Temp src) {
+    Temp dest = graph.newTemp();
+    add(Quad.unary(opcode, dest, src));
+    return dest;
+  }
+
+  private Temp binary(Opcode opcode, Expression expression) {
+    Temp[] operands = operands(expression);
+    Temp dest = graph.newTemp();
+    add(Quad.binary(opcode, dest, operands[0], operands[1]));
+    return dest;
+  }
+
+  private Temp compare(Condition condition, Expression expression) {
+    Temp[] operands = operands(expression);
+    Temp dest = graph.newTemp();
+    add(Quad.compare(condition, dest, operands[0], operands[1]));
+    return dest;
+  }
+
+  /* Evaluates the two operands of a binary expression, the one needing more registers first, so
+     that fewer values are held while it is evaluated. Each operand keeps its place in the quad
+     whatever the order. Expressions do nothing but fail at runtime, so when both operands can
+     fail they are evaluated left to right, keeping the error reported the same. */
+  private Temp[] operands(Expression expression) {
+
+    Expression left = expression.getExpression1();
+    Expression right = expression.getExpression2();
+
+    if (registersNeeded(right) > registersNeeded(left) && !(canFail(left) && canFail(right))) {
+      Temp src2 = visitExpression(right);
+      Temp src1 = visitExpression(left);
+      return new Temp[] {src1, src2};
+    }
+
+    Temp src1 = visitExpression(left);
+    Temp src2 = visitExpression(right);
+    return new Temp[] {src1, src2};
+  }
+
+  /* The Sethi-Ullman number of an expression: the registers evaluating it takes. A variable held
+     in a temp takes none of its own. */
+  private int registersNeeded(Expression expression) {
+
+    if (expression == null) {
+      return 1;
+    }
+
+    Integer known = registersNeeded.get(expression);
+    if (known != null) {
+      return known;
+    }
+
+    int needed;
+    switch (expression.getExprType()) {
+      case IDENT:
+        needed = variables[expression.getSymbol().getSlot()] == null ? 1 : 0;
+        break;
+      case ARRAYELEM:
+        needed = 2;
+        for (Expression index : expression.getArrayElem().getExpression()) {
+          needed = Math.max(needed, registersNeeded(index) + 1);
+        }
+        break;
+      case NOT:
+      case NEG:
+      case LEN:
+      case ORD:
+      case CHR:
+      case BRACKETS:
+      case REFERENCE:
+      case DEREFERENCE:
+        needed = Math.max(1, registersNeeded(expression.getExpression1()));
+        break;
+      case DIVIDE:
+      case MULTIPLY:
+      case MODULO:
+      case PLUS:
+      case MINUS:
+      case GT:
+      case GTE:
+      case LT:
+      case LTE:
+      case EQ:
+      case NEQ:
+      case AND:
+      case OR:
+        int left = registersNeeded(expression.getExpression1());
+        int right = registersNeeded(expression.getExpression2());
+        needed = left == right ? left + 1 : Math.max(left, right);
+        break;
+      default:
+        needed = 1;
+    }
+
+    registersNeeded.put(expression, needed);
+    return needed;
+  }
+
+  /* Expression.canFail, remembered for each node as operands asks again at every level of a
+     nested expression. */
+  private boolean canFail(Expression expression) {
+
+    if (expression == null) {
+      return false;
+    }
+
+    Boolean known = canFail.get(expression);
+    if (known != null) {
+      return known;
+    }
+
+    boolean fails = expression.getExprType().canFail()
+        || canFail(expression.getExpression1()) || canFail(expression.getExpression2());
+
+    canFail.put(expression, fails);
+    return fails;
+  }
+
+  private Temp load(Temp address, long offset, int size) {
+    Temp dest = graph.newTemp();
+    add(Quad.load(dest, address, offset, size));
+    return dest;
+  }
+
+  /* The value of a variable. */
+  private Temp read(Symbol symbol) {
+
+    Temp variable = variables[symbol.getSlot()];
+    if (variable != null) {
+      return variable;
+    }
+
+    Temp dest = graph.newTemp();
+    add(Quad.loadSlot(dest, symbol.getSlot(), sizeOf(symbol.getType())));
+    return dest;
+  }
+
+  /* Assigns value to a variable. A value the last quad has just computed is computed straight
+     into the variable's temp instead of being copied there. */
+  private void write(Symbol symbol, Temp value, int size) {
+
+    Temp variable = variables[symbol.getSlot()];
+    if (variable == null) {
+      add(Quad.storeSlot(symbol.getSlot(), value, size));
+      return;
+    }
+
+    List<Quad> quads = block.getQuads();
+    Quad last = quads.isEmpty() ? null : quads.get(quads.size() - 1);
+    if (last != null && last.getDest() == value && !variableTemps.contains(value)) {
+      last.setDest(variable);
+    } else {
+      add(Quad.move(variable, value));
+    }
+  }
+
+  private Temp slotAddress(Symbol symbol) {
+    Temp dest = graph.newTemp();
+    add(Quad.slotAddress(dest, symbol.getSlot()));
+    return dest;
+  }
+
+  private Temp malloc(long bytes) {
+    Temp dest = graph.newTemp();
+    add(Quad.malloc(dest, bytes));
+    return dest;
+  }
+
+  @Override
+  public Temp visitSkipStatement(Statement statement) {
+    return null;
+  }
+
+  @Override
+  public Temp visitDeclarationStatement(Statement statement) {
+    Temp value = visitRHS(statement.getRHS());
+    write(statement.getSymbol(), value, sizeOf(statement.getLhsType()));
+    return null;
+  }
+
+  @Override
+  public Temp visitReassignmentStatement(Statement statement) {
+
+    Temp value = visitRHS(statement.getRHS());
+    AssignLHS lhs = statement.getLHS();
+    int size = sizeOf(lhs.getType());
+
+    if (lhs.getAssignType() == AssignLHS.LHSType.IDENT) {
+      write(lhs.getSymbol(), value, size);
+    } else {
+      add(Quad.store(visitLHS(lhs), 0, value, size));
+    }
+
+    return null;
+  }
+
+  @Override
+  public Temp visitReadStatement(Statement statement) {
+
+    AssignLHS lhs = statement.getLHS();
+    Type type = lhs.getType();
+
+    /* A variable kept in a temp is read through its frame slot, which holds its old value in
+       case nothing is read. */
+    Symbol symbol = lhs.getAssignType() == AssignLHS.LHSType.IDENT ? lhs.getSymbol() : null;
+    Temp variable = symbol == null ? null : variables[symbol.getSlot()];
+    if (variable != null) {
+      add(Quad.storeSlot(symbol.getSlot(), variable, sizeOf(type)));
+    }
+
+    Temp address = visitLHS(lhs);
+    if (type.getType() == INT) {
+      add(Quad.runtime("p_read_int", address));
+    } else if (type.getType() == CHAR) {
+      add(Quad.runtime("p_read_char", address));
+    }
+
+    if (variable != null) {
+      add(Quad.loadSlot(variable, symbol.getSlot(), sizeOf(type)));
+    }
+
+    return null;
+  }
+
+  @Override
+  public Temp visitFreeStatement(Statement statement) {
+    add(Quad.runtime("p_free_pair", visitExpression(statement.getExpression())));
+    return null;
+  }
+
+  @Override
+  public Temp visitReturnStatement(Statement statement) {
+    terminate(Quad.ret(visitExpression(statement.getExpression())));
+    return null;
+  }
+
+  @Override
+  public Temp visitExitStatement(Statement statement) {
+    terminate(Quad.exit(visitExpression(statement.getExpression())));
+    return null;
+  }
+
+  @Override
+  public Temp visitPrintStatement(Statement statement) {
+
+    Temp value = visitExpression(statement.getExpression());
+    Type type = typeOf(statement.getExpression());
+
+    add(Quad.runtime(printRoutine(type), value));
+    return null;
+  }
+
+  private static String printRoutine(Type type) {
+    switch (type == null ? PAIR : type.getType()) {
+      case INT:
+        return "p_print_int";
+      case STRING:
+        return "p_print_string";
+      case BOOL:
+        return "p_print_bool";
+      case CHAR:
+        return "putchar";
+      case ARRAY:
+        /* Arrays of characters print as strings, others print their address as pairs do. */
+        return Type.of(CHAR).equals(type.getArrayType()) ? "p_print_string" : "p_print_reference";
+      default:
+        return "p_print_reference";
+    }
+  }
+
+  @Override
+  public Temp visitPrintlnStatement(Statement statement) {
+    visitPrintStatement(statement);
+    add(Quad.runtime("p_print_ln", null));
+    return null;
+  }
+
+  @Override
+  public Temp visitIfStatement(Statement statement) {
+
+    Expression condition = statement.getExpression();
+
+    /* Only the clause a literal condition selects is lowered. */
+    if (condition.getExprType() == Expression.ExprType.BOOLLITER) {
+      visitStatement(condition.getBoolLiter() ? statement.getStatement1()
+          : statement.getStatement2());
+      return null;
+    }
+
+    BasicBlock thenBlock = graph.newBlock();
+    BasicBlock elseBlock = graph.newBlock();
+    BasicBlock join = graph.newBlock();
+
+    add(Quad.branch(visitExpression(condition), thenBlock, elseBlock));
+
+    place(thenBlock);
+    visitStatement(statement.getStatement1());
+    add(Quad.jump(join));
+
+    place(elseBlock);
+    visitStatement(statement.getStatement2());
+    add(Quad.jump(join));
+
+    place(join);
+
+    return null;
+  }
+
+  @Override
+  public Temp visitWhileStatement(Statement statement) {
+
+    Expression condition = statement.getExpression();
+
+    if (condition.getExprType() == Expression.ExprType.BOOLLITER && !condition.getBoolLiter()) {
+      return null;
+    }
+
+    /* The test is laid out after the body, so each iteration takes a single branch. */
+    BasicBlock body = graph.newBlock();
+    BasicBlock test = graph.newBlock();
+    BasicBlock exit = graph.newBlock();
+
+    add(Quad.jump(test));
+
+    place(body);
+    visitStatement(statement.getStatement1());
+    add(Quad.jump(test));
+
+    place(test);
+    add(Quad.branch(visitExpression(condition), body, exit));
+
+    place(exit);
+
+    return null;
+  }
+
+  @Override
+  public Temp visitBeginStatement(Statement statement) {
+    return visitStatement(statement.getStatement1());
+  }
+
+  @Override
+  public Temp visitSequenceStatement(Statement statement) {
+
+    /* Nothing after a return or an exit can run, so it is not lowered. */
+    for (Statement s : statement.getStatements()) {
+      visitStatement(s);
+      if (s.getStatType() == Statement.StatType.RETURN
+          || s.getStatType() == Statement.StatType.EXIT) {
+        break;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Temp visitNull(Expression expression) {
+    return constant(0);
+  }
+
+  @Override
+  public Temp visitIntLiterExp(Expression expression) {
+    return constant(expression.getIntLiter());
+  }
+
+  @Override
+  public Temp visitBoolLiterExp(Expression expression) {
+    return constant(expression.getBoolLiter() ? 1 : 0);
+  }
+
+  @Override
+  public Temp visitCharLiterExp(Expression expression) {
+    return constant(expression.getCharLiter());
+  }
+
+  @Override
+  public Temp visitStringLiterExp(Expression expression) {
+    Temp dest = graph.newTemp();
+    add(Quad.string(dest, expression.getStringLiter()));
+    return dest;
+  }
+
+  @Override
+  public Temp visitIdentExp(Expression expression) {
+    return read(expression.getSymbol());
+  }
+
+  @Override
+  public Temp visitArrayElemExp(Expression expression) {
+    ArrayElem arrayElem = expression.getArrayElem();
+    return load(elementAddress(arrayElem), 0, sizeOf(elementType(arrayElem)));
+  }
+
+  @Override
+  public Temp visitNotExp(Expression expression) {
+    return unary(Opcode.NOT, visitExpression(expression.getExpression1()));
+  }
+
+  @Override
+  public Temp visitNegExp(Expression expression) {
+    return unary(Opcode.NEG, visitExpression(expression.getExpression1()));
+  }
+
+  @Override
+  public Temp visitLenExp(Expression expression) {
+    Temp dest = graph.newTemp();
+    add(Quad.length(dest, visitExpression(expression.getExpression1())));
+    return dest;
+  }
+
+  @Override
+  public Temp visitOrdExp(Expression expression) {
+    return visitExpression(expression.getExpression1());
+  }
+
+  @Override
+  public Temp visitChrExp(Expression expression) {
+    return visitExpression(expression.getExpression1());
+  }
+
+  @Override
+  public Temp visitReferenceExp(Expression expression) {
+    return slotAddress(expression.getExpression1().getSymbol());
+  }
+
+  @Override
+  public Temp visitDereferenceExp(Expression expression) {
+    return load(visitExpression(expression.getExpression1()), 0, 4);
+  }
+
+  @Override
+  public Temp visitDivExp(Expression expression) {
+    return binary(Opcode.DIV, expression);
+  }
+
+  @Override
+  public Temp visitMulExp(Expression expression) {
+    return binary(Opcode.MUL, expression);
+  }
+
+  @Override
+  public Temp visitModExp(Expression expression) {
+    return binary(Opcode.MOD, expression);
+  }
+
+  @Override
+  public Temp visitPlusExp(Expression expression) {
+    return binary(Opcode.ADD, expression);
+  }
+
+  @Override
+  public Temp visitMinusExp(Expression expression) {
+    return binary(Opcode.SUB, expression);
+  }
+
+  @Override
+  public Temp visitGreaterExp(Expression expression) {
+    return compare(Condition.GT, expression);
+  }
+
+  @Override
+  public Temp visitGreaterEqExp(Expression expression) {
+    return compare(Condition.GE, expression);
+  }
+
+  @Override
+  public Temp visitLessExp(Expression expression) {
+    return compare(Condition.LT, expression);
+  }
+
+  @Override
+  public Temp visitLessEqExp(Expression expression) {
+    return compare(Condition.LE, expression);
+  }
+
+  @Override
+  public Temp visitEqExp(Expression expression) {
+    return compare(Condition.EQ, expression);
+  }
+
+  @Override
+  public Temp visitNeqExp(Expression expression) {
+    return compare(Condition.NE, expression);
+  }
+
+  @Override
+  public Temp visitAndExp(Expression expression) {
+    return binary(Opcode.AND, expression);
+  }
+
+  @Override
+  public Temp visitOrExp(Expression expression) {
+    return binary(Opcode.OR, expression);
+  }
+
+  @Override
+  public Temp visitExprRHS(AssignRHS rhs) {
+    return visitExpression(rhs.getExpression1());
+  }
+
+  @Override
+  public Temp visitArrayRHS(AssignRHS rhs) {
+
+    List<Expression> array = rhs.getArray();
+    int size = array.isEmpty() ? 0 : sizeOf(typeOf(array.get(0)));
+
+    /* An array is its length followed by its elements. */
+    Temp address = malloc(4 + (long) size * array.size());
+
+    int offset = 4;
+    for (Expression expression : array) {
+      add(Quad.store(address, offset, visitExpression(expression), size));
+      offset += size;
+    }
+
+    add(Quad.store(address, 0, constant(array.size()), 4));
+
+    return address;
+  }
+
+  @Override
+  public Temp visitNewPairRHS(AssignRHS rhs) {
+
+    /* A pair holds the addresses of its two elements, each allocated on its own. */
+    Temp pair = malloc(8);
+
+    Expression[] elements = {rhs.getExpression1(), rhs.getExpression2()};
+    for (int i = 0; i < elements.length; i++) {
+      Temp value = visitExpression(elements[i]);
+      int size = sizeOf(typeOf(elements[i]));
+      Temp element = malloc(size);
+      add(Quad.store(element, 0, value, size));
+      add(Quad.store(pair, 4 * i, element, 4));
+    }
+
+    return pair;
+  }
+
+  @Override
+  public Temp visitPairElemRHS(AssignRHS rhs) {
+    PairElem pairElem = rhs.getPairElem();
+    return load(elementAddress(pairElem), 0, sizeOf(elementType(pairElem)));
+  }
+
+  @Override
+  public Temp visitCallRHS(AssignRHS rhs) {
+
+    /* Arguments are pushed last first, so the first ends up nearest the callee's frame. */
+    List<Expression> arguments = rhs.getArgList();
+    int argumentBytes = 0;
+    for (int i = arguments.size() - 1; i >= 0; i--) {
+      int size = sizeOf(typeOf(arguments.get(i)));
+      add(Quad.argument(visitExpression(arguments.get(i)), size));
+      argumentBytes += size;
+    }
+
+    String function = rhs.getFunctionIdent();
+    Temp dest = graph.newTemp();
+    add(Quad.call(dest, function, argumentBytes, isLibraryFunction(function)));
+
+    return dest;
+  }
+
+  @Override
+  public Temp visitIdentLHS(AssignLHS lhs) {
+    return slotAddress(lhs.getSymbol());
+  }
+
+  @Override
+  public Temp visitArrayElemLHS(AssignLHS lhs) {
+    return elementAddress(lhs.getArrayElem());
+  }
+
+  @Override
+  public Temp visitPairElemLHS(AssignLHS lhs) {
+    return elementAddress(lhs.getPairElem());
+  }
+
+  /* The address of an array element, checking every index on the way. */
+  private Temp elementAddress(ArrayElem arrayElem) {
+
+    Type type = arrayElem.getSymbol().getType();
+    Temp array = read(arrayElem.getSymbol());
+    Temp address = null;
+
+    for (Expression expression : arrayElem.getExpression()) {
+      if (address != null) {
+        array = load(address, 0, 4);
+      }
+      Temp index = visitExpression(expression);
+      add(Quad.checkBounds(index, array));
+
+      type = type.getArrayType();
+      address = graph.newTemp();
+      add(Quad.element(address, array, index, sizeOf(type)));
+    }
+
+    return address;
+  }
+
+  private Type elementType(ArrayElem arrayElem) {
+    Type type = arrayElem.getSymbol().getType();
+    for (int i = 0; i < arrayElem.getExpression().size(); i++) {
+      type = type.getArrayType();
+    }
+    return type;
+  }
+
+  /* The address of the element of a pair, which must not be null. */
+  private Temp elementAddress(PairElem pairElem) {
+    Temp pair = visitExpression(pairElem.getExpression());
+    add(Quad.checkNull(pair));
+    return load(pair, pairElem.getType() == PairElem.PairElemType.FST ? 0 : 4, 4);
+  }
+
+  private Type elementType(PairElem pairElem) {
+    Type type = typeOf(pairElem.getExpression());
+    return pairElem.getType() == PairElem.PairElemType.FST ? type.getFstType()
+        : type.getSndType();
+  }
+
+}
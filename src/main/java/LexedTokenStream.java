@@ -0,0 +1,58 @@
+import antlr.BasicLexer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+
+/* The tokens of a WACC source, which holds back each of the lexer's errors until the parser first
+   asks for the token it was found before. The errors then come out among the parser's in the same
+   order as when tokens are lexed on demand, even if the whole stream is filled before parsing. */
+public class LexedTokenStream extends CommonTokenStream {
+
+  /* Each error and the index of the token the lexer was reading when it found it. */
+  private final List<String> errorMsgs = new ArrayList<>();
+  private final List<Integer> errorTokens = new ArrayList<>();
+
+  private Consumer<String> reporter = System.err::println;
+  private int reported = 0;
+
+  public LexedTokenStream(CharStream input) {
+    super(new BasicLexer(input));
+
+    BasicLexer lexer = (BasicLexer) getTokenSource();
+    lexer.removeErrorListeners();
+    lexer.addErrorListener(new BaseErrorListener() {
+      @Override
+      public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+          int charPositionInLine, String msg, RecognitionException e) {
+        errorMsgs.add("line " + line + ":" + charPositionInLine + " " + msg);
+        errorTokens.add(size());
+      }
+    });
+  }
+
+  /* Sends the lexer's errors to reporter from now on, starting again from the first, or holds
+     them back if it is null. */
+  public void reportErrorsTo(Consumer<String> reporter) {
+    this.reporter = reporter;
+    reported = 0;
+  }
+
+  public List<String> getErrorMsgs() {
+    return errorMsgs;
+  }
+
+  @Override
+  protected boolean sync(int i) {
+    boolean synced = super.sync(i);
+    while (reporter != null && reported < errorMsgs.size() && errorTokens.get(reported) <= i) {
+      reporter.accept(errorMsgs.get(reported++));
+    }
+    return synced;
+  }
+
+}
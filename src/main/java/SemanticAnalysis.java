@@ -4,20 +4,38 @@ import ast.AssignRHS.RHSType;
 import ast.Type.EType;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static ast.Type.EType.*;
-import static java.lang.System.exit;
 
 public class SemanticAnalysis {
 
   SymbolTable currentST;
-  Map<String, List<Param>> functionParams = new HashMap<>();
-  Map<String, Type> functionReturnTypes = new HashMap<>();
+  final Map<String, List<Param>> functionParams;
+  final Map<String, Type> functionReturnTypes;
   String functionIdent;
+  private int nextSlot;
 
   private int errors = 0;
   private final List<String> errorMsgs = new ArrayList<>();
 
+  /* Bytes allocated checking the merged functions on other threads, which the allocation counter
+     of the thread checking the program does not see. */
+  private long forkedAllocatedBytes = 0;
+
+  public SemanticAnalysis() {
+    this.functionParams = new HashMap<>();
+    this.functionReturnTypes = new HashMap<>();
+  }
+
+  /* A checker for one body of program, sharing its signatures, which are no longer modified
+     once the bodies are checked. */
+  private SemanticAnalysis(SemanticAnalysis program) {
+    this.functionParams = program.functionParams;
+    this.functionReturnTypes = program.functionReturnTypes;
+  }
+
   private void printSemanticError(Error e) {
     switch (e) {
       case UNDEFINED:
@@ -92,6 +110,11 @@ public class SemanticAnalysis {
     return errorMsgs;
   }
 
+  /* The bytes allocated on the fork-join pool by traverse(Program), for --stats. */
+  public long getForkedAllocatedBytes() {
+    return forkedAllocatedBytes;
+  }
+
   private String typeToString(Type type) {
     if (type == null) {
       return "pair";
@@ -115,13 +138,24 @@ public class SemanticAnalysis {
     return ident.toString();
   }
 
+  /* Returns the type of expr, resolving it and recording it on the node the first time, so the
+     later passes read the annotation instead of resolving it again. */
   private Type getExpressionType(Expression expr) {
 
     if (expr == null) {
       return null;
     }
 
+    if (expr.getType() == null) {
+      expr.setType(Type.intern(resolveExpressionType(expr)));
+    }
+    return expr.getType();
+  }
+
+  private Type resolveExpressionType(Expression expr) {
+
     Type nextType;
+    Symbol symbol;
 
     switch (expr.getExprType()) {
 
@@ -134,7 +168,7 @@ public class SemanticAnalysis {
       case MODULO:
       case PLUS:
       case MINUS:
-        return new Type(INT);
+        return Type.of(INT);
 
       case BOOLLITER:
       case NOT:
@@ -146,22 +180,30 @@ public class SemanticAnalysis {
       case NEQ:
       case AND:
       case OR:
-        return new Type(BOOL);
+        return Type.of(BOOL);
 
       case CHARLITER:
       case CHR:
-        return new Type(CHAR);
+        return Type.of(CHAR);
 
       case STRINGLITER:
-        return new Type(STRING);
+        return Type.of(STRING);
 
       case IDENT:
-        return currentST.getType(expr.getIdent());
+        symbol = currentST.getSymbol(expr.getIdent());
+        expr.setSymbol(symbol);
+        return symbol == null ? null : symbol.getType();
 
       case ARRAYELEM:
         ArrayElem arrayElem = expr.getArrayElem();
-        Type result = currentST.getType(arrayElem.getIdent());
-        for (int i = 0; i < arrayElem.getExpression().size(); i++) {
+        symbol = currentST.getSymbol(arrayElem.getIdent());
+        expr.setSymbol(symbol);
+        arrayElem.setSymbol(symbol);
+        if (symbol == null) {
+          return null;
+        }
+        Type result = symbol.getType();
+        for (int i = 0; result != null && i < arrayElem.getExpression().size(); i++) {
           result = result.getArrayType();
         }
         return result;
@@ -171,14 +213,14 @@ public class SemanticAnalysis {
 
       case REFERENCE:
         nextType = getExpressionType(expr.getExpression1());
-        if (nextType.getType() == DEREFERENCE) {
+        if (nextType != null && nextType.getType() == DEREFERENCE) {
           return nextType.getArrayType();
         }
         return new Type(REFERENCE, nextType);
 
       case DEREFERENCE:
         nextType = getExpressionType(expr.getExpression1());
-        if (nextType.getType() == REFERENCE) {
+        if (nextType != null && nextType.getType() == REFERENCE) {
           return nextType.getArrayType();
         }
         return new Type(DEREFERENCE, nextType);
@@ -187,6 +229,65 @@ public class SemanticAnalysis {
     return null;
   }
 
+  /* Adds a variable to the current scope, giving it the next slot of the enclosing function. */
+  private Symbol declare(String ident, Type type) {
+    Symbol symbol = new Symbol(ident, type, nextSlot++);
+    currentST.newVariable(symbol);
+    return symbol;
+  }
+
+  /* Annotates every expression in statement, but not in nested statements, in the scope the
+     statement is checked in. */
+  private void annotate(Statement statement) {
+    annotate(statement.getExpression());
+
+    AssignLHS lhs = statement.getLHS();
+    if (lhs != null) {
+      getLHSType(lhs);
+      if (lhs.getAssignType() == AssignLHS.LHSType.IDENT) {
+        lhs.setSymbol(currentST.getSymbol(lhs.getIdent()));
+      }
+      if (lhs.getArrayElem() != null) {
+        lhs.getArrayElem().setSymbol(currentST.getSymbol(lhs.getArrayElem().getIdent()));
+        annotate(lhs.getArrayElem().getExpression());
+      }
+      if (lhs.getPairElem() != null) {
+        annotate(lhs.getPairElem().getExpression());
+      }
+    }
+
+    AssignRHS rhs = statement.getRHS();
+    if (rhs != null) {
+      annotate(rhs.getExpression1());
+      annotate(rhs.getExpression2());
+      annotate(rhs.getArray());
+      annotate(rhs.getArgList());
+      if (rhs.getPairElem() != null) {
+        annotate(rhs.getPairElem().getExpression());
+      }
+    }
+  }
+
+  private void annotate(List<Expression> expressions) {
+    if (expressions != null) {
+      for (Expression expression : expressions) {
+        annotate(expression);
+      }
+    }
+  }
+
+  private void annotate(Expression expression) {
+    if (expression == null) {
+      return;
+    }
+    annotate(expression.getExpression1());
+    annotate(expression.getExpression2());
+    if (expression.getArrayElem() != null) {
+      annotate(expression.getArrayElem().getExpression());
+    }
+    getExpressionType(expression);
+  }
+
   private Type getRHSType(AssignRHS rhs) {
     switch (rhs.getAssignType()) {
 
@@ -228,31 +329,46 @@ public class SemanticAnalysis {
     return null;
   }
 
+  /* Returns the type of the assigned location, recording it on lhs the first time. */
   private Type getLHSType(AssignLHS lhs) {
+    if (lhs.getType() == null) {
+      lhs.setType(Type.intern(resolveLHSType(lhs)));
+    }
+    return lhs.getType();
+  }
+
+  private Type resolveLHSType(AssignLHS lhs) {
+    Type pairType;
     switch (lhs.getAssignType()) {
       case IDENT:
         return currentST.getType(lhs.getIdent());
       case ARRAYELEM:
         ArrayElem arrayElem = lhs.getArrayElem();
         Type result = currentST.getType(arrayElem.getIdent());
-        for (int i = 0; i < arrayElem.getExpression().size(); i++) {
+        for (int i = 0; result != null && i < arrayElem.getExpression().size(); i++) {
           result = result.getArrayType();
         }
         return result;
       case PAIRELEM:
+        pairType = getExpressionType(lhs.getPairElem().getExpression());
+        if (pairType == null) {
+          return null;
+        }
         if (lhs.getPairElem().getType() == PairElem.PairElemType.FST) {
-          return getExpressionType(lhs.getPairElem().getExpression()).getFstType();
+          return pairType.getFstType();
         } else {
-          return getExpressionType(lhs.getPairElem().getExpression()).getSndType();
+          return pairType.getSndType();
         }
     }
     return null;
   }
 
+
   private boolean validFunctionReturn(Statement statement) {
     switch (statement.getStatType()) {
-      case CONCAT:
-        return validFunctionReturn(statement.getStatement2());
+      case SEQUENCE:
+        List<Statement> statements = statement.getStatements();
+        return validFunctionReturn(statements.get(statements.size() - 1));
       case IF:
         return validFunctionReturn(statement.getStatement1()) && validFunctionReturn(
             statement.getStatement2());
@@ -302,35 +418,72 @@ public class SemanticAnalysis {
       functionReturnTypes.put(function.getIdent(), function.getReturnType());
     }
 
+    /* With the signatures known, the bodies do not depend on each other, so each function is
+       checked by a SemanticAnalysis of its own on the common fork-join pool while this thread
+       checks main. Without a second core they are checked in place instead. */
+    boolean parallel = ForkJoinPool.getCommonPoolParallelism() > 1;
+    List<ForkJoinTask<SemanticAnalysis>> functions = new ArrayList<>();
+    Thread caller = Thread.currentThread();
     for (Function function : program.getFunctions()) {
-      functionIdent = function.getIdent();
-      traverse(function);
+      ForkJoinTask<SemanticAnalysis> task = ForkJoinTask.adapt(() -> {
+        long startBytes = CompileStats.allocatedBytes();
+        SemanticAnalysis checker = new SemanticAnalysis(this);
+        checker.functionIdent = function.getIdent();
+        checker.traverse(function);
+        if (Thread.currentThread() != caller) {
+          checker.forkedAllocatedBytes = CompileStats.allocatedBytes() - startBytes;
+        }
+        return checker;
+      });
+      functions.add(parallel ? task.fork() : task);
     }
 
-    currentST = new SymbolTable(null);
-    functionIdent = null;
+    SemanticAnalysis main = new SemanticAnalysis(this);
+    RuntimeException mainFailure = null;
+    try {
+      main.currentST = new SymbolTable(null);
+      main.traverse(program.getStatement());
+      program.setSlotCount(main.nextSlot);
+    } catch (RuntimeException e) {
+      mainFailure = e;
+    }
 
-    traverse(program.getStatement());
+    /* Diagnostics are merged in source order, and a function that fails stops the analysis
+       before main as it would when checked in order. */
+    for (ForkJoinTask<SemanticAnalysis> function : functions) {
+      merge(parallel ? function.join() : function.invoke());
+    }
+    if (mainFailure != null) {
+      throw mainFailure;
+    }
+    merge(main);
+  }
+
+  private void merge(SemanticAnalysis body) {
+    errorMsgs.addAll(body.errorMsgs);
+    errors += body.errors;
+    forkedAllocatedBytes += body.forkedAllocatedBytes;
   }
 
   private void traverse(Function function) {
 
     //Check that function ends with a return statement
     if (!validFunctionReturn(function.getStatement())) {
-      System.out.println("Syntax Error: Function does not return");
-      exit(100);
+      throw new CompileError(100, List.of("Syntax Error: Function does not return"));
     }
 
     //Initialise new symbol table as root of its symbol table tree
     currentST = new SymbolTable(null);
+    nextSlot = 0;
 
     //Add function parameters to symbol table
     for (Param param : function.getParams()) {
-      currentST.newVariable(param.getIdent(), param.getType());
+      param.setSymbol(declare(param.getIdent(), param.getType()));
     }
 
     //Check semantics of function body
     traverse(function.getStatement());
+    function.setSlotCount(nextSlot);
   }
 
   private void traverse(Expression expression) {
@@ -444,13 +597,14 @@ public class SemanticAnalysis {
   }
 
   private void traverse(Statement statement) {
+    annotate(statement);
     Expression expression = statement.getExpression();
     switch (statement.getStatType()) {
 
       case DECLARATION:
 
         if (statement.getLhsType().getType() == EType.PAIR && expression == null) {
-          currentST.newVariable(statement.getLhsIdent(), statement.getLhsType());
+          statement.setSymbol(declare(statement.getLhsIdent(), statement.getLhsType()));
           traverse(statement.getRHS());
           break;
         }
@@ -461,7 +615,7 @@ public class SemanticAnalysis {
           break;
         }
 
-        currentST.newVariable(statement.getLhsIdent(), statement.getLhsType());
+        statement.setSymbol(declare(statement.getLhsIdent(), statement.getLhsType()));
 
         if (Objects.equals(getRHSType(statement.getRHS()).getType(), (EType.ARRAY))
             && statement.getRHS().getArray() != null) {
@@ -552,9 +706,10 @@ public class SemanticAnalysis {
         currentST = currentST.getParent();
         break;
 
-      case CONCAT:
-        traverse(statement.getStatement1());
-        traverse(statement.getStatement2());
+      case SEQUENCE:
+        for (Statement s : statement.getStatements()) {
+          traverse(s);
+        }
         break;
     }
   }
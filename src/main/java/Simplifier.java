@@ -0,0 +1,280 @@
+import ast.Expression;
+import ast.Expression.ExprType;
+import ast.ExpressionBuilder;
+import ast.Type;
+
+/* Rewrites an expression into a simpler one with the same value and the same run time errors.
+
+   Operators on int, char and bool literals are folded, ord and chr included, and brackets are
+   dropped. Identities such as x + 0, x * 1, x - x, !!b and
+   b && true are simplified, and additions of constants are gathered into one, so (x + 1) + 2
+   becomes x + 3.
+
+   A WACC program stops with an error on overflow, division by zero and a bad array index or null
+   pair, so nothing that would raise one is folded away: operations on literals that overflow or
+   divide by zero are left to fail at run time, an operand is only dropped, as in x * 0, if
+   evaluating it cannot fail, and constants are only gathered when they have the same sign, so
+   that the sum overflows exactly when the original would have. */
+public class Simplifier {
+
+  /* Simplifies expression and everything inside it in place. */
+  public void simplify(Expression expression) {
+
+    if (expression == null) {
+      return;
+    }
+
+    if (expression.getArrayElem() != null) {
+      for (Expression index : expression.getArrayElem().getExpression()) {
+        simplify(index);
+      }
+      return;
+    }
+
+    /* &x names a variable rather than reading it, so it is left as it is. */
+    if (expression.getExprType() == ExprType.REFERENCE) {
+      return;
+    }
+
+    simplify(expression.getExpression1());
+    simplify(expression.getExpression2());
+
+    Expression simpler = rewrite(expression);
+    while (simpler != null && simpler != expression) {
+      expression.setExpression(simpler);
+      simpler = rewrite(expression);
+    }
+  }
+
+  /* The simpler equivalent of an expression whose operands are already simplified, or null. */
+  private Expression rewrite(Expression expression) {
+
+    Expression left = expression.getExpression1();
+    Expression right = expression.getExpression2();
+
+    switch (expression.getExprType()) {
+      case BRACKETS:
+        return left;
+
+      case NOT:
+        if (isBool(left)) {
+          return bool(!left.getBoolLiter());
+        }
+        return left.getExprType() == ExprType.NOT ? left.getExpression1() : null;
+
+      case NEG:
+        /* -(-x) is not x, as -x fails for the smallest int. */
+        return isInt(left) && left.getIntLiter() != Integer.MIN_VALUE
+            ? integer(-left.getIntLiter()) : null;
+
+      case ORD:
+        return left.getExprType() == ExprType.CHARLITER ? integer(left.getCharLiter()) : null;
+
+      case CHR:
+        return isInt(left) && left.getIntLiter() >= 0 && left.getIntLiter() <= 255
+            ? character((char) left.getIntLiter()) : null;
+
+      case PLUS:
+      case MINUS:
+        return rewriteAdditive(expression, left, right);
+
+      case MULTIPLY:
+        if (isInt(left) && isInt(right)) {
+          return fitting(left.getIntLiter() * right.getIntLiter());
+        }
+        if (isInt(left)) {
+          return multiply(right, left);
+        }
+        if (isInt(right, 1)) {
+          return left;
+        }
+        return isInt(right, 0) && !left.canFail() ? right : null;
+
+      case DIVIDE:
+        if (isInt(left) && isInt(right) && right.getIntLiter() != 0) {
+          return fitting(left.getIntLiter() / right.getIntLiter());
+        }
+        return isInt(right, 1) ? left : null;
+
+      case MODULO:
+        if (isInt(left) && isInt(right) && right.getIntLiter() != 0) {
+          return integer(left.getIntLiter() % right.getIntLiter());
+        }
+        return isInt(right, 1) && !left.canFail() ? integer(0) : null;
+
+      case GT:
+      case GTE:
+      case LT:
+      case LTE:
+      case EQ:
+      case NEQ:
+        return rewriteComparison(expression.getExprType(), left, right);
+
+      case AND:
+      case OR:
+        return rewriteLogical(expression.getExprType() == ExprType.AND, left, right);
+
+      default:
+        return null;
+    }
+  }
+
+  private Expression rewriteAdditive(Expression expression, Expression left, Expression right) {
+
+    boolean plus = expression.getExprType() == ExprType.PLUS;
+
+    if (isInt(left) && isInt(right)) {
+      return fitting(plus ? left.getIntLiter() + right.getIntLiter()
+          : left.getIntLiter() - right.getIntLiter());
+    }
+    if (plus && isInt(left)) {
+      return add(right, left.getIntLiter());
+    }
+    if (isInt(right, 0)) {
+      return left;
+    }
+    if (!plus && sameVariable(left, right)) {
+      return integer(0);
+    }
+
+    /* (x + a) + b becomes x + (a + b) when a and b have the same sign. */
+    if (isInt(right) && (left.getExprType() == ExprType.PLUS
+        || left.getExprType() == ExprType.MINUS) && isInt(left.getExpression2())) {
+      Long outer = signed(plus, right.getIntLiter());
+      Long inner = signed(left.getExprType() == ExprType.PLUS, left.getExpression2().getIntLiter());
+      if (outer != null && inner != null && (outer < 0) == (inner < 0)
+          && outer + inner == (int) (outer + inner)) {
+        return add(left.getExpression1(), outer + inner);
+      }
+    }
+    return null;
+  }
+
+  private Expression rewriteComparison(ExprType operator, Expression left, Expression right) {
+
+    /* The null pair literal has no expression. */
+    if (left == null || right == null) {
+      return null;
+    }
+
+    if (isLiteral(left) && isLiteral(right) && left.getExprType() == right.getExprType()
+        && left.getExprType() != ExprType.STRINGLITER) {
+      long a = literalValue(left);
+      long b = literalValue(right);
+      switch (operator) {
+        case GT:
+          return bool(a > b);
+        case GTE:
+          return bool(a >= b);
+        case LT:
+          return bool(a < b);
+        case LTE:
+          return bool(a <= b);
+        case EQ:
+          return bool(a == b);
+        default:
+          return bool(a != b);
+      }
+    }
+
+    if (sameVariable(left, right)) {
+      return bool(operator == ExprType.GTE || operator == ExprType.LTE
+          || operator == ExprType.EQ);
+    }
+    return null;
+  }
+
+  /* AND when and is set, OR otherwise. */
+  private Expression rewriteLogical(boolean and, Expression left, Expression right) {
+
+    if (isBool(left) && isBool(right)) {
+      return bool(and ? left.getBoolLiter() && right.getBoolLiter()
+          : left.getBoolLiter() || right.getBoolLiter());
+    }
+
+    /* b && true and b || false are b; b && false and b || true are decided without b. */
+    if (isBool(right)) {
+      return right.getBoolLiter() == and ? left : left.canFail() ? null : right;
+    }
+    if (isBool(left)) {
+      return left.getBoolLiter() == and ? right : right.canFail() ? null : left;
+    }
+    return sameVariable(left, right) ? left : null;
+  }
+
+  /* Whether both read the same variable, and so have the same value. */
+  private boolean sameVariable(Expression left, Expression right) {
+    return left.getIdent() != null && right.getIdent() != null && left.getSymbol() != null
+        && left.getSymbol() == right.getSymbol();
+  }
+
+  /* The amount a PLUS or MINUS of value adds, or null if it cannot be negated. */
+  private static Long signed(boolean plus, long value) {
+    if (plus) {
+      return value;
+    }
+    return value == Integer.MIN_VALUE ? null : -value;
+  }
+
+  private boolean isLiteral(Expression expression) {
+    ExprType type = expression.getExprType();
+    return type == ExprType.INTLITER || type == ExprType.CHARLITER || type == ExprType.BOOLLITER
+        || type == ExprType.STRINGLITER;
+  }
+
+  private long literalValue(Expression literal) {
+    switch (literal.getExprType()) {
+      case CHARLITER:
+        return literal.getCharLiter();
+      case BOOLLITER:
+        return literal.getBoolLiter() ? 1 : 0;
+      default:
+        return literal.getIntLiter();
+    }
+  }
+
+  private boolean isInt(Expression expression) {
+    return expression.getExprType() == ExprType.INTLITER;
+  }
+
+  private boolean isInt(Expression expression, long value) {
+    return isInt(expression) && expression.getIntLiter() == value;
+  }
+
+  private boolean isBool(Expression expression) {
+    return expression.getExprType() == ExprType.BOOLLITER;
+  }
+
+  /* An int literal of value, or null if it overflows and must be left to fail at run time. */
+  private Expression fitting(long value) {
+    return value == (int) value ? integer(value) : null;
+  }
+
+  private Expression integer(long value) {
+    return new ExpressionBuilder().buildIntExpr(value);
+  }
+
+  private Expression bool(boolean value) {
+    return new ExpressionBuilder().buildBoolExpr(value);
+  }
+
+  private Expression character(char value) {
+    return new ExpressionBuilder().buildCharExpr(value);
+  }
+
+  /* expression + amount, written as a subtraction if amount is negative and can be negated. */
+  private Expression add(Expression expression, long amount) {
+    Expression sum = amount < 0 && amount != Integer.MIN_VALUE
+        ? new ExpressionBuilder().buildMinusExpr(expression, integer(-amount))
+        : new ExpressionBuilder().buildPlusExpr(expression, integer(amount));
+    sum.setType(Type.of(Type.EType.INT));
+    return sum;
+  }
+
+  private Expression multiply(Expression expression, Expression factor) {
+    Expression product = new ExpressionBuilder().buildMulExpr(expression, factor);
+    product.setType(Type.of(Type.EType.INT));
+    return product;
+  }
+
+}
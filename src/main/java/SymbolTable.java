@@ -1,3 +1,4 @@
+import ast.Symbol;
 import ast.Type;
 
 import java.util.HashMap;
@@ -6,44 +7,28 @@ import java.util.Map;
 public class SymbolTable {
 
   private final SymbolTable parent;
-  private final Map<String, Type> variables = new HashMap<>();
-  private final Map<String, Integer> variableSPMapping = new HashMap<>();
-  private int stackOffset = 0;
+  private final Map<String, Symbol> variables = new HashMap<>();
 
   public SymbolTable(SymbolTable parent) {
     this.parent = parent;
   }
 
-  public void newVariable(String ident, Type node) {
-    variables.put(ident, node);
+  public void newVariable(Symbol symbol) {
+    variables.put(symbol.getIdent(), symbol);
   }
 
   public boolean contains(String ident) {
     return variables.containsKey(ident);
   }
 
-  public Integer getSPMapping(String ident) {
-    if (!variableSPMapping.containsKey(ident) && parent != null) {
-      return parent.getSPMapping(ident);
-    }
-    return variableSPMapping.get(ident) + stackOffset;
-  }
-
-  public void setSPMapping(String ident, Integer absoluteSP) {
-    variableSPMapping.put(ident, absoluteSP);
-  }
-
-  public void incrementOffset(int amount) {
-    stackOffset += amount;
-  }
-
-  public void resetOffset() {
-    stackOffset = 0;
+  public Type getType(String ident) {
+    Symbol symbol = getSymbol(ident);
+    return symbol == null ? null : symbol.getType();
   }
 
-  public Type getType(String ident) {
+  public Symbol getSymbol(String ident) {
     if (!variables.containsKey(ident) && parent != null) {
-      return parent.getType(ident);
+      return parent.getSymbol(ident);
     }
     return variables.get(ident);
   }
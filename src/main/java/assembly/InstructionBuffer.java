@@ -0,0 +1,24 @@
+package assembly;
+
+import assembly.instructions.Instruction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/* The instructions generated so far, in output order. Instruction selection appends every
+   instruction straight to one buffer rather than returning a list per quad for its caller to copy,
+   so emitting is linear in the size of the output. */
+public class InstructionBuffer {
+
+  private final List<Instruction> instructions = new ArrayList<>();
+
+  public void add(Instruction instruction) {
+    instructions.add(instruction);
+  }
+
+  /* A read-only view of the buffer, valid until it is next changed. */
+  public List<Instruction> getInstructions() {
+    return Collections.unmodifiableList(instructions);
+  }
+
+}
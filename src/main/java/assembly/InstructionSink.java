@@ -0,0 +1,13 @@
+package assembly;
+
+import assembly.instructions.Instruction;
+import java.io.IOException;
+import java.util.List;
+
+/* Receives generated assembly one block at a time, in output order. A block may be a view of
+   the code generator's buffer, so it is only valid until emit returns. */
+public interface InstructionSink {
+
+  void emit(List<Instruction> instructions) throws IOException;
+
+}
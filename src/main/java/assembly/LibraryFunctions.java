@@ -6,7 +6,9 @@ import ast.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static assembly.LibraryFunctions.LFunctions.*;
 import static assembly.PredefinedFunctions.Functions;
@@ -199,29 +201,58 @@ public class LibraryFunctions {
         return null;
     }
 
+    /* Library function bodies do not depend on the program being compiled, so each one is
+       generated once and shared by every later compilation in this JVM. */
+    private static final Map<LFunctions, List<Instruction>> templates = new ConcurrentHashMap<>();
+
     public static List<Instruction> getInstructions(Set<LFunctions> functions, Set<Functions> preFunctions) {
 
         List<Instruction> instructions = new ArrayList<>();
 
         for (LFunctions function : functions) {
-            instructions.addAll(getFunctionInstructions(function, preFunctions));
+            addDependencies(function, preFunctions);
+            instructions.addAll(templates.computeIfAbsent(function,
+                f -> List.copyOf(getFunctionInstructions(f))));
         }
 
         return instructions;
     }
 
-    private static List<Instruction> getFunctionInstructions(LFunctions function, Set<Functions> preFunctions) {
+    private static void addDependencies(LFunctions function, Set<Functions> preFunctions) {
         switch (function) {
             case MAX:
+            case MIN:
+            case CONTAINS:
+            case BSORT:
                 preFunctions.add(Functions.P_CHECK_ARRAY_BOUNDS);
                 preFunctions.add(Functions.P_THROW_OVERFLOW_ERROR);
-                return maxInstructions();
+                break;
             case ABS:
+            case TOUPPER:
+            case TOLOWER:
+            case POW:
                 preFunctions.add(Functions.P_THROW_OVERFLOW_ERROR);
-                return absInstructions();
-            case MIN:
+                break;
+            case PARRAY:
                 preFunctions.add(Functions.P_CHECK_ARRAY_BOUNDS);
+                preFunctions.add(Functions.P_PRINT_INT);
+                preFunctions.add(Functions.P_THROW_OVERFLOW_ERROR);
+                preFunctions.add(Functions.P_PRINT_LN);
+                break;
+            case CONCAT:
                 preFunctions.add(Functions.P_THROW_OVERFLOW_ERROR);
+                preFunctions.add(Functions.P_CHECK_ARRAY_BOUNDS);
+                break;
+        }
+    }
+
+    private static List<Instruction> getFunctionInstructions(LFunctions function) {
+        switch (function) {
+            case MAX:
+                return maxInstructions();
+            case ABS:
+                return absInstructions();
+            case MIN:
                 return minInstructions();
             case ISALNUM:
                 return isAlnumInstructions();
@@ -238,31 +269,18 @@ public class LibraryFunctions {
             case ISSPACE:
                 return isSpaceInstructions();
             case TOUPPER:
-                preFunctions.add(Functions.P_THROW_OVERFLOW_ERROR);
                 return toUpperInstruction();
             case TOLOWER:
-                preFunctions.add(Functions.P_THROW_OVERFLOW_ERROR);
                 return toLowerInstruction();
             case POW:
-                preFunctions.add(Functions.P_THROW_OVERFLOW_ERROR);
                 return powInstruction();
             case CONTAINS:
-                preFunctions.add(Functions.P_CHECK_ARRAY_BOUNDS);
-                preFunctions.add(Functions.P_THROW_OVERFLOW_ERROR);
                 return containsIntstructions();
             case BSORT:
-                preFunctions.add(Functions.P_CHECK_ARRAY_BOUNDS);
-                preFunctions.add(Functions.P_THROW_OVERFLOW_ERROR);
                 return bSortInstructions();
             case PARRAY:
-                preFunctions.add(Functions.P_CHECK_ARRAY_BOUNDS);
-                preFunctions.add(Functions.P_PRINT_INT);
-                preFunctions.add(Functions.P_THROW_OVERFLOW_ERROR);
-                preFunctions.add(Functions.P_PRINT_LN);
                 return printArrayInstructions();
             case CONCAT:
-                preFunctions.add(Functions.P_THROW_OVERFLOW_ERROR);
-                preFunctions.add(Functions.P_CHECK_ARRAY_BOUNDS);
                 return concatInstructions();
             default:
                 return new ArrayList<>();
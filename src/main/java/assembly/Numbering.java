@@ -0,0 +1,65 @@
+package assembly;
+
+/* Numbers the labels or messages of the code of one function, such as L3 or msg_0. Functions are
+   generated independently of each other, so the program-wide number of a name is only known once
+   every function before it has been generated. Names are therefore relative to the base of their
+   Numbering and rendered when the instruction is written, after the base has been set. */
+public class Numbering {
+
+  private final String prefix;
+  private int base;
+  private int count;
+
+  public Numbering(String prefix) {
+    this.prefix = prefix;
+  }
+
+  public Name next() {
+    return new Name(count++, "");
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public void setBase(int base) {
+    this.base = base;
+  }
+
+  public class Name implements CharSequence {
+
+    private final int index;
+    private final String suffix;
+
+    private Name(int index, String suffix) {
+      this.index = index;
+      this.suffix = suffix;
+    }
+
+    /* The name followed by a colon, where it labels an instruction or message. */
+    public Name definition() {
+      return new Name(index, ":");
+    }
+
+    @Override
+    public int length() {
+      return toString().length();
+    }
+
+    @Override
+    public char charAt(int i) {
+      return toString().charAt(i);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+      return prefix + (base + index) + suffix;
+    }
+  }
+
+}
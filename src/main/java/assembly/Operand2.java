@@ -16,7 +16,7 @@ public class Operand2 {
     this.isOffsetRegister = false;
   }
 
-  // Register with (LSL/LSR) shift with amount
+  // Register with (LSL/LSR/ASR) shift with amount
   public Operand2(Register register, Shift shift, int amount) {
     this.register = register;
     this.shift = shift;
@@ -45,7 +45,7 @@ public class Operand2 {
     if (shift == null && register == null) { // the operand is an immediate value
       return "#" + immediateValue;
     } else if (shift != null && register != null) { // the operand is a register shift
-      return register + ", " + shift + ", #" + amount;
+      return register + ", " + shift + " #" + amount;
     } else if (isOffsetRegister) {
       return register + ", #" + offset;
     }
@@ -55,4 +55,27 @@ public class Operand2 {
   public int getImmediateValue() {
     return immediateValue;
   }
+
+  public boolean isImmediate() {
+    return register == null;
+  }
+
+  /* Whether the operand is a register on its own, neither shifted nor offset. */
+  public boolean isPlainRegister() {
+    return register != null && shift == null && !isOffsetRegister;
+  }
+
+  public Register getRegister() {
+    return register;
+  }
+
+  /* Whether value fits the 8-bit rotated immediate field of a data processing instruction. */
+  public static boolean isEncodable(int value) {
+    for (int rotation = 0; rotation < 32; rotation += 2) {
+      if ((Integer.rotateLeft(value, rotation) & ~0xff) == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
 }
@@ -0,0 +1,191 @@
+package assembly;
+
+import assembly.instructions.ADD;
+import assembly.instructions.Branch;
+import assembly.instructions.Instruction;
+import assembly.instructions.LABEL;
+import assembly.instructions.LDR;
+import assembly.instructions.MOV;
+import assembly.instructions.STR;
+import assembly.instructions.SUB;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Rewrites short runs of generated instructions into cheaper equivalents.
+
+   Instructions are appended one at a time to the output, and after each the rules are tried on
+   the window of instructions just before its end. A rule that matches replaces its window, and
+   the rules are tried again on the new end of the output, so rewrites that expose further ones
+   are caught in the same single pass.
+
+   Every rule only looks at its window and so must be correct whatever the code around it does:
+   none of them may assume a register is dead afterwards. */
+public class Peephole {
+
+  public interface Rule {
+
+    String getName();
+
+    /* The number of instructions the rule looks at. */
+    int getWidth();
+
+    /* The instructions to replace window with, or null if the rule does not apply. */
+    List<Instruction> rewrite(List<Instruction> window);
+  }
+
+  private static final Register SP = new Register(13);
+
+  private final List<Rule> rules;
+  private final Map<String, Integer> hits = new LinkedHashMap<>();
+
+  public Peephole(List<Rule> rules) {
+    this.rules = rules;
+    for (Rule rule : rules) {
+      hits.put(rule.getName(), 0);
+    }
+  }
+
+  /* The rules of the default optimisation level. */
+  public static List<Rule> standardRules() {
+    return List.of(SELF_MOVE, MOVE_BACK, STORE_LOAD, BRANCH_TO_NEXT, STACK_ADJUST);
+  }
+
+  public List<Instruction> optimise(List<Instruction> instructions) {
+
+    List<Instruction> output = new ArrayList<>(instructions.size());
+
+    for (Instruction instruction : instructions) {
+      output.add(instruction);
+
+      boolean rewritten = true;
+      while (rewritten) {
+        rewritten = false;
+        for (Rule rule : rules) {
+          int start = output.size() - rule.getWidth();
+          if (start < 0) {
+            continue;
+          }
+          List<Instruction> window = output.subList(start, output.size());
+          List<Instruction> replacement = rule.rewrite(window);
+          if (replacement != null) {
+            window.clear();
+            output.addAll(replacement);
+            hits.merge(rule.getName(), 1, Integer::sum);
+            rewritten = true;
+            break;
+          }
+        }
+      }
+    }
+
+    return output;
+  }
+
+  /* The number of times each rule has rewritten code so far, in rule order. */
+  public Map<String, Integer> getHits() {
+    return hits;
+  }
+
+  private static Rule rule(String name, int width,
+      java.util.function.Function<List<Instruction>, List<Instruction>> rewrite) {
+    return new Rule() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public int getWidth() {
+        return width;
+      }
+
+      @Override
+      public List<Instruction> rewrite(List<Instruction> window) {
+        return rewrite.apply(window);
+      }
+    };
+  }
+
+  /* MOV rX, rX does nothing, though MOVS rX, rX sets the flags. */
+  public static final Rule SELF_MOVE = rule("selfMove", 1, window -> {
+    Instruction move = window.get(0);
+    return isRegisterMove(move) && move.getSuffix().isEmpty()
+        && move.getDest().equals(move.getOperand2().getRegister())
+        ? List.of() : null;
+  });
+
+  /* After MOV rA, rB the two registers are equal, so a following MOV rB, rA does nothing. */
+  public static final Rule MOVE_BACK = rule("moveBack", 2, window -> {
+    Instruction first = window.get(0);
+    Instruction second = window.get(1);
+    return isRegisterMove(first) && isRegisterMove(second) && first.getSuffix().isEmpty()
+        && second.getSuffix().isEmpty()
+        && first.getDest().equals(second.getOperand2().getRegister())
+        && second.getDest().equals(first.getOperand2().getRegister())
+        ? List.of(first) : null;
+  });
+
+  /* A word loaded from where it was just stored is still in the register it was stored from.
+     Bytes are left alone, as LDRSB sign extends what STRB truncated. */
+  public static final Rule STORE_LOAD = rule("storeLoad", 2, window -> {
+    Instruction store = window.get(0);
+    Instruction load = window.get(1);
+    if (!(store instanceof STR) || ((STR) store).isWriteBack() || !store.getSuffix().isEmpty()
+        || !(load instanceof LDR) || !load.getSuffix().isEmpty() || load.getOperand2() == null
+        || !store.getOperand2().toString().equals(load.getOperand2().toString())) {
+      return null;
+    }
+    Register value = store.getOperand1();
+    if (load.getDest().equals(value)) {
+      return List.of(store);
+    }
+    return List.of(store, new MOV(load.getDest(), new Operand2(value)));
+  });
+
+  /* A branch to the label straight after it. */
+  public static final Rule BRANCH_TO_NEXT = rule("branchToNext", 2, window -> {
+    Instruction branch = window.get(0);
+    Instruction label = window.get(1);
+    return branch instanceof Branch && !((Branch) branch).isLink() && label instanceof LABEL
+        && label.getLabel().toString().equals(branch.getLabel() + ":")
+        ? List.of(label) : null;
+  });
+
+  /* Two adjustments of sp in a row become one, or none if they cancel out. */
+  public static final Rule STACK_ADJUST = rule("stackAdjust", 2, window -> {
+    Integer first = stackAdjustment(window.get(0));
+    Integer second = stackAdjustment(window.get(1));
+    if (first == null || second == null) {
+      return null;
+    }
+    int bytes = first + second;
+    if (bytes == 0) {
+      return List.of();
+    }
+    if (!Operand2.isEncodable(Math.abs(bytes))) {
+      return null;
+    }
+    return List.of(bytes > 0 ? new ADD(SP, SP, new Operand2(bytes))
+        : new SUB(SP, SP, new Operand2(-bytes)));
+  });
+
+  private static boolean isRegisterMove(Instruction instruction) {
+    return instruction instanceof MOV && instruction.getOperand2() != null
+        && instruction.getOperand2().isPlainRegister();
+  }
+
+  /* The bytes an ADD or SUB of an immediate moves sp up by, or null for any other instruction. */
+  private static Integer stackAdjustment(Instruction instruction) {
+    if (!(instruction instanceof ADD || instruction instanceof SUB)
+        || !instruction.getSuffix().isEmpty() || instruction.getImmValue() != null
+        || !SP.equals(instruction.getDest()) || !SP.equals(instruction.getOperand1())
+        || !instruction.getOperand2().isImmediate()) {
+      return null;
+    }
+    int bytes = instruction.getOperand2().getImmediateValue();
+    return instruction instanceof ADD ? bytes : -bytes;
+  }
+
+}
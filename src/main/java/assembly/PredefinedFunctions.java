@@ -8,9 +8,10 @@ import java.util.Set;
 
 public class PredefinedFunctions {
 
-  private static final List<Instruction> messages = new ArrayList<>();
+  /* Messages are numbered per compilation, so every Converter owns its own instance. */
+  private final List<Instruction> messages = new ArrayList<>();
 
-  private static int msgCounter = 0;
+  private int msgCounter = 0;
 
   private static final Register r0 = new Register(0);
   private static final Register r1 = new Register(1);
@@ -30,7 +31,7 @@ public class PredefinedFunctions {
     P_FREE_PAIR
   }
 
-  public static List<Instruction> getInstructions(Set<Functions> functions) {
+  public List<Instruction> getInstructions(Set<Functions> functions) {
 
     /* Add dependencies to the set. */
 
@@ -57,7 +58,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> getFunctionInstructions(Functions function) {
+  private List<Instruction> getFunctionInstructions(Functions function) {
     switch (function) {
       case P_PRINT_INT:
         return pPrintIntInstruction();
@@ -89,21 +90,23 @@ public class PredefinedFunctions {
     return List.of();
   }
 
-  public static void addMessage(Instruction instruction) {
+  public void addMessage(Instruction instruction) {
     messages.add(instruction);
   }
 
-  public static String getMessageLabel() {
-    int msgNum = msgCounter;
-    msgCounter++;
-    return "msg_" + msgNum;
+  /* Appends the messages of one function's code, numbered from zero by the given Numbering,
+     which is rebased to follow the messages already here. */
+  public void addMessages(List<Instruction> functionMessages, Numbering numbering) {
+    numbering.setBase(msgCounter);
+    msgCounter += numbering.getCount();
+    messages.addAll(functionMessages);
   }
 
-  public static List<Instruction> getMessages() {
+  public List<Instruction> getMessages() {
     return messages;
   }
 
-  private static List<Instruction> pPrintIntInstruction() {
+  private List<Instruction> pPrintIntInstruction() {
 
     List<Instruction> instructions = new ArrayList<>();
 
@@ -145,7 +148,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> pPrintBoolInstruction() {
+  private List<Instruction> pPrintBoolInstruction() {
 
     List<Instruction> instructions = new ArrayList<>();
 
@@ -200,7 +203,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> pPrintStringInstruction() {
+  private List<Instruction> pPrintStringInstruction() {
 
     List<Instruction> instructions = new ArrayList<>();
 
@@ -248,7 +251,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> pPrintReferenceInstruction() {
+  private List<Instruction> pPrintReferenceInstruction() {
 
     List<Instruction> instructions = new ArrayList<>();
 
@@ -291,7 +294,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> pPrintLn() {
+  private List<Instruction> pPrintLn() {
 
     List<Instruction> instructions = new ArrayList<>();
 
@@ -331,7 +334,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> pCheckNullPointer() {
+  private List<Instruction> pCheckNullPointer() {
 
     List<Instruction> instructions = new ArrayList<>();
 
@@ -365,7 +368,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> pThrowRuntimeError() {
+  private List<Instruction> pThrowRuntimeError() {
 
     List<Instruction> instructions = new ArrayList<>();
 
@@ -384,7 +387,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> pThrowOverflowError() {
+  private List<Instruction> pThrowOverflowError() {
 
     List<Instruction> instructions = new ArrayList<>();
 
@@ -408,7 +411,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> pCheckDivideByZero() {
+  private List<Instruction> pCheckDivideByZero() {
 
     List<Instruction> instructions = new ArrayList<>();
 
@@ -441,7 +444,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> pCheckArrayBounds() {
+  private List<Instruction> pCheckArrayBounds() {
 
     List<Instruction> instructions = new ArrayList<>();
 
@@ -495,7 +498,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> pReadInt() {
+  private List<Instruction> pReadInt() {
 
     List<Instruction> instructions = new ArrayList<>();
 
@@ -530,7 +533,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> pReadChar() {
+  private List<Instruction> pReadChar() {
 
     List<Instruction> instructions = new ArrayList<>();
 
@@ -565,7 +568,7 @@ public class PredefinedFunctions {
     return instructions;
   }
 
-  private static List<Instruction> pFreePair() {
+  private List<Instruction> pFreePair() {
 
     List<Instruction> instructions = new ArrayList<>();
 
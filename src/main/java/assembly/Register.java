@@ -16,6 +16,20 @@ public class Register {
     return new Register(number - 1);
   }
 
+  public int getNumber() {
+    return number;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof Register && ((Register) other).number == number;
+  }
+
+  @Override
+  public int hashCode() {
+    return number;
+  }
+
   @Override
   public String toString() {
     if (number == 13) {
@@ -2,5 +2,6 @@ package assembly;
 
 public enum Shift {
   LSL, // (Rx, LSL n) Register x with logical shift left by n bits
-  LSR  // (Rx, LSR n) Register x with logical shift right by n bits
+  LSR, // (Rx, LSR n) Register x with logical shift right by n bits
+  ASR  // (Rx, ASR n) Register x with arithmetic shift right by n bits
 }
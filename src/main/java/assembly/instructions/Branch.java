@@ -4,22 +4,30 @@ import assembly.Conditionals;
 
 public class Branch extends Instruction {
 
+  private boolean link = false;
+
   //B label
-  public Branch(String label) {
+  public Branch(CharSequence label) {
     this.label = label;
   }
 
   //B{S}{Cond} label
-  public Branch(String label, Conditionals conditionals) {
+  public Branch(CharSequence label, Conditionals conditionals) {
     this.label = label;
     this.extraInformation = conditionals.toString();
   }
 
   public Branch setSuffix(String suffix) {
     extraInformation = suffix + extraInformation;
+    link |= suffix.equals("L");
     return this;
   }
 
+  /* Whether this is a BL, a call rather than a jump. */
+  public boolean isLink() {
+    return link;
+  }
+
   @Override
   public String toString() {
     return "B" + extraInformation + " " + label;
@@ -11,10 +11,36 @@ public abstract class Instruction {
   Register operand1;
   Operand2 operand2;
   String extraInformation = "";
-  String label;
+  CharSequence label;
 
   Register rdLo;
   Register rdHi;
   Register rn;
   Register rm;
+
+  /* Read-only views of the operands, for passes that inspect generated code. */
+  public Register getDest() {
+    return dest;
+  }
+
+  public Long getImmValue() {
+    return immValue;
+  }
+
+  public Register getOperand1() {
+    return operand1;
+  }
+
+  public Operand2 getOperand2() {
+    return operand2;
+  }
+
+  /* The condition code and flag suffixes of the mnemonic, such as "S" or "EQ". */
+  public String getSuffix() {
+    return extraInformation;
+  }
+
+  public CharSequence getLabel() {
+    return label;
+  }
 }
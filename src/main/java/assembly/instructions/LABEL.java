@@ -2,12 +2,12 @@ package assembly.instructions;
 
 public class LABEL extends Instruction {
 
-  public LABEL(String label) {
+  public LABEL(CharSequence label) {
     this.label = label;
   }
 
   @Override
   public String toString() {
-    return label;
+    return label.toString();
   }
 }
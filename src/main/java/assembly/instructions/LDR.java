@@ -33,13 +33,13 @@ public class LDR extends Instruction {
   }
 
   //LDR{cond} dest, operand
-  public LDR(Register dest, String label) {
+  public LDR(Register dest, CharSequence label) {
     this.dest = dest;
     this.label = label;
   }
 
   //LDR{S}{cond} dest, operand
-  public LDR(Register dest, String label, Conditionals conditionals) {
+  public LDR(Register dest, CharSequence label, Conditionals conditionals) {
     this.dest = dest;
     this.label = label;
     this.extraInformation = conditionals.toString();
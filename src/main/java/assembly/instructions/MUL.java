@@ -0,0 +1,18 @@
+package assembly.instructions;
+
+import assembly.Register;
+
+public class MUL extends Instruction {
+
+  //MUL{cond} Rd, Rm, Rs
+  public MUL(Register dest, Register rm, Register rs) {
+    this.dest = dest;
+    this.rm = rm;
+    this.rn = rs;
+  }
+
+  @Override
+  public String toString() {
+    return "MUL " + dest + ", " + rm + ", " + rn;
+  }
+}
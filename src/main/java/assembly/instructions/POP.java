@@ -1,16 +1,27 @@
 package assembly.instructions;
 
 import assembly.Register;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class POP extends Instruction{
 
+  private final List<Register> registers;
+
   //POP {dest}
   public POP(Register dest) {
-    this.dest = dest;
+    this(List.of(dest));
+  }
+
+  //POP {r4, r5, ..., pc}
+  public POP(List<Register> registers) {
+    this.dest = registers.get(0);
+    this.registers = registers;
   }
 
   @Override
   public String toString() {
-    return "POP {" + dest + "}";
+    return registers.stream().map(Register::toString)
+        .collect(Collectors.joining(", ", "POP {", "}"));
   }
 }
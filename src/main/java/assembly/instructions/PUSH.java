@@ -1,16 +1,27 @@
 package assembly.instructions;
 
 import assembly.Register;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class PUSH extends Instruction {
 
+  private final List<Register> registers;
+
   //PUSH {dest}
   public PUSH(Register dest) {
-    this.dest = dest;
+    this(List.of(dest));
+  }
+
+  //PUSH {r4, r5, ..., lr}
+  public PUSH(List<Register> registers) {
+    this.dest = registers.get(0);
+    this.registers = registers;
   }
 
   @Override
   public String toString() {
-    return "PUSH {" + dest + "}";
+    return registers.stream().map(Register::toString)
+        .collect(Collectors.joining(", ", "PUSH {", "}"));
   }
 }
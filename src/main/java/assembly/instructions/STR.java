@@ -25,6 +25,11 @@ public class STR extends Instruction {
     return this;
   }
 
+  /* Whether the address is written back to its base register, as in a push. */
+  public boolean isWriteBack() {
+    return exclaim;
+  }
+
   @Override
   public String toString() {
     if (exclaim) {
@@ -6,6 +6,7 @@ public class ArrayElem {
 
   private final String ident;
   private final List<Expression> expressions;
+  private Symbol symbol;
 
   public ArrayElem(String ident, List<Expression> expressions) {
     this.ident = ident;
@@ -20,6 +21,15 @@ public class ArrayElem {
     return expressions;
   }
 
+  /* The array variable, resolved by semantic analysis. */
+  public Symbol getSymbol() {
+    return symbol;
+  }
+
+  public void setSymbol(Symbol symbol) {
+    this.symbol = symbol;
+  }
+
   @Override
   public String toString() {
     StringBuilder result = new StringBuilder(ident);
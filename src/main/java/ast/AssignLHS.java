@@ -7,6 +7,11 @@ public class AssignLHS {
   private final ArrayElem arrayElem;
   private final PairElem pairElem;
 
+  /* The type of the assigned location and, for an IDENT, the variable, filled in by semantic
+     analysis. */
+  private Type type;
+  private Symbol symbol;
+
   public AssignLHS(LHSType assignType, String ident, ArrayElem arrayElem, PairElem pairElem) {
     this.assignType = assignType;
     this.ident = ident;
@@ -39,6 +44,22 @@ public class AssignLHS {
     return assignType;
   }
 
+  public Type getType() {
+    return type;
+  }
+
+  public void setType(Type type) {
+    this.type = type;
+  }
+
+  public Symbol getSymbol() {
+    return symbol;
+  }
+
+  public void setSymbol(Symbol symbol) {
+    this.symbol = symbol;
+  }
+
   public String getIdent() {
     return ident;
   }
@@ -2,25 +2,24 @@ package ast;
 
 import java.util.List;
 
+/* The right-hand side of an assignment, storing only the payload of its own kind in two shared
+   slots:
+
+   EXPR       expression1
+   ARRAY      array
+   NEWPAIR    expression1, expression2
+   PAIRELEM   pairElem
+   CALL       functionIdent, argList */
 public class AssignRHS {
 
   RHSType assignType;
-  Expression expression1;
-  Expression expression2;
-  List<Expression> array;
-  PairElem pairElem;
-  String functionIdent;
-  List<Expression> argList;
-
-  public AssignRHS(RHSType assignType, Expression expression1, Expression expression2, List<Expression> array,
-                   PairElem pairElem, String functionIdent, List<Expression> argList) {
+  Object operand1;
+  Object operand2;
+
+  AssignRHS(RHSType assignType, Object operand1, Object operand2) {
     this.assignType = assignType;
-    this.expression1 = expression1;
-    this.expression2 = expression2;
-    this.array = array;
-    this.pairElem = pairElem;
-    this.functionIdent = functionIdent;
-    this.argList = argList;
+    this.operand1 = operand1;
+    this.operand2 = operand2;
   }
 
   public RHSType getAssignType() {
@@ -28,36 +27,43 @@ public class AssignRHS {
   }
 
   public Expression getExpression1() {
-    return expression1;
+    return assignType == RHSType.EXPR || assignType == RHSType.NEWPAIR
+        ? (Expression) operand1 : null;
   }
 
   public Expression getExpression2() {
-    return expression2;
+    return assignType == RHSType.NEWPAIR ? (Expression) operand2 : null;
   }
 
+  @SuppressWarnings("unchecked")
   public List<Expression> getArray() {
-    return array;
+    return assignType == RHSType.ARRAY ? (List<Expression>) operand1 : null;
   }
 
   public PairElem getPairElem() {
-    return pairElem;
+    return assignType == RHSType.PAIRELEM ? (PairElem) operand1 : null;
   }
 
   public String getFunctionIdent() {
-    return functionIdent;
+    return assignType == RHSType.CALL ? (String) operand1 : null;
   }
 
   public void setFunctionIdent(String functionIdent) {
-    this.functionIdent = functionIdent;
+    this.operand1 = functionIdent;
   }
 
+  @SuppressWarnings("unchecked")
   public List<Expression> getArgList() {
-    return argList;
+    return assignType == RHSType.CALL ? (List<Expression>) operand2 : null;
   }
 
   @Override
   public String toString() {
 
+    Expression expression1 = getExpression1();
+    Expression expression2 = getExpression2();
+    List<Expression> array = getArray();
+    List<Expression> argList = getArgList();
     StringBuilder result = new StringBuilder();
 
     if (assignType == RHSType.EXPR) {
@@ -80,11 +86,11 @@ public class AssignRHS {
     }
 
     if (assignType == RHSType.PAIRELEM) {
-      result.append(pairElem);
+      result.append(getPairElem());
     }
 
     if (assignType == RHSType.CALL) {
-      result.append("call ").append(functionIdent).append("(");
+      result.append("call ").append(getFunctionIdent()).append("(");
       if (!argList.isEmpty()) {
         result.append(argList.get(0));
         for (int i = 1; i < argList.size(); i++) {
@@ -2,29 +2,31 @@ package ast;
 
 import java.util.Objects;
 
+/* An expression node. Only the payload of its own kind is stored, in two shared slots, so every
+   node is the same small size whatever its kind:
+
+   INTLITER, BOOLLITER, CHARLITER   operand is the boxed Long, Boolean or Character value
+   STRINGLITER, IDENT               operand is the String
+   ARRAYELEM                        operand is the ArrayElem
+   unary operators and BRACKETS     operand is the Expression
+   binary operators                 operand and expression2 are the two Expressions
+
+   The getters decode the slots and return null, zero or false for anything the kind does not
+   carry. */
 public class Expression {
 
   private ExprType exprType;
-  private long intLiter;
-  private boolean boolLiter;
-  private char charLiter;
-  private String stringLiter;
-  private String ident;
-  private ArrayElem arrayElem;
-  private Expression expression1;
+  private Object operand;
   private Expression expression2;
 
-  public Expression(ExprType exprType, long intLiter, boolean boolLiter, char charLiter, String stringLiter
-                    ,String ident, ArrayElem arrayElem, Expression expression1,
-      Expression expression2) {
+  /* Filled in by semantic analysis: the type of the expression, and the variable an IDENT or
+     ARRAYELEM expression refers to. */
+  private Type type;
+  private Symbol symbol;
+
+  Expression(ExprType exprType, Object operand, Expression expression2) {
     this.exprType = exprType;
-    this.intLiter = intLiter;
-    this.boolLiter = boolLiter;
-    this.charLiter = charLiter;
-    this.stringLiter = stringLiter;
-    this.ident = ident;
-    this.arrayElem = arrayElem;
-    this.expression1 = expression1;
+    this.operand = operand;
     this.expression2 = expression2;
   }
 
@@ -34,130 +36,138 @@ public class Expression {
     StringBuilder result = new StringBuilder();
 
     if (exprType == ExprType.INTLITER) {
-      result.append(intLiter);
+      result.append(getIntLiter());
     }
 
     if (exprType == ExprType.BOOLLITER) {
-      result.append(String.valueOf(boolLiter).toLowerCase());
+      result.append(String.valueOf(getBoolLiter()).toLowerCase());
     }
 
     if (exprType == ExprType.CHARLITER) {
-      result.append("'").append(charLiter).append("'");
+      result.append("'").append(getCharLiter()).append("'");
     }
 
     if (exprType == ExprType.STRINGLITER) {
-      result.append(stringLiter);
+      result.append(getStringLiter());
     }
 
     if (exprType == ExprType.IDENT) {
-      result.append(ident);
+      result.append(getIdent());
     }
 
     if (exprType == ExprType.ARRAYELEM) {
-      result.append(arrayElem);
+      result.append(getArrayElem());
     }
 
     if (exprType == ExprType.NOT) {
-      result.append("!").append(expression1);
+      result.append("!").append(getExpression1());
     }
 
     if (exprType == ExprType.NEG) {
-      result.append("-").append(expression1);
+      result.append("-").append(getExpression1());
     }
 
     if (exprType == ExprType.LEN) {
-      result.append("len ").append(expression1);
+      result.append("len ").append(getExpression1());
     }
 
     if (exprType == ExprType.ORD) {
-      result.append("ord ").append(expression1);
+      result.append("ord ").append(getExpression1());
     }
 
     if (exprType == ExprType.CHR) {
-      result.append("chr ").append(expression1);
+      result.append("chr ").append(getExpression1());
     }
 
     if (exprType == ExprType.DIVIDE) {
-      result.append(expression1).append(" / ").append(expression2);
+      result.append(getExpression1()).append(" / ").append(expression2);
     }
 
     if (exprType == ExprType.MULTIPLY) {
-      result.append(expression1).append(" * ").append(expression2);
+      result.append(getExpression1()).append(" * ").append(expression2);
     }
 
     if (exprType == ExprType.MODULO) {
-      result.append(expression1).append(" % ").append(expression2);
+      result.append(getExpression1()).append(" % ").append(expression2);
     }
 
     if (exprType == ExprType.PLUS) {
-      result.append(expression1).append(" + ").append(expression2);
+      result.append(getExpression1()).append(" + ").append(expression2);
     }
 
     if (exprType == ExprType.MINUS) {
-      result.append(expression1).append(" - ").append(expression2);
+      result.append(getExpression1()).append(" - ").append(expression2);
     }
 
     if (exprType == ExprType.GT) {
-      result.append(expression1).append(" > ").append(expression2);
+      result.append(getExpression1()).append(" > ").append(expression2);
     }
 
     if (exprType == ExprType.GTE) {
-      result.append(expression1).append(" >= ").append(expression2);
+      result.append(getExpression1()).append(" >= ").append(expression2);
     }
 
     if (exprType == ExprType.LT) {
-      result.append(expression1).append(" < ").append(expression2);
+      result.append(getExpression1()).append(" < ").append(expression2);
     }
 
     if (exprType == ExprType.LTE) {
-      result.append(expression1).append(" <= ").append(expression2);
+      result.append(getExpression1()).append(" <= ").append(expression2);
     }
 
     if (exprType == ExprType.EQ) {
-      result.append(expression1).append(" == ").append(expression2);
+      result.append(getExpression1()).append(" == ").append(expression2);
     }
 
     if (exprType == ExprType.NEQ) {
-      result.append(expression1).append(" != ").append(expression2);
+      result.append(getExpression1()).append(" != ").append(expression2);
     }
 
     if (exprType == ExprType.AND) {
-      result.append(expression1).append(" && ").append(expression2);
+      result.append(getExpression1()).append(" && ").append(expression2);
     }
 
     if (exprType == ExprType.OR) {
-      result.append(expression1).append(" || ").append(expression2);
+      result.append(getExpression1()).append(" || ").append(expression2);
     }
 
     if (exprType == ExprType.BRACKETS) {
-      result.append("(").append(expression1).append(")");
+      result.append("(").append(getExpression1()).append(")");
     }
 
     if (exprType == ExprType.REFERENCE) {
-      result.append("&").append(expression1);
+      result.append("&").append(getExpression1());
     }
 
     if (exprType == ExprType.DEREFERENCE) {
-      result.append("*").append(expression1);
+      result.append("*").append(getExpression1());
     }
 
     return result.toString();
   }
 
   public long getIntLiter() {
-    return intLiter;
+    return exprType == ExprType.INTLITER ? (Long) operand : 0;
   }
 
   public boolean getBoolLiter() {
-    return boolLiter;
+    return exprType == ExprType.BOOLLITER && (Boolean) operand;
   }
 
   public char getCharLiter() {
-    return charLiter;
+    return exprType == ExprType.CHARLITER ? (Character) operand : '\0';
   }
 
   public String getStringLiter() {
-    return stringLiter;
+    return exprType == ExprType.STRINGLITER ? (String) operand : null;
+  }
+
+  /* Whether evaluating this expression could stop the program with an error, which keeps it from
+     being removed or moved past another that could. */
+  public boolean canFail() {
+    Expression expression1 = getExpression1();
+    return exprType.canFail() || expression1 != null && expression1.canFail()
+        || expression2 != null && expression2.canFail();
   }
 
   public ExprType getExprType() {
@@ -165,7 +175,7 @@ public class Expression {
   }
 
   public Expression getExpression1() {
-    return expression1;
+    return operand instanceof Expression ? (Expression) operand : null;
   }
 
   public Expression getExpression2() {
@@ -173,23 +183,41 @@ public class Expression {
   }
 
   public ArrayElem getArrayElem(){
-    return arrayElem;
+    return exprType == ExprType.ARRAYELEM ? (ArrayElem) operand : null;
   }
 
   public String getIdent() {
-    return ident;
+    return exprType == ExprType.IDENT ? (String) operand : null;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public void setType(Type type) {
+    this.type = type;
+  }
+
+  public Symbol getSymbol() {
+    return symbol;
+  }
+
+  public void setSymbol(Symbol symbol) {
+    this.symbol = symbol;
   }
 
   public void setExpression(Expression expression) {
     this.exprType = expression.exprType;
-    this.intLiter = expression.intLiter;
-    this.boolLiter = expression.boolLiter;
-    this.charLiter = expression.charLiter;
-    this.stringLiter = expression.stringLiter;
-    this.ident = expression.ident;
-    this.arrayElem = expression.arrayElem;
-    this.expression1 = expression.expression1;
+    this.operand = expression.operand;
     this.expression2 = expression.expression2;
+
+    /* Folded literals are typed when built; keep this node's annotations otherwise. */
+    if (expression.type != null) {
+      this.type = expression.type;
+    }
+    if (expression.symbol != null) {
+      this.symbol = expression.symbol;
+    }
   }
 
   @Override
@@ -202,8 +230,8 @@ public class Expression {
     }
     Expression that = (Expression) o;
 
-    return (exprType == ExprType.INTLITER && that.exprType == ExprType.INTLITER && intLiter == that.intLiter) ||
-        (exprType == ExprType.BOOLLITER && that.exprType == ExprType.BOOLLITER && boolLiter == that.boolLiter);
+    return (exprType == ExprType.INTLITER && that.exprType == ExprType.INTLITER && getIntLiter() == that.getIntLiter()) ||
+        (exprType == ExprType.BOOLLITER && that.exprType == ExprType.BOOLLITER && getBoolLiter() == that.getBoolLiter());
 
 //    return intLiter == that.intLiter && boolLiter == that.boolLiter &&
 //        charLiter == that.charLiter &&
@@ -243,7 +271,26 @@ public class Expression {
     OR,
     BRACKETS,
     REFERENCE,
-    DEREFERENCE
+    DEREFERENCE;
+
+    /* Whether an expression of this kind can fail whatever its operands: by overflowing, dividing
+       by zero, indexing out of bounds or reading through a null array or pointer. */
+    public boolean canFail() {
+      switch (this) {
+        case ARRAYELEM:
+        case LEN:
+        case DEREFERENCE:
+        case NEG:
+        case PLUS:
+        case MINUS:
+        case MULTIPLY:
+        case DIVIDE:
+        case MODULO:
+          return true;
+        default:
+          return false;
+      }
+    }
 
   }
 
@@ -8,6 +8,7 @@ public class Function {
   private String ident;
   private final List<Param> params;
   private final Statement statement;
+  private int slotCount;
 
   public Function(Type returnType, String ident, List<Param> params, Statement statement) {
     this.returnType = returnType;
@@ -36,6 +37,15 @@ public class Function {
     this.ident = ident;
   }
 
+  /* The number of variable slots, parameters included, numbered by semantic analysis. */
+  public int getSlotCount() {
+    return slotCount;
+  }
+
+  public void setSlotCount(int slotCount) {
+    this.slotCount = slotCount;
+  }
+
   @Override
   public String toString() {
     StringBuilder paramSB = new StringBuilder();
@@ -4,6 +4,7 @@ public class Param {
 
   Type type;
   String ident;
+  Symbol symbol;
 
   public Param(Type type, String ident) {
     this.type = type;
@@ -18,6 +19,14 @@ public class Param {
     return ident;
   }
 
+  public Symbol getSymbol() {
+    return symbol;
+  }
+
+  public void setSymbol(Symbol symbol) {
+    this.symbol = symbol;
+  }
+
   @Override
   public String toString() {
     return type + ", " + ident;
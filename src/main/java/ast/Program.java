@@ -6,6 +6,7 @@ public class Program {
 
   private final List<Function> functions;
   private final Statement statement;
+  private int slotCount;
 
   public Program(List<Function> functions, Statement statement) {
     this.functions = functions;
@@ -20,6 +21,15 @@ public class Program {
     return statement;
   }
 
+  /* The number of variable slots in main, numbered by semantic analysis. */
+  public int getSlotCount() {
+    return slotCount;
+  }
+
+  public void setSlotCount(int slotCount) {
+    this.slotCount = slotCount;
+  }
+
   @Override
   public String toString() {
     StringBuilder functionSB = new StringBuilder();
@@ -1,26 +1,36 @@
 package ast;
 
+import java.util.List;
+
+/* A statement node. Only the payload of its own kind is stored, in three shared slots, so every
+   node is the same small size whatever its kind:
+
+   DECLARATION            lhsType, lhsIdent, rhs
+   REASSIGNMENT           lhs, rhs
+   READ                   lhs
+   FREE, RETURN, EXIT,
+   PRINT, PRINTLN         expression
+   IF                     expression, statement1, statement2
+   WHILE                  expression, statement1
+   BEGIN                  statement1
+   SEQUENCE               statements
+
+   The getters decode the slots and return null for anything the kind does not carry. */
 public class Statement {
 
   private final StatType statType;
-  private final Type lhsType;
-  private final String lhsIdent;
-  private final AssignLHS lhs;
-  private final AssignRHS rhs;
-  private final Expression expression;
-  private final Statement statement1;
-  private final Statement statement2;
-
-  public Statement(StatType statType, Type lhsType, String lhsIdent, AssignLHS lhs, AssignRHS rhs,
-                   Expression expression, Statement statement1, Statement statement2) {
+  private final Object operand1;
+  private final Object operand2;
+  private final Object operand3;
+
+  /* The variable a DECLARATION introduces, filled in by semantic analysis. */
+  private Symbol symbol;
+
+  Statement(StatType statType, Object operand1, Object operand2, Object operand3) {
     this.statType = statType;
-    this.lhsType = lhsType;
-    this.lhsIdent = lhsIdent;
-    this.lhs = lhs;
-    this.rhs = rhs;
-    this.expression = expression;
-    this.statement1 = statement1;
-    this.statement2 = statement2;
+    this.operand1 = operand1;
+    this.operand2 = operand2;
+    this.operand3 = operand3;
   }
 
   public StatType getStatType() {
@@ -28,31 +38,61 @@ public class Statement {
   }
 
   public Type getLhsType() {
-    return lhsType;
+    return statType == StatType.DECLARATION ? (Type) operand1 : null;
   }
 
   public String getLhsIdent() {
-    return lhsIdent;
+    return statType == StatType.DECLARATION ? (String) operand2 : null;
   }
 
   public AssignLHS getLHS() {
-    return lhs;
+    return statType == StatType.REASSIGNMENT || statType == StatType.READ
+        ? (AssignLHS) operand1 : null;
   }
 
   public AssignRHS getRHS() {
-    return rhs;
+    switch (statType) {
+      case DECLARATION:
+        return (AssignRHS) operand3;
+      case REASSIGNMENT:
+        return (AssignRHS) operand2;
+      default:
+        return null;
+    }
   }
 
   public Expression getExpression() {
-    return expression;
+    return operand1 instanceof Expression ? (Expression) operand1 : null;
   }
 
   public Statement getStatement1() {
-    return statement1;
+    switch (statType) {
+      case IF:
+      case WHILE:
+        return (Statement) operand2;
+      case BEGIN:
+        return (Statement) operand1;
+      default:
+        return null;
+    }
   }
 
   public Statement getStatement2() {
-    return statement2;
+    return statType == StatType.IF ? (Statement) operand3 : null;
+  }
+
+  public Symbol getSymbol() {
+    return symbol;
+  }
+
+  public void setSymbol(Symbol symbol) {
+    this.symbol = symbol;
+  }
+
+  /* The statements of a SEQUENCE, in program order. */
+  @SuppressWarnings("unchecked")
+  public List<Statement> getStatements() {
+    return statType == StatType.SEQUENCE ? (List<Statement>) operand1 : null;
   }
 
   @Override
@@ -60,20 +100,20 @@ public class Statement {
 
     StringBuilder result = new StringBuilder();
 
-    if (statType != StatType.CONCAT) {
+    if (statType != StatType.SEQUENCE) {
       result.append(statType).append(": ");
     }
 
     if (statType == StatType.DECLARATION) {
-      result.append(lhsType).append(" ").append(lhsIdent).append(" = ").append(rhs);
+      result.append(getLhsType()).append(" ").append(getLhsIdent()).append(" = ").append(getRHS());
     }
 
     if (statType == StatType.REASSIGNMENT) {
-      result.append(lhs).append(" = ").append(rhs);
+      result.append(getLHS()).append(" = ").append(getRHS());
     }
 
     if (statType == StatType.READ) {
-      result.append(statType.toString().toLowerCase()).append(" ").append(lhs);
+      result.append(statType.toString().toLowerCase()).append(" ").append(getLHS());
     }
 
     if (statType == StatType.FREE ||
@@ -81,24 +121,26 @@ public class Statement {
         statType == StatType.EXIT ||
         statType == StatType.PRINT ||
         statType == StatType.PRINTLN) {
-      result.append(statType.toString().toLowerCase()).append(" ").append(expression);
+      result.append(statType.toString().toLowerCase()).append(" ").append(getExpression());
     }
 
     if (statType == StatType.IF) {
-      result.append("if ").append(expression).append(" then\n").append(statement1)
-              .append(" else\n").append(statement2).append("fi");
+      result.append("if ").append(getExpression()).append(" then\n").append(getStatement1())
+              .append(" else\n").append(getStatement2()).append("fi");
     }
 
     if (statType == StatType.WHILE) {
-      result.append("while ").append(expression).append(" do ").append(statement1);
+      result.append("while ").append(getExpression()).append(" do ").append(getStatement1());
     }
 
     if (statType == StatType.BEGIN) {
-      result.append("begin\n").append(statement1);
+      result.append("begin\n").append(getStatement1());
     }
 
-    if (statType == StatType.CONCAT) {
-      result.append(statement1).append(statement2);
+    if (statType == StatType.SEQUENCE) {
+      for (Statement statement : getStatements()) {
+        result.append(statement);
+      }
     } else {
       result.append('\n');
     }
@@ -120,7 +162,7 @@ public class Statement {
     IF,
     WHILE,
     BEGIN,
-    CONCAT
+    SEQUENCE
 
   }
 
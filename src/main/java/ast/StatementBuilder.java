@@ -1,14 +1,12 @@
 package ast;
 
+import java.util.List;
+
 public class StatementBuilder {
   private Statement.StatType statType;
-  private Type lhsType;
-  private String lhsIdent;
-  private AssignLHS lhs;
-  private AssignRHS rhs;
-  private Expression expression;
-  private Statement statement1;
-  private Statement statement2;
+  private Object operand1;
+  private Object operand2;
+  private Object operand3;
 
   public Statement buildSkip() {
     this.statType = Statement.StatType.SKIP;
@@ -17,85 +15,84 @@ public class StatementBuilder {
 
   public Statement buildDeclaration(Type lhsType, String lhsIdent, AssignRHS rhs) {
     this.statType = Statement.StatType.DECLARATION;
-    this.lhsType = lhsType;
-    this.lhsIdent = lhsIdent;
-    this.rhs = rhs;
+    this.operand1 = lhsType;
+    this.operand2 = lhsIdent;
+    this.operand3 = rhs;
     return this.build();
   }
 
   public Statement buildReassignment(AssignLHS lhs, AssignRHS rhs) {
     this.statType = Statement.StatType.REASSIGNMENT;
-    this.lhs = lhs;
-    this.rhs = rhs;
+    this.operand1 = lhs;
+    this.operand2 = rhs;
     return this.build();
   }
 
   public Statement buildRead(AssignLHS lhs) {
     this.statType = Statement.StatType.READ;
-    this.lhs = lhs;
+    this.operand1 = lhs;
     return this.build();
   }
 
   public Statement buildFree(Expression expression) {
     this.statType = Statement.StatType.FREE;
-    this.expression = expression;
+    this.operand1 = expression;
     return this.build();
   }
 
   public Statement buildReturn(Expression expression) {
     this.statType = Statement.StatType.RETURN;
-    this.expression = expression;
+    this.operand1 = expression;
     return this.build();
   }
 
   public Statement buildExit(Expression expression) {
     this.statType = Statement.StatType.EXIT;
-    this.expression = expression;
+    this.operand1 = expression;
     return this.build();
   }
 
   public Statement buildPrint(Expression expression) {
     this.statType = Statement.StatType.PRINT;
-    this.expression = expression;
+    this.operand1 = expression;
     return this.build();
   }
 
   public Statement buildPrintln(Expression expression) {
     this.statType = Statement.StatType.PRINTLN;
-    this.expression = expression;
+    this.operand1 = expression;
     return this.build();
   }
 
   public Statement buildIfThenElse(Expression expression, Statement statement1, Statement statement2) {
     this.statType = Statement.StatType.IF;
-    this.expression = expression;
-    this.statement1 = statement1;
-    this.statement2 = statement2;
+    this.operand1 = expression;
+    this.operand2 = statement1;
+    this.operand3 = statement2;
     return this.build();
   }
 
   public Statement buildWhile(Expression expression, Statement statement1) {
     this.statType = Statement.StatType.WHILE;
-    this.expression = expression;
-    this.statement1 = statement1;
+    this.operand1 = expression;
+    this.operand2 = statement1;
     return this.build();
   }
 
   public Statement buildBegin(Statement statement1) {
     this.statType = Statement.StatType.BEGIN;
-    this.statement1 = statement1;
+    this.operand1 = statement1;
     return this.build();
   }
 
-  public Statement buildSemiColon(Statement statement1, Statement statement2) {
-    this.statType = Statement.StatType.CONCAT;
-    this.statement1 = statement1;
-    this.statement2 = statement2;
+  public Statement buildSequence(List<Statement> statements) {
+    this.statType = Statement.StatType.SEQUENCE;
+    this.operand1 = statements;
     return this.build();
   }
 
   public Statement build() {
-    return new Statement(statType, lhsType, lhsIdent, lhs, rhs, expression, statement1, statement2);
+    return new Statement(statType, operand1, operand2, operand3);
   }
 
 
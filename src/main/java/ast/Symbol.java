@@ -0,0 +1,30 @@
+package ast;
+
+/* A declared variable, shared by every use of it that semantic analysis resolves. Variables are
+   numbered densely within their function, or within main, so code generation can keep their
+   frame offsets in a flat array indexed by slot. */
+public class Symbol {
+
+  private final String ident;
+  private final Type type;
+  private final int slot;
+
+  public Symbol(String ident, Type type, int slot) {
+    this.ident = ident;
+    this.type = type;
+    this.slot = slot;
+  }
+
+  public String getIdent() {
+    return ident;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public int getSlot() {
+    return slot;
+  }
+
+}
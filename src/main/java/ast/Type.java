@@ -1,9 +1,21 @@
 package ast;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Type {
 
+  private static final Map<EType, Type> BASE_TYPES = new EnumMap<>(EType.class);
+  private static final Map<Type, Type> INTERNED = new ConcurrentHashMap<>();
+
+  static {
+    for (EType type : EType.values()) {
+      BASE_TYPES.put(type, intern(new Type(type)));
+    }
+  }
+
   private final EType type;
   private final Type arrayType;
   private final Type fstType;
@@ -30,6 +42,20 @@ public class Type {
     this.sndType = sndType;
   }
 
+  /* The canonical instance of a type without element types, such as int or bool. */
+  public static Type of(EType type) {
+    return BASE_TYPES.get(type);
+  }
+
+  /* The canonical instance equal to type, so annotations share one object per distinct type. */
+  public static Type intern(Type type) {
+    if (type == null) {
+      return null;
+    }
+    Type canonical = INTERNED.putIfAbsent(type, type);
+    return canonical == null ? type : canonical;
+  }
+
   public EType getType() {
     return type;
   }
@@ -76,6 +102,11 @@ public class Type {
             Objects.equals(sndType, type1.sndType);
   }
 
+  @Override
+  public int hashCode() {
+    return Objects.hash(type, arrayType, fstType, sndType);
+  }
+
   public enum EType {
 
     INT,
@@ -0,0 +1,61 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/* A straight-line run of quads entered only at the top. Once ended by a JUMP, BRANCH, RETURN or
+   EXIT its successors are the blocks that terminator names. */
+public class BasicBlock {
+
+  private final int id;
+  private final List<Quad> quads = new ArrayList<>();
+
+  BasicBlock(int id) {
+    this.id = id;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public List<Quad> getQuads() {
+    return quads;
+  }
+
+  public void add(Quad quad) {
+    quads.add(quad);
+  }
+
+  public boolean isTerminated() {
+    return !quads.isEmpty() && quads.get(quads.size() - 1).isTerminator();
+  }
+
+  /* The JUMP, BRANCH, RETURN or EXIT ending the block, or null while it is still being built. */
+  public Quad getTerminator() {
+    return isTerminated() ? quads.get(quads.size() - 1) : null;
+  }
+
+  public List<BasicBlock> getSuccessors() {
+    List<BasicBlock> successors = new ArrayList<>(2);
+    Quad terminator = getTerminator();
+    if (terminator != null) {
+      if (terminator.getTarget() != null) {
+        successors.add(terminator.getTarget());
+      }
+      if (terminator.getElseTarget() != null) {
+        successors.add(terminator.getElseTarget());
+      }
+    }
+    return successors;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("B" + id + ":\n");
+    for (Quad quad : quads) {
+      sb.append("  ").append(quad).append('\n');
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,240 @@
+package ir;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/* Deletes the array bounds checks of indices already known to index their array, as in
+
+     while i < len a do ... a[i] ... i = i + 1 done
+
+   An index is known to be in bounds where, on every path reaching the check, an earlier check of it
+   passed or a branch found it less than the array's length, and neither temp has been written
+   since. The facts are found forwards to a fixed point, edge by edge, so what a loop test learns
+   only holds in the body it branches into.
+
+   A branch on an index being less than a length only shows it in bounds if it cannot be negative
+   either. That holds of a temp when everything written to it is a non-negative constant, a length, a
+   comparison, or a sum, product, quotient or remainder of temps that cannot be negative. Sums and
+   products trap rather than overflow, so a counter counting up from zero stays non-negative however
+   often it goes round a loop.
+
+   The checks that remain stay where they are. A check in the body of a loop may never run, so
+   running it ahead of the loop could raise an error the program would not; the invariant checks
+   of a loop's condition, which always runs, are moved out by loop invariant code motion. */
+public class BoundsCheckElimination {
+
+  /* Each fact is its kind and the numbers of two temps packed into a long: that the first is the
+     length of the array the second holds, or that the first indexes it. */
+  private static final long LENGTH = 0;
+  private static final long INDEX = 1;
+  private static final long NUMBER_MASK = (1L << 31) - 1;
+
+  private boolean[] nonNegative;
+
+  /* The facts holding at the end of each block reached so far, and the one its BRANCH adds on the
+     way to its target, if any. */
+  private final Map<BasicBlock, Set<Long>> known = new HashMap<>();
+  private final Map<BasicBlock, Long> learned = new HashMap<>();
+
+  public void eliminate(ControlFlowGraph graph) {
+
+    nonNegative = nonNegative(graph);
+    Map<BasicBlock, List<BasicBlock>> predecessors = graph.getPredecessors();
+
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (BasicBlock block : graph.getBlocks()) {
+        Set<Long> facts = knownAtEntry(block, graph, predecessors);
+        if (facts == null) {
+          continue;
+        }
+        Long fact = transfer(block, facts, false);
+        if (!facts.equals(known.get(block)) || !Objects.equals(fact, learned.get(block))) {
+          known.put(block, facts);
+          learned.put(block, fact);
+          changed = true;
+        }
+      }
+    }
+
+    for (BasicBlock block : graph.getBlocks()) {
+      Set<Long> facts = knownAtEntry(block, graph, predecessors);
+      transfer(block, facts == null ? new HashSet<>() : facts, true);
+    }
+  }
+
+  /* The facts holding on every path into block followed so far, or null if none has been. */
+  private Set<Long> knownAtEntry(BasicBlock block, ControlFlowGraph graph,
+      Map<BasicBlock, List<BasicBlock>> predecessors) {
+
+    if (block == graph.getEntry()) {
+      return new HashSet<>();
+    }
+
+    Set<Long> facts = null;
+    for (BasicBlock predecessor : predecessors.get(block)) {
+      Set<Long> out = known.get(predecessor);
+      if (out == null) {
+        continue;
+      }
+      Quad terminator = predecessor.getTerminator();
+      Long fact = learned.get(predecessor);
+      if (fact != null && terminator.getTarget() == block && terminator.getElseTarget() != block) {
+        out = new HashSet<>(out);
+        out.add(fact);
+      }
+      if (facts == null) {
+        facts = new HashSet<>(out);
+      } else {
+        facts.retainAll(out);
+      }
+    }
+    return facts;
+  }
+
+  /* Updates facts with the effect of block, first deleting the checks they make redundant if
+     remove is set, and returns the fact its BRANCH learns on the way to its target, if any. */
+  private Long transfer(BasicBlock block, Set<Long> facts, boolean remove) {
+
+    /* The fact the last COMPARE finds if its condition holds, until any of its temps is written. */
+    Temp condition = null;
+    Long comparison = null;
+
+    Iterator<Quad> quads = block.getQuads().iterator();
+    while (quads.hasNext()) {
+      Quad quad = quads.next();
+
+      if (quad.getOpcode() == Quad.Opcode.CHECK_BOUNDS) {
+        long fact = fact(INDEX, quad.getSrc1(), quad.getSrc2().getNumber());
+        if (remove && facts.contains(fact)) {
+          quads.remove();
+        }
+        facts.add(fact);
+        continue;
+      }
+      if (quad.getOpcode() == Quad.Opcode.BRANCH) {
+        return quad.getSrc1() == condition ? comparison : null;
+      }
+
+      Temp dest = quad.getDest();
+      if (dest == null) {
+        continue;
+      }
+      facts.removeIf(fact -> mentions(fact, dest));
+      if (dest == condition || comparison != null && mentions(comparison, dest)) {
+        condition = null;
+        comparison = null;
+      }
+
+      if (quad.getOpcode() == Quad.Opcode.LENGTH) {
+        facts.add(fact(LENGTH, dest, quad.getSrc1().getNumber()));
+      } else if (quad.getOpcode() == Quad.Opcode.COMPARE) {
+        Long fact = inBounds(quad, facts);
+        if (fact != null) {
+          condition = dest;
+          comparison = fact;
+        }
+      }
+    }
+    return null;
+  }
+
+  /* The fact that a COMPARE of an index below a length finds if it holds, or null if there is none. */
+  private Long inBounds(Quad compare, Set<Long> facts) {
+
+    Temp index;
+    Temp length;
+    if (compare.getCondition() == Condition.LT) {
+      index = compare.getSrc1();
+      length = compare.getSrc2();
+    } else if (compare.getCondition() == Condition.GT) {
+      index = compare.getSrc2();
+      length = compare.getSrc1();
+    } else {
+      return null;
+    }
+
+    if (!nonNegative[index.getNumber()]) {
+      return null;
+    }
+    for (long fact : facts) {
+      if (fact >>> 62 == LENGTH && (fact >>> 31 & NUMBER_MASK) == length.getNumber()) {
+        return fact(INDEX, index, (int) (fact & NUMBER_MASK));
+      }
+    }
+    return null;
+  }
+
+  /* Which temps can never hold a negative value: all of them to begin with but those never
+     written, then dropping any written a value that might be, until none is. */
+  private static boolean[] nonNegative(ControlFlowGraph graph) {
+
+    boolean[] nonNegative = new boolean[graph.getTempCount()];
+    for (BasicBlock block : graph.getBlocks()) {
+      for (Quad quad : block.getQuads()) {
+        if (quad.getDest() != null) {
+          nonNegative[quad.getDest().getNumber()] = true;
+        }
+      }
+    }
+
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (BasicBlock block : graph.getBlocks()) {
+        for (Quad quad : block.getQuads()) {
+          Temp dest = quad.getDest();
+          if (dest != null && nonNegative[dest.getNumber()] && !isNonNegative(quad, nonNegative)) {
+            nonNegative[dest.getNumber()] = false;
+            changed = true;
+          }
+        }
+      }
+    }
+    return nonNegative;
+  }
+
+  /* Whether quad writes a non-negative value, given which temps are. */
+  private static boolean isNonNegative(Quad quad, boolean[] nonNegative) {
+
+    boolean src1 = quad.getSrc1() != null && nonNegative[quad.getSrc1().getNumber()];
+    boolean src2 = quad.getSrc2() == null ? quad.getValue() >= 0
+        : nonNegative[quad.getSrc2().getNumber()];
+
+    switch (quad.getOpcode()) {
+      case CONST:
+        return quad.getValue() >= 0;
+      case LENGTH:
+      case COMPARE:
+      case NOT:
+      case AND:
+      case OR:
+        return true;
+      case MOVE:
+      case MOD:
+        return src1;
+      case ADD:
+      case MUL:
+      case DIV:
+        return src1 && src2;
+      default:
+        return false;
+    }
+  }
+
+  private static long fact(long kind, Temp first, int second) {
+    return kind << 62 | (long) first.getNumber() << 31 | second;
+  }
+
+  private static boolean mentions(long fact, Temp temp) {
+    return (fact >>> 31 & NUMBER_MASK) == temp.getNumber()
+        || (fact & NUMBER_MASK) == temp.getNumber();
+  }
+
+}
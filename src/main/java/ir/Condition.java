@@ -0,0 +1,24 @@
+package ir;
+
+/* The relation a COMPARE or a fused BRANCH tests between two signed words. */
+public enum Condition {
+  EQ, NE, LT, LE, GT, GE;
+
+  public Condition negate() {
+    switch (this) {
+      case EQ:
+        return NE;
+      case NE:
+        return EQ;
+      case LT:
+        return GE;
+      case LE:
+        return GT;
+      case GT:
+        return LE;
+      default:
+        return LT;
+    }
+  }
+
+}
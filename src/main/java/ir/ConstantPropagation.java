@@ -0,0 +1,266 @@
+package ir;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* Finds the temps that hold the same constant on every path reaching a quad, folds the quads
+   computing them into CONSTs, and turns branches on a constant into jumps.
+
+   Values are propagated forwards from the entry along the edges that can be taken, with every
+   temp undefined until a definition reaches it. Where paths join the values meet: a temp keeps its
+   constant only if every path that has reached the join so far agrees on it. Edges are only
+   followed once the branch before them is known to take them, so a loop or branch whose condition
+   is constant from the start never contributes its assignments, and its blocks are removed.
+
+   Quads that would trap at run time, such as an overflowing addition or a division by zero, are
+   never folded, so the error is still raised when they run. */
+public class ConstantPropagation {
+
+  private static final byte UNDEFINED = 0;
+  private static final byte CONSTANT = 1;
+  private static final byte VARYING = 2;
+
+  private static final Set<Quad.Opcode> FOLDABLE = EnumSet.of(Quad.Opcode.MOVE, Quad.Opcode.ADD,
+      Quad.Opcode.SUB, Quad.Opcode.MUL, Quad.Opcode.DIV, Quad.Opcode.MOD, Quad.Opcode.AND,
+      Quad.Opcode.OR, Quad.Opcode.COMPARE, Quad.Opcode.NEG, Quad.Opcode.NOT);
+
+  /* What is known of every temp at one point of a function, indexed by temp number. */
+  private static class Values {
+
+    private final byte[] kinds;
+    private final long[] constants;
+
+    private Values(int temps) {
+      kinds = new byte[temps];
+      constants = new long[temps];
+    }
+
+    private Values(Values other) {
+      kinds = other.kinds.clone();
+      constants = other.constants.clone();
+    }
+
+    private boolean isConstant(Temp temp) {
+      return kinds[temp.getNumber()] == CONSTANT;
+    }
+
+    private byte kindOf(Temp temp) {
+      return kinds[temp.getNumber()];
+    }
+
+    private long valueOf(Temp temp) {
+      return constants[temp.getNumber()];
+    }
+
+    private void set(Temp temp, byte kind, long constant) {
+      kinds[temp.getNumber()] = kind;
+      constants[temp.getNumber()] = constant;
+    }
+
+    /* Merges the values of another path into these, returning whether any changed. */
+    private boolean meet(Values other) {
+      boolean changed = false;
+      for (int t = 0; t < kinds.length; t++) {
+        byte kind = kinds[t];
+        if (other.kinds[t] == UNDEFINED || kind == VARYING) {
+          continue;
+        }
+        if (kind == UNDEFINED) {
+          kinds[t] = other.kinds[t];
+          constants[t] = other.constants[t];
+          changed = true;
+        } else if (other.kinds[t] == VARYING || other.constants[t] != constants[t]) {
+          kinds[t] = VARYING;
+          changed = true;
+        }
+      }
+      return changed;
+    }
+  }
+
+  private final Map<BasicBlock, Values> entryValues = new HashMap<>();
+
+  public void propagate(ControlFlowGraph graph) {
+
+    Deque<BasicBlock> worklist = new ArrayDeque<>();
+    Set<BasicBlock> queued = new HashSet<>();
+    entryValues.put(graph.getEntry(), new Values(graph.getTempCount()));
+    worklist.add(graph.getEntry());
+    queued.add(graph.getEntry());
+
+    while (!worklist.isEmpty()) {
+      BasicBlock block = worklist.poll();
+      queued.remove(block);
+
+      Values values = new Values(entryValues.get(block));
+      for (Quad quad : block.getQuads()) {
+        evaluate(quad, values);
+      }
+
+      for (BasicBlock successor : takenSuccessors(block.getTerminator(), values)) {
+        Values reaching = entryValues.get(successor);
+        boolean changed;
+        if (reaching == null) {
+          entryValues.put(successor, new Values(values));
+          changed = true;
+        } else {
+          changed = reaching.meet(values);
+        }
+        if (changed && queued.add(successor)) {
+          worklist.add(successor);
+        }
+      }
+    }
+
+    rewrite(graph);
+  }
+
+  /* The successors a terminator can pass control to, given the values before it. */
+  private List<BasicBlock> takenSuccessors(Quad terminator, Values values) {
+    if (terminator.getOpcode() != Quad.Opcode.BRANCH) {
+      return terminator.getOpcode() == Quad.Opcode.JUMP
+          ? List.of(terminator.getTarget()) : List.of();
+    }
+    switch (values.kindOf(terminator.getSrc1())) {
+      case CONSTANT:
+        return List.of(values.valueOf(terminator.getSrc1()) != 0
+            ? terminator.getTarget() : terminator.getElseTarget());
+      case VARYING:
+        return List.of(terminator.getTarget(), terminator.getElseTarget());
+      default:
+        return List.of();
+    }
+  }
+
+  /* Updates values with the effect of quad. */
+  private void evaluate(Quad quad, Values values) {
+
+    Temp dest = quad.getDest();
+    if (dest == null) {
+      return;
+    }
+
+    switch (quad.getOpcode()) {
+      case CONST:
+        values.set(dest, CONSTANT, quad.getValue());
+        return;
+
+      case MOVE:
+        values.set(dest, values.kindOf(quad.getSrc1()), values.valueOf(quad.getSrc1()));
+        return;
+
+      case ADD:
+      case SUB:
+      case MUL:
+      case DIV:
+      case MOD:
+      case AND:
+      case OR:
+      case COMPARE:
+      case NEG:
+      case NOT:
+        byte kind = CONSTANT;
+        for (Temp use : quad.getUses()) {
+          if (values.kindOf(use) == VARYING) {
+            kind = VARYING;
+          } else if (values.kindOf(use) == UNDEFINED && kind == CONSTANT) {
+            kind = UNDEFINED;
+          }
+        }
+        if (kind != CONSTANT) {
+          values.set(dest, kind, 0);
+          return;
+        }
+        Long folded = fold(quad, values);
+        values.set(dest, folded == null ? VARYING : CONSTANT, folded == null ? 0 : folded);
+        return;
+
+      default:
+        values.set(dest, VARYING, 0);
+    }
+  }
+
+  /* The value of a quad whose operands are all constant, or null if it traps. */
+  private static Long fold(Quad quad, Values values) {
+
+    long a = values.valueOf(quad.getSrc1());
+    long b = quad.getSrc2() == null ? quad.getValue() : values.valueOf(quad.getSrc2());
+
+    switch (quad.getOpcode()) {
+      case ADD:
+        return fitting(a + b);
+      case SUB:
+        return fitting(a - b);
+      case MUL:
+        return fitting(a * b);
+      case DIV:
+        return b == 0 ? null : fitting(a / b);
+      case MOD:
+        return b == 0 ? null : a % b;
+      case NEG:
+        return fitting(-a);
+      case NOT:
+        return a ^ 1;
+      case AND:
+        return a & b;
+      case OR:
+        return a | b;
+      case COMPARE:
+        return compare(quad.getCondition(), a, b) ? 1L : 0L;
+      default:
+        throw new IllegalStateException("cannot fold " + quad);
+    }
+  }
+
+  /* The value if it fits in a word, or null as the operation overflows. */
+  private static Long fitting(long value) {
+    return value == (int) value ? value : null;
+  }
+
+  private static boolean compare(Condition condition, long a, long b) {
+    switch (condition) {
+      case EQ:
+        return a == b;
+      case NE:
+        return a != b;
+      case LT:
+        return a < b;
+      case LE:
+        return a <= b;
+      case GT:
+        return a > b;
+      default:
+        return a >= b;
+    }
+  }
+
+  /* Folds the constant quads and branches of the blocks that can run and removes the rest. */
+  private void rewrite(ControlFlowGraph graph) {
+
+    graph.getBlocks().removeIf(block -> !entryValues.containsKey(block));
+
+    for (BasicBlock block : graph.getBlocks()) {
+      Values values = new Values(entryValues.get(block));
+      List<Quad> quads = block.getQuads();
+
+      for (int i = 0; i < quads.size(); i++) {
+        Quad quad = quads.get(i);
+        evaluate(quad, values);
+
+        if (quad.getOpcode() == Quad.Opcode.BRANCH && values.isConstant(quad.getSrc1())) {
+          quads.set(i, Quad.jump(takenSuccessors(quad, values).get(0)));
+        } else if (quad.getDest() != null && quad.getOpcode() != Quad.Opcode.CONST
+            && values.isConstant(quad.getDest()) && FOLDABLE.contains(quad.getOpcode())) {
+          quads.set(i, Quad.constant(quad.getDest(), values.valueOf(quad.getDest())));
+        }
+      }
+    }
+  }
+
+}
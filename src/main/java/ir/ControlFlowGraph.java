@@ -0,0 +1,97 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* The intermediate representation of one function, or of main: its basic blocks in layout order,
+   the first being the entry, and the temps and frame slots they use.
+
+   Frame slots are numbered as semantic analysis numbered the variables, parameters first, and
+   passes may add slots of their own. Every slot is a word of the frame, except parameters, which
+   live in the caller's argument area at their recorded offsets. */
+public class ControlFlowGraph {
+
+  private final String name;
+  private final int[] parameterOffsets;
+  private final List<BasicBlock> blocks = new ArrayList<>();
+  private int tempCount;
+  private int blockCount;
+  private int slotCount;
+
+  public ControlFlowGraph(String name, int slotCount, int[] parameterOffsets) {
+    this.name = name;
+    this.slotCount = slotCount;
+    this.parameterOffsets = parameterOffsets;
+  }
+
+  /* The label of the function. */
+  public String getName() {
+    return name;
+  }
+
+  public List<BasicBlock> getBlocks() {
+    return blocks;
+  }
+
+  public BasicBlock getEntry() {
+    return blocks.get(0);
+  }
+
+  /* Creates a block, which takes its place in the layout once added. */
+  public BasicBlock newBlock() {
+    return new BasicBlock(blockCount++);
+  }
+
+  public void addBlock(BasicBlock block) {
+    blocks.add(block);
+  }
+
+  public Temp newTemp() {
+    return new Temp(tempCount++);
+  }
+
+  public int getTempCount() {
+    return tempCount;
+  }
+
+  public int newSlot() {
+    return slotCount++;
+  }
+
+  public int getSlotCount() {
+    return slotCount;
+  }
+
+  public int getParameterCount() {
+    return parameterOffsets.length;
+  }
+
+  /* The offset of a parameter from the start of the caller's argument area. */
+  public int getParameterOffset(int slot) {
+    return parameterOffsets[slot];
+  }
+
+  /* The blocks that can pass control to each block. */
+  public Map<BasicBlock, List<BasicBlock>> getPredecessors() {
+    Map<BasicBlock, List<BasicBlock>> predecessors = new HashMap<>();
+    for (BasicBlock block : blocks) {
+      predecessors.computeIfAbsent(block, b -> new ArrayList<>());
+      for (BasicBlock successor : block.getSuccessors()) {
+        predecessors.computeIfAbsent(successor, b -> new ArrayList<>()).add(block);
+      }
+    }
+    return predecessors;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(name + ":\n");
+    for (BasicBlock block : blocks) {
+      sb.append(block);
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,142 @@
+package ir;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Replaces the reads of a temp copied from another by reads of the original, wherever neither has
+   been written since the copy on any path reaching the read. Copies available at the start of a
+   block are those available at the end of all of its predecessors, found by iterating forwards to
+   a fixed point.
+
+   Afterwards the CONSTs and MOVEs whose temps are no longer read, left behind by this pass and by
+   constant propagation, are deleted. */
+public class CopyPropagation {
+
+  public void propagate(ControlFlowGraph graph) {
+
+    List<BasicBlock> blocks = graph.getBlocks();
+    Map<BasicBlock, List<BasicBlock>> predecessors = graph.getPredecessors();
+
+    /* The copies available at the end of each block, each mapping the copy to its original. A block
+       no path has reached yet has none recorded and is left out of the intersection at its
+       successors, so copies around a loop are kept until the loop shows they are overwritten. */
+    Map<BasicBlock, Map<Temp, Temp>> available = new HashMap<>();
+
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (BasicBlock block : blocks) {
+        Map<Temp, Temp> copies = availableAtEntry(block, graph, predecessors, available);
+        if (copies == null) {
+          continue;
+        }
+        for (Quad quad : block.getQuads()) {
+          transfer(quad, copies, false);
+        }
+        if (!copies.equals(available.get(block))) {
+          available.put(block, copies);
+          changed = true;
+        }
+      }
+    }
+
+    for (BasicBlock block : blocks) {
+      Map<Temp, Temp> copies = availableAtEntry(block, graph, predecessors, available);
+      if (copies == null) {
+        copies = new HashMap<>();
+      }
+      for (Quad quad : block.getQuads()) {
+        transfer(quad, copies, true);
+      }
+    }
+
+    removeUnread(graph);
+  }
+
+  /* The copies available on every path into block that has been followed so far, or null if none
+     has. */
+  private Map<Temp, Temp> availableAtEntry(BasicBlock block, ControlFlowGraph graph,
+      Map<BasicBlock, List<BasicBlock>> predecessors, Map<BasicBlock, Map<Temp, Temp>> available) {
+
+    if (block == graph.getEntry()) {
+      return new HashMap<>();
+    }
+
+    Map<Temp, Temp> copies = null;
+    for (BasicBlock predecessor : predecessors.get(block)) {
+      Map<Temp, Temp> out = available.get(predecessor);
+      if (out == null) {
+        continue;
+      }
+      if (copies == null) {
+        copies = new HashMap<>(out);
+      } else {
+        copies.entrySet().removeIf(copy -> out.get(copy.getKey()) != copy.getValue());
+      }
+    }
+    return copies;
+  }
+
+  /* Updates copies with the effect of quad, first making it read the originals if rewrite is set. */
+  private void transfer(Quad quad, Map<Temp, Temp> copies, boolean rewrite) {
+
+    if (rewrite) {
+      for (Temp use : quad.getUses()) {
+        Temp original = copies.get(use);
+        if (original != null) {
+          quad.replaceUse(use, original);
+        }
+      }
+    }
+
+    Temp dest = quad.getDest();
+    if (dest == null) {
+      return;
+    }
+
+    copies.remove(dest);
+    copies.values().removeIf(original -> original == dest);
+
+    if (quad.getOpcode() == Quad.Opcode.MOVE) {
+      Temp original = copies.getOrDefault(quad.getSrc1(), quad.getSrc1());
+      if (original != dest) {
+        copies.put(dest, original);
+      }
+    }
+  }
+
+  /* Deletes the CONSTs and MOVEs of temps nobody reads, and then those only they read. */
+  private void removeUnread(ControlFlowGraph graph) {
+
+    int[] reads = new int[graph.getTempCount()];
+    for (BasicBlock block : graph.getBlocks()) {
+      for (Quad quad : block.getQuads()) {
+        for (Temp use : quad.getUses()) {
+          reads[use.getNumber()]++;
+        }
+      }
+    }
+
+    boolean removed = true;
+    while (removed) {
+      removed = false;
+      for (BasicBlock block : graph.getBlocks()) {
+        removed |= block.getQuads().removeIf(quad -> {
+          if (!isCopy(quad) || reads[quad.getDest().getNumber()] > 0) {
+            return false;
+          }
+          for (Temp use : quad.getUses()) {
+            reads[use.getNumber()]--;
+          }
+          return true;
+        });
+      }
+    }
+  }
+
+  private boolean isCopy(Quad quad) {
+    return quad.getOpcode() == Quad.Opcode.CONST || quad.getOpcode() == Quad.Opcode.MOVE;
+  }
+
+}
@@ -0,0 +1,64 @@
+package ir;
+
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/* Deletes the quads whose result is never read again, such as an assignment to a variable that is
+   overwritten or goes out of use before it is read.
+
+   Each block is walked backwards from the temps live on exit from it. A quad that writes a temp
+   not live at that point is dead, as long as doing so is all it does: quads that trap, store to
+   memory or call out are kept for their effect. Deleting a quad can leave the quads computing its
+   operands dead in turn, so liveness is found again until nothing more is deleted. */
+public class DeadCodeElimination {
+
+  /* The quads whose only effect is writing their destination. */
+  private static final Set<Quad.Opcode> PURE = EnumSet.of(Quad.Opcode.CONST, Quad.Opcode.STRING,
+      Quad.Opcode.MOVE, Quad.Opcode.NOT, Quad.Opcode.AND, Quad.Opcode.OR, Quad.Opcode.COMPARE,
+      Quad.Opcode.LOAD, Quad.Opcode.LENGTH, Quad.Opcode.LOAD_SLOT, Quad.Opcode.SLOT_ADDRESS,
+      Quad.Opcode.ELEMENT, Quad.Opcode.MALLOC);
+
+  public void eliminate(ControlFlowGraph graph) {
+
+    boolean removed = true;
+    while (removed) {
+      removed = false;
+      Liveness liveness = new Liveness(graph);
+      for (BasicBlock block : graph.getBlocks()) {
+        removed |= eliminate(block, (BitSet) liveness.getLiveOut(block).clone());
+      }
+    }
+  }
+
+  /* Deletes the dead quads of block given the temps live on exit from it, returning whether there
+     were any. */
+  private boolean eliminate(BasicBlock block, BitSet live) {
+
+    boolean removed = false;
+    List<Quad> quads = block.getQuads();
+
+    for (int i = quads.size() - 1; i >= 0; i--) {
+      Quad quad = quads.get(i);
+      Temp dest = quad.getDest();
+
+      if (dest != null && !live.get(dest.getNumber())
+          && (PURE.contains(quad.getOpcode()) || quad.isDivisionByValue())) {
+        quads.remove(i);
+        removed = true;
+        continue;
+      }
+
+      if (dest != null) {
+        live.clear(dest.getNumber());
+      }
+      for (Temp use : quad.getUses()) {
+        live.set(use.getNumber());
+      }
+    }
+
+    return removed;
+  }
+
+}
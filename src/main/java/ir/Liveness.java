@@ -0,0 +1,78 @@
+package ir;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* The temps live on entry to and on exit from each block of a graph, found by iterating the
+   backward dataflow equations to a fixed point:
+
+   out(b) = the union of in(s) over the successors s of b
+   in(b)  = the temps b reads before writing, together with out(b) less those b writes
+
+   Sets are indexed by temp number. */
+public class Liveness {
+
+  private final Map<BasicBlock, BitSet> liveIn = new HashMap<>();
+  private final Map<BasicBlock, BitSet> liveOut = new HashMap<>();
+
+  public Liveness(ControlFlowGraph graph) {
+
+    List<BasicBlock> blocks = graph.getBlocks();
+    Map<BasicBlock, BitSet> reads = new HashMap<>();
+    Map<BasicBlock, BitSet> writes = new HashMap<>();
+
+    for (BasicBlock block : blocks) {
+      BitSet read = new BitSet();
+      BitSet written = new BitSet();
+      for (Quad quad : block.getQuads()) {
+        for (Temp temp : quad.getUses()) {
+          if (!written.get(temp.getNumber())) {
+            read.set(temp.getNumber());
+          }
+        }
+        if (quad.getDest() != null) {
+          written.set(quad.getDest().getNumber());
+        }
+      }
+      reads.put(block, read);
+      writes.put(block, written);
+      liveIn.put(block, (BitSet) read.clone());
+      liveOut.put(block, new BitSet());
+    }
+
+    /* Blocks are visited last first, so most information flows in a single pass. */
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i = blocks.size() - 1; i >= 0; i--) {
+        BasicBlock block = blocks.get(i);
+
+        BitSet out = new BitSet();
+        for (BasicBlock successor : block.getSuccessors()) {
+          out.or(liveIn.get(successor));
+        }
+
+        BitSet in = (BitSet) out.clone();
+        in.andNot(writes.get(block));
+        in.or(reads.get(block));
+
+        if (!in.equals(liveIn.get(block)) || !out.equals(liveOut.get(block))) {
+          liveIn.put(block, in);
+          liveOut.put(block, out);
+          changed = true;
+        }
+      }
+    }
+  }
+
+  public BitSet getLiveIn(BasicBlock block) {
+    return liveIn.get(block);
+  }
+
+  public BitSet getLiveOut(BasicBlock block) {
+    return liveOut.get(block);
+  }
+
+}
@@ -0,0 +1,200 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* Moves the quads of a loop that compute the same value on every iteration into its preheader, the
+   block that passes control into the loop, so that they run once each time the loop is entered.
+
+   Loops are laid out contiguously, so each is the run of blocks from the target of a backward
+   branch to the branch itself. Only loops entered through a single edge from a block ending in a
+   JUMP have a preheader to move quads into, which is how every while loop is built. Inner loops are
+   handled first, so that what they hoist can leave an outer loop in turn.
+
+   A quad is invariant when each temp it reads is written nowhere in the loop, or only by a quad
+   already hoisted. Its own destination must be written by nothing else in the function and not be
+   live into the loop, so hoisting the one definition cannot change the value any read sees.
+
+   Quads that cannot trap or have any other effect are hoisted wherever they are in the loop, since
+   running them once more than before changes nothing. A quad that can trap is only hoisted from the
+   loop's entry block, which runs whenever the loop is entered, and only if no quad before it there
+   has an effect of its own, so a runtime error is still raised first and only when it was before. */
+public class LoopInvariantCodeMotion {
+
+  /* The quads without any effect but writing their destination, along with divisions by a value.
+     Frame slots are read only where the loop cannot write to them. */
+  private static final Set<Quad.Opcode> SPECULABLE = EnumSet.of(Quad.Opcode.CONST,
+      Quad.Opcode.STRING, Quad.Opcode.MOVE, Quad.Opcode.NOT, Quad.Opcode.AND, Quad.Opcode.OR,
+      Quad.Opcode.COMPARE, Quad.Opcode.LENGTH, Quad.Opcode.LOAD_SLOT, Quad.Opcode.SLOT_ADDRESS,
+      Quad.Opcode.ELEMENT);
+
+  /* The quads that can trap but otherwise only write their destination, if any. */
+  private static final Set<Quad.Opcode> TRAPPING = EnumSet.of(Quad.Opcode.ADD, Quad.Opcode.SUB,
+      Quad.Opcode.MUL, Quad.Opcode.DIV, Quad.Opcode.MOD, Quad.Opcode.NEG,
+      Quad.Opcode.CHECK_BOUNDS, Quad.Opcode.CHECK_NULL);
+
+  /* The runtime routines that write no memory the program can read. */
+  private static final Set<String> READ_ONLY_ROUTINES = Set.of("p_print_int", "p_print_bool",
+      "p_print_string", "p_print_reference", "p_print_ln", "putchar");
+
+  private ControlFlowGraph graph;
+  private int[] definitions;
+
+  public void hoist(ControlFlowGraph graph) {
+
+    this.graph = graph;
+
+    definitions = new int[graph.getTempCount()];
+    for (BasicBlock block : graph.getBlocks()) {
+      for (Quad quad : block.getQuads()) {
+        if (quad.getDest() != null) {
+          definitions[quad.getDest().getNumber()]++;
+        }
+      }
+    }
+
+    for (int[] loop : loops()) {
+      hoist(loop[0], loop[1]);
+    }
+  }
+
+  /* The first and last positions of every loop, inner loops first. */
+  private List<int[]> loops() {
+
+    List<BasicBlock> blocks = graph.getBlocks();
+    Map<BasicBlock, Integer> positions = new HashMap<>();
+    for (int b = 0; b < blocks.size(); b++) {
+      positions.put(blocks.get(b), b);
+    }
+
+    List<int[]> loops = new ArrayList<>();
+    for (int b = 0; b < blocks.size(); b++) {
+      for (BasicBlock successor : blocks.get(b).getSuccessors()) {
+        int head = positions.get(successor);
+        if (head <= b) {
+          loops.add(new int[] {head, b});
+        }
+      }
+    }
+    loops.sort((a, b) -> Integer.compare(a[1] - a[0], b[1] - b[0]));
+    return loops;
+  }
+
+  private void hoist(int first, int last) {
+
+    List<BasicBlock> blocks = graph.getBlocks();
+    Set<BasicBlock> loop = new LinkedHashSet<>(blocks.subList(first, last + 1));
+
+    /* Find the single edge entering the loop. */
+    BasicBlock preheader = null;
+    BasicBlock entry = null;
+    for (BasicBlock block : blocks) {
+      if (loop.contains(block)) {
+        continue;
+      }
+      for (BasicBlock successor : block.getSuccessors()) {
+        if (loop.contains(successor)) {
+          if (preheader != null) {
+            return;
+          }
+          preheader = block;
+          entry = successor;
+        }
+      }
+    }
+    if (preheader == null || preheader.getTerminator().getOpcode() != Quad.Opcode.JUMP) {
+      return;
+    }
+
+    /* The temps written in the loop, the slots it stores to and whether it writes memory. */
+    Set<Temp> written = new HashSet<>();
+    Set<Long> storedSlots = new HashSet<>();
+    boolean writesMemory = false;
+    for (BasicBlock block : loop) {
+      for (Quad quad : block.getQuads()) {
+        if (quad.getDest() != null) {
+          written.add(quad.getDest());
+        }
+        switch (quad.getOpcode()) {
+          case STORE_SLOT:
+            storedSlots.add(quad.getValue());
+            break;
+          case STORE:
+          case CALL:
+            writesMemory = true;
+            break;
+          case RUNTIME:
+            writesMemory |= !READ_ONLY_ROUTINES.contains(quad.getSymbol());
+            break;
+        }
+      }
+    }
+
+    Liveness liveness = new Liveness(graph);
+    List<Quad> hoisted = new ArrayList<>();
+    Set<Quad> moved = new HashSet<>();
+
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (BasicBlock block : loop) {
+        /* Only quads of the entry block before anything with an effect may trap. */
+        boolean trapsAllowed = block == entry;
+        for (Quad quad : block.getQuads()) {
+          if (moved.contains(quad)) {
+            continue;
+          }
+          boolean speculable = SPECULABLE.contains(quad.getOpcode()) || quad.isDivisionByValue();
+          if ((speculable || trapsAllowed && TRAPPING.contains(quad.getOpcode()))
+              && isInvariant(quad, written, storedSlots, writesMemory, liveness.getLiveIn(entry))) {
+            hoisted.add(quad);
+            moved.add(quad);
+            if (quad.getDest() != null) {
+              written.remove(quad.getDest());
+            }
+            changed = true;
+          } else if (!speculable) {
+            trapsAllowed = false;
+          }
+        }
+      }
+    }
+
+    if (hoisted.isEmpty()) {
+      return;
+    }
+
+    for (BasicBlock block : loop) {
+      block.getQuads().removeIf(moved::contains);
+    }
+    List<Quad> quads = preheader.getQuads();
+    quads.addAll(quads.size() - 1, hoisted);
+  }
+
+  private boolean isInvariant(Quad quad, Set<Temp> written, Set<Long> storedSlots,
+      boolean writesMemory, BitSet liveIntoLoop) {
+
+    for (Temp use : quad.getUses()) {
+      if (written.contains(use)) {
+        return false;
+      }
+    }
+
+    if (quad.getOpcode() == Quad.Opcode.LOAD_SLOT
+        && (writesMemory || storedSlots.contains(quad.getValue()))) {
+      return false;
+    }
+
+    Temp dest = quad.getDest();
+    return dest == null
+        || definitions[dest.getNumber()] == 1 && !liveIntoLoop.get(dest.getNumber());
+  }
+
+}
@@ -0,0 +1,322 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/* A three-address instruction. Every quad names at most one destination and two source temps;
+   what else it carries depends on its opcode:
+
+   CONST          dest = value
+   STRING         dest = address of a message holding the string literal symbol
+   MOVE           dest = src1
+   ADD, SUB, MUL  dest = src1 op src2, trapping on overflow
+   DIV, MOD       dest = src1 op src2, trapping on a zero divisor
+   NEG            dest = -src1, trapping on overflow
+   NOT            dest = src1 ^ 1
+   AND, OR        dest = src1 op src2
+   COMPARE        dest = src1 condition src2 ? 1 : 0
+   LOAD           dest = the size bytes at src1 + value
+   LENGTH         dest = the length of the array src1, which never changes once it is made
+   STORE          the size bytes at src1 + value = src2
+   LOAD_SLOT      dest = frame slot value
+   STORE_SLOT     frame slot value = src1
+   SLOT_ADDRESS   dest = address of frame slot value
+   ELEMENT        dest = src1 + 4 + src2 * size, the address of an array element
+   CHECK_BOUNDS   traps unless src1 indexes the array src2
+   CHECK_NULL     traps if src1 is null
+   MALLOC         dest = value freshly allocated bytes
+   ARGUMENT       pushes the size bytes of src1 for the next CALL
+   CALL           dest = symbol(arguments), popping the value bytes of arguments
+   RUNTIME        calls the runtime routine symbol with src1, if any, as its argument
+   JUMP           continues at target
+   BRANCH         continues at target if src1 is true and at elseTarget otherwise
+   RETURN         returns src1
+   EXIT           exits the program with the status src1
+
+   JUMP, BRANCH, RETURN and EXIT end a basic block and appear nowhere else. A MUL, DIV or MOD
+   without src2 takes value as its second operand instead, and a DIV or MOD by a value, which is
+   never zero, cannot trap. */
+public class Quad {
+
+  public enum Opcode {
+    CONST, STRING, MOVE,
+    ADD, SUB, MUL, DIV, MOD, NEG, NOT, AND, OR, COMPARE,
+    LOAD, LENGTH, STORE, LOAD_SLOT, STORE_SLOT, SLOT_ADDRESS, ELEMENT,
+    CHECK_BOUNDS, CHECK_NULL, MALLOC,
+    ARGUMENT, CALL, RUNTIME,
+    JUMP, BRANCH, RETURN, EXIT
+  }
+
+  private final Opcode opcode;
+  private Temp dest;
+  private Temp src1;
+  private Temp src2;
+  private long value;
+  private int size = 4;
+  private Condition condition;
+  private String symbol;
+  private BasicBlock target;
+  private BasicBlock elseTarget;
+
+  /* Whether a CALL may overwrite the callee-saved registers, as the library functions do. */
+  private boolean clobbering;
+
+  private Quad(Opcode opcode, Temp dest, Temp src1, Temp src2) {
+    this.opcode = opcode;
+    this.dest = dest;
+    this.src1 = src1;
+    this.src2 = src2;
+  }
+
+  public static Quad constant(Temp dest, long value) {
+    Quad quad = new Quad(Opcode.CONST, dest, null, null);
+    quad.value = value;
+    return quad;
+  }
+
+  public static Quad string(Temp dest, String symbol) {
+    Quad quad = new Quad(Opcode.STRING, dest, null, null);
+    quad.symbol = symbol;
+    return quad;
+  }
+
+  public static Quad move(Temp dest, Temp src) {
+    return new Quad(Opcode.MOVE, dest, src, null);
+  }
+
+  public static Quad unary(Opcode opcode, Temp dest, Temp src) {
+    return new Quad(opcode, dest, src, null);
+  }
+
+  public static Quad binary(Opcode opcode, Temp dest, Temp src1, Temp src2) {
+    return new Quad(opcode, dest, src1, src2);
+  }
+
+  public static Quad binary(Opcode opcode, Temp dest, Temp src, long value) {
+    Quad quad = new Quad(opcode, dest, src, null);
+    quad.value = value;
+    return quad;
+  }
+
+  public static Quad compare(Condition condition, Temp dest, Temp src1, Temp src2) {
+    Quad quad = new Quad(Opcode.COMPARE, dest, src1, src2);
+    quad.condition = condition;
+    return quad;
+  }
+
+  public static Quad load(Temp dest, Temp address, long offset, int size) {
+    Quad quad = new Quad(Opcode.LOAD, dest, address, null);
+    quad.value = offset;
+    quad.size = size;
+    return quad;
+  }
+
+  public static Quad length(Temp dest, Temp array) {
+    return new Quad(Opcode.LENGTH, dest, array, null);
+  }
+
+  public static Quad store(Temp address, long offset, Temp src, int size) {
+    Quad quad = new Quad(Opcode.STORE, null, address, src);
+    quad.value = offset;
+    quad.size = size;
+    return quad;
+  }
+
+  public static Quad loadSlot(Temp dest, int slot, int size) {
+    Quad quad = new Quad(Opcode.LOAD_SLOT, dest, null, null);
+    quad.value = slot;
+    quad.size = size;
+    return quad;
+  }
+
+  public static Quad storeSlot(int slot, Temp src, int size) {
+    Quad quad = new Quad(Opcode.STORE_SLOT, null, src, null);
+    quad.value = slot;
+    quad.size = size;
+    return quad;
+  }
+
+  public static Quad slotAddress(Temp dest, int slot) {
+    Quad quad = new Quad(Opcode.SLOT_ADDRESS, dest, null, null);
+    quad.value = slot;
+    return quad;
+  }
+
+  public static Quad element(Temp dest, Temp array, Temp index, int size) {
+    Quad quad = new Quad(Opcode.ELEMENT, dest, array, index);
+    quad.size = size;
+    return quad;
+  }
+
+  public static Quad checkBounds(Temp index, Temp array) {
+    return new Quad(Opcode.CHECK_BOUNDS, null, index, array);
+  }
+
+  public static Quad checkNull(Temp pointer) {
+    return new Quad(Opcode.CHECK_NULL, null, pointer, null);
+  }
+
+  public static Quad malloc(Temp dest, long bytes) {
+    Quad quad = new Quad(Opcode.MALLOC, dest, null, null);
+    quad.value = bytes;
+    return quad;
+  }
+
+  public static Quad argument(Temp src, int size) {
+    Quad quad = new Quad(Opcode.ARGUMENT, null, src, null);
+    quad.size = size;
+    return quad;
+  }
+
+  public static Quad call(Temp dest, String symbol, long argumentBytes, boolean clobbering) {
+    Quad quad = new Quad(Opcode.CALL, dest, null, null);
+    quad.symbol = symbol;
+    quad.value = argumentBytes;
+    quad.clobbering = clobbering;
+    return quad;
+  }
+
+  public static Quad runtime(String symbol, Temp argument) {
+    Quad quad = new Quad(Opcode.RUNTIME, null, argument, null);
+    quad.symbol = symbol;
+    return quad;
+  }
+
+  public static Quad jump(BasicBlock target) {
+    Quad quad = new Quad(Opcode.JUMP, null, null, null);
+    quad.target = target;
+    return quad;
+  }
+
+  public static Quad branch(Temp condition, BasicBlock target, BasicBlock elseTarget) {
+    Quad quad = new Quad(Opcode.BRANCH, null, condition, null);
+    quad.target = target;
+    quad.elseTarget = elseTarget;
+    return quad;
+  }
+
+  public static Quad ret(Temp src) {
+    return new Quad(Opcode.RETURN, null, src, null);
+  }
+
+  public static Quad exit(Temp status) {
+    return new Quad(Opcode.EXIT, null, status, null);
+  }
+
+  public Opcode getOpcode() {
+    return opcode;
+  }
+
+  public Temp getDest() {
+    return dest;
+  }
+
+  public void setDest(Temp dest) {
+    this.dest = dest;
+  }
+
+  public Temp getSrc1() {
+    return src1;
+  }
+
+  public void setSrc1(Temp src1) {
+    this.src1 = src1;
+  }
+
+  public Temp getSrc2() {
+    return src2;
+  }
+
+  public void setSrc2(Temp src2) {
+    this.src2 = src2;
+  }
+
+  public long getValue() {
+    return value;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public Condition getCondition() {
+    return condition;
+  }
+
+  public String getSymbol() {
+    return symbol;
+  }
+
+  public BasicBlock getTarget() {
+    return target;
+  }
+
+  public BasicBlock getElseTarget() {
+    return elseTarget;
+  }
+
+  public boolean isClobbering() {
+    return clobbering;
+  }
+
+  public boolean isTerminator() {
+    return opcode == Opcode.JUMP || opcode == Opcode.BRANCH || opcode == Opcode.RETURN
+        || opcode == Opcode.EXIT;
+  }
+
+  /* Whether this is a DIV or MOD by a value, which unlike one by a temp cannot trap. */
+  public boolean isDivisionByValue() {
+    return (opcode == Opcode.DIV || opcode == Opcode.MOD) && src2 == null;
+  }
+
+  /* The temps this quad reads, in operand order. */
+  public List<Temp> getUses() {
+    List<Temp> uses = new ArrayList<>(2);
+    if (src1 != null) {
+      uses.add(src1);
+    }
+    if (src2 != null) {
+      uses.add(src2);
+    }
+    return uses;
+  }
+
+  /* Reads replacement wherever this quad reads temp. */
+  public void replaceUse(Temp temp, Temp replacement) {
+    if (src1 == temp) {
+      src1 = replacement;
+    }
+    if (src2 == temp) {
+      src2 = replacement;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    if (dest != null) {
+      sb.append(dest).append(" = ");
+    }
+    sb.append(opcode);
+    if (condition != null) {
+      sb.append(' ').append(condition);
+    }
+    if (symbol != null) {
+      sb.append(' ').append(symbol);
+    }
+    for (Temp use : getUses()) {
+      sb.append(' ').append(use);
+    }
+    if (value != 0) {
+      sb.append(" #").append(value);
+    }
+    if (target != null) {
+      sb.append(" B").append(target.getId());
+    }
+    if (elseTarget != null) {
+      sb.append(" B").append(elseTarget.getId());
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,246 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/* Maps every temp onto one of the callee-saved registers r4 to r11 by linear scan.
+
+   The quads of a function are numbered in layout order; quad i reads its sources at position 2i
+   and writes its destination at 2i + 1. A temp's interval runs from the first to the last position
+   it is live at, whether it is read or written there or is live into or out of the block around
+   it, so variables stay in one register across the statements and loops that use them.
+
+   When every register is taken, the interval with the smallest spill cost is spilled: it is given
+   a frame slot of its own, stored there after each definition and reloaded into a fresh temp
+   before each use, and the function is allocated again. A read or write costs more the more loops
+   surround it, so loop variables are the last to be spilled. The library functions may overwrite
+   r4 to r11, so a temp live across a call to one is always spilled. */
+public class RegisterAllocator {
+
+  public static final int FIRST_REGISTER = 4;
+  public static final int LAST_REGISTER = 11;
+
+  private static class Interval {
+
+    private final Temp temp;
+    private int start = Integer.MAX_VALUE;
+    private int end = Integer.MIN_VALUE;
+    private double cost;
+    private int register;
+
+    private Interval(Temp temp) {
+      this.temp = temp;
+    }
+
+    private void extend(int position) {
+      start = Math.min(start, position);
+      end = Math.max(end, position);
+    }
+  }
+
+  /* The temps reloading or storing a spilled temp, which live for one quad and are never spilled
+     themselves, so that allocation always succeeds. */
+  private final Set<Temp> reloads = new HashSet<>();
+
+  public void allocate(ControlFlowGraph graph) {
+    Set<Temp> spilled = scan(graph);
+    while (!spilled.isEmpty()) {
+      spill(graph, spilled);
+      spilled = scan(graph);
+    }
+  }
+
+  /* Assigns every temp its register, or returns the temps to spill first. */
+  private Set<Temp> scan(ControlFlowGraph graph) {
+
+    Liveness liveness = new Liveness(graph);
+    List<BasicBlock> blocks = graph.getBlocks();
+    int[] loopDepths = loopDepths(blocks);
+
+    Map<Temp, Interval> intervals = new LinkedHashMap<>();
+    Temp[] temps = new Temp[graph.getTempCount()];
+    List<Integer> clobbers = new ArrayList<>();
+
+    int index = 0;
+    for (int b = 0; b < blocks.size(); b++) {
+      BasicBlock block = blocks.get(b);
+      List<Quad> quads = block.getQuads();
+      if (quads.isEmpty()) {
+        continue;
+      }
+
+      double weight = Math.pow(10, Math.min(loopDepths[b], 6));
+      int first = 2 * index;
+
+      for (Quad quad : quads) {
+        for (Temp temp : quad.getUses()) {
+          Interval interval = intervals.computeIfAbsent(temp, Interval::new);
+          interval.extend(2 * index);
+          interval.cost += weight;
+          temps[temp.getNumber()] = temp;
+        }
+        Temp dest = quad.getDest();
+        if (dest != null) {
+          Interval interval = intervals.computeIfAbsent(dest, Interval::new);
+          interval.extend(2 * index + 1);
+          interval.cost += weight;
+          temps[dest.getNumber()] = dest;
+        }
+        if (quad.isClobbering()) {
+          clobbers.add(2 * index);
+        }
+        index++;
+      }
+
+      int last = 2 * index - 1;
+      extendLive(intervals, temps, liveness.getLiveIn(block), first);
+      extendLive(intervals, temps, liveness.getLiveOut(block), last);
+    }
+
+    List<Interval> ordered = new ArrayList<>(intervals.values());
+    ordered.sort(Comparator.comparingInt((Interval interval) -> interval.start)
+        .thenComparingInt(interval -> interval.temp.getNumber()));
+
+    Set<Temp> spilled = new LinkedHashSet<>();
+    List<Interval> active = new ArrayList<>();
+    TreeSet<Integer> free = new TreeSet<>();
+    for (int register = FIRST_REGISTER; register <= LAST_REGISTER; register++) {
+      free.add(register);
+    }
+
+    for (Interval interval : ordered) {
+
+      if (crossesClobber(interval, clobbers)) {
+        spilled.add(interval.temp);
+        continue;
+      }
+
+      /* Release the registers of the intervals that have ended. */
+      active.removeIf(other -> {
+        if (other.end < interval.start) {
+          free.add(other.register);
+          return true;
+        }
+        return false;
+      });
+
+      if (!free.isEmpty()) {
+        interval.register = free.pollFirst();
+        active.add(interval);
+        continue;
+      }
+
+      /* Spill whichever of the competing intervals is cheapest to keep in memory. */
+      Interval victim = reloads.contains(interval.temp) ? null : interval;
+      for (Interval other : active) {
+        if (!reloads.contains(other.temp) && (victim == null || other.cost < victim.cost
+            || other.cost == victim.cost && other.end > victim.end)) {
+          victim = other;
+        }
+      }
+
+      if (victim == null) {
+        throw new IllegalStateException("no register left for " + interval.temp);
+      }
+
+      spilled.add(victim.temp);
+      if (victim != interval) {
+        active.remove(victim);
+        interval.register = victim.register;
+        active.add(interval);
+      }
+    }
+
+    if (spilled.isEmpty()) {
+      for (Interval interval : ordered) {
+        interval.temp.setRegister(interval.register);
+      }
+    }
+
+    return spilled;
+  }
+
+  private void extendLive(Map<Temp, Interval> intervals, Temp[] temps, BitSet live, int position) {
+    for (int t = live.nextSetBit(0); t >= 0; t = live.nextSetBit(t + 1)) {
+      intervals.get(temps[t]).extend(position);
+    }
+  }
+
+  /* The number of loops around each block. Loops are laid out contiguously, so each is the run of
+     blocks from the target of a backward branch to the branch itself. */
+  private int[] loopDepths(List<BasicBlock> blocks) {
+
+    Map<BasicBlock, Integer> positions = new HashMap<>();
+    for (int b = 0; b < blocks.size(); b++) {
+      positions.put(blocks.get(b), b);
+    }
+
+    int[] depths = new int[blocks.size()];
+    for (int b = 0; b < blocks.size(); b++) {
+      for (BasicBlock successor : blocks.get(b).getSuccessors()) {
+        int head = positions.get(successor);
+        if (head <= b) {
+          for (int inside = head; inside <= b; inside++) {
+            depths[inside]++;
+          }
+        }
+      }
+    }
+    return depths;
+  }
+
+  private boolean crossesClobber(Interval interval, List<Integer> clobbers) {
+    for (int position : clobbers) {
+      if (interval.start < position && interval.end > position + 1) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /* Moves the spilled temps into frame slots of their own. */
+  private void spill(ControlFlowGraph graph, Set<Temp> spilled) {
+
+    Map<Temp, Integer> slots = new HashMap<>();
+    for (Temp temp : spilled) {
+      slots.put(temp, graph.newSlot());
+    }
+
+    for (BasicBlock block : graph.getBlocks()) {
+
+      List<Quad> quads = new ArrayList<>(block.getQuads());
+      block.getQuads().clear();
+
+      for (Quad quad : quads) {
+        for (Temp temp : new LinkedHashSet<>(quad.getUses())) {
+          if (slots.containsKey(temp)) {
+            Temp reload = graph.newTemp();
+            reloads.add(reload);
+            block.add(Quad.loadSlot(reload, slots.get(temp), 4));
+            quad.replaceUse(temp, reload);
+          }
+        }
+
+        block.add(quad);
+
+        Temp dest = quad.getDest();
+        if (dest != null && slots.containsKey(dest)) {
+          Temp store = graph.newTemp();
+          reloads.add(store);
+          quad.setDest(store);
+          block.add(Quad.storeSlot(slots.get(dest), store, 4));
+        }
+      }
+    }
+  }
+
+}
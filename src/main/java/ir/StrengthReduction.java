@@ -0,0 +1,67 @@
+package ir;
+
+import java.util.List;
+
+/* Gives the multiplications, divisions and modulos by a constant that constant as their second
+   operand, so instruction selection can replace them with shifts and multiplications in place of
+   a general multiply or a call into the division routines.
+
+   A temp is a constant when its only definition in the function is a CONST. Divisions and modulos
+   by any constant but zero are rewritten, leaving those that trap to the division routines. Only
+   multiplications by 0, 1, -1 and powers of two are, as those need no more than a shift to check
+   for overflow; the constant may be either operand. The CONSTs left unread are deleted by dead code
+   elimination. */
+public class StrengthReduction {
+
+  public void reduce(ControlFlowGraph graph) {
+
+    int[] definitions = new int[graph.getTempCount()];
+    Long[] constants = new Long[graph.getTempCount()];
+    for (BasicBlock block : graph.getBlocks()) {
+      for (Quad quad : block.getQuads()) {
+        if (quad.getDest() != null) {
+          definitions[quad.getDest().getNumber()]++;
+          if (quad.getOpcode() == Quad.Opcode.CONST) {
+            constants[quad.getDest().getNumber()] = quad.getValue();
+          }
+        }
+      }
+    }
+
+    for (BasicBlock block : graph.getBlocks()) {
+      List<Quad> quads = block.getQuads();
+      for (int i = 0; i < quads.size(); i++) {
+        Quad quad = quads.get(i);
+        if (quad.getSrc2() == null) {
+          continue;
+        }
+        Long divisor = constantOf(quad.getSrc2(), definitions, constants);
+        switch (quad.getOpcode()) {
+          case MUL:
+            Long multiplier = constantOf(quad.getSrc1(), definitions, constants);
+            if (divisor != null && isCheapMultiplier(divisor)) {
+              quads.set(i, Quad.binary(Quad.Opcode.MUL, quad.getDest(), quad.getSrc1(), divisor));
+            } else if (multiplier != null && isCheapMultiplier(multiplier)) {
+              quads.set(i, Quad.binary(Quad.Opcode.MUL, quad.getDest(), quad.getSrc2(), multiplier));
+            }
+            break;
+          case DIV:
+          case MOD:
+            if (divisor != null && divisor != 0) {
+              quads.set(i, Quad.binary(quad.getOpcode(), quad.getDest(), quad.getSrc1(), divisor));
+            }
+            break;
+        }
+      }
+    }
+  }
+
+  private static Long constantOf(Temp temp, int[] definitions, Long[] constants) {
+    return definitions[temp.getNumber()] == 1 ? constants[temp.getNumber()] : null;
+  }
+
+  private static boolean isCheapMultiplier(long value) {
+    return value >= -1 && value <= 1 || Long.bitCount(value) == 1 && value <= 1L << 30;
+  }
+
+}
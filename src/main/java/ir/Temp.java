@@ -0,0 +1,33 @@
+package ir;
+
+/* A virtual register of the intermediate representation. There are as many as the lowering
+   needs; the register allocator later maps each one onto a machine register. */
+public class Temp {
+
+  private final int number;
+
+  /* The machine register chosen by the register allocator, or -1 before allocation. */
+  private int register = -1;
+
+  Temp(int number) {
+    this.number = number;
+  }
+
+  public int getNumber() {
+    return number;
+  }
+
+  public int getRegister() {
+    return register;
+  }
+
+  public void setRegister(int register) {
+    this.register = register;
+  }
+
+  @Override
+  public String toString() {
+    return "t" + number;
+  }
+
+}
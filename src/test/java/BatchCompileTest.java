@@ -0,0 +1,136 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchCompileTest {
+
+  private static final String VALID_PROGRAM = "begin\n  println 1\nend\n";
+  private static final String SYNTAX_ERROR_PROGRAM = "begin\n  int x = ;\n  println x\nend\n";
+  private static final String TYPE_ERROR_PROGRAM = "begin\n  int x = 'c'\nend\n";
+  private static final String UNDECLARED_PROGRAM = "begin\n  println y\nend\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /* compileBatch writes to the working directory, so the outputs are removed after each test. */
+  private static final List<String> OUTPUTS = List.of("batchSame.s", "batchValid.s",
+      "batchSyntax.s", "batchType.s", "batchUndeclared.s");
+
+  private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+  @After
+  public void removeOutputs() throws IOException {
+    for (String output : OUTPUTS) {
+      Files.deleteIfExists(Path.of(output));
+    }
+  }
+
+  @Test
+  public void sourcesWithTheSameOutputNameAreRefused() throws IOException {
+
+    Path first = source("a/batchSame.wacc", VALID_PROGRAM);
+    Path second = source("b/batchSame.wacc", VALID_PROGRAM);
+
+    assertEquals(1, compileBatch(first, second));
+    assertEquals(first + " and " + second + " would both be compiled to batchSame.s\n",
+        stderr.toString());
+    assertFalse(Files.exists(Path.of("batchSame.s")));
+  }
+
+  @Test
+  public void rejectedFilesAreReportedInInputOrder() throws IOException {
+
+    Path undeclared = source("batchUndeclared.wacc", UNDECLARED_PROGRAM);
+    Path valid = source("batchValid.wacc", VALID_PROGRAM);
+    Path type = source("batchType.wacc", TYPE_ERROR_PROGRAM);
+
+    compileBatch(undeclared, valid, type);
+
+    assertEquals(report(undeclared) + report(type), stdout.toString());
+    assertEquals("", stderr.toString());
+    assertTrue(Files.exists(Path.of("batchValid.s")));
+  }
+
+  @Test
+  public void syntaxErrorsAreReportedOnStderr() throws IOException {
+
+    Path syntax = source("batchSyntax.wacc", SYNTAX_ERROR_PROGRAM);
+    Path valid = source("batchValid.wacc", VALID_PROGRAM);
+
+    assertEquals(100, compileBatch(syntax, valid));
+    assertEquals(report(syntax), stderr.toString());
+    assertEquals("", stdout.toString());
+  }
+
+  @Test
+  public void theHighestExitCodeIsReturned() throws IOException {
+
+    Path type = source("batchType.wacc", TYPE_ERROR_PROGRAM);
+    Path syntax = source("batchSyntax.wacc", SYNTAX_ERROR_PROGRAM);
+    Path valid = source("batchValid.wacc", VALID_PROGRAM);
+
+    assertEquals(200, compileBatch(type, syntax, valid));
+    assertEquals(0, compileBatch(valid));
+  }
+
+  @Test
+  public void directoriesAreExpandedIntoTheirSourcesInOrder() throws IOException {
+
+    Path directory = folder.newFolder("examples").toPath();
+    Path c = source("examples/c.wacc", VALID_PROGRAM);
+    Path a = source("examples/a.wacc", VALID_PROGRAM);
+    Path b = source("examples/sub/b.wacc", VALID_PROGRAM);
+    source("examples/notes.txt", "not a source");
+    Path single = source("single.wacc", VALID_PROGRAM);
+
+    assertEquals(List.of(single, a, c, b),
+        Compiler.collectSources(List.of(single.toString(), directory.toString())));
+  }
+
+  private Path source(String name, String program) throws IOException {
+    Path source = folder.getRoot().toPath().resolve(name);
+    Files.createDirectories(source.getParent());
+    Files.writeString(source, program);
+    return source;
+  }
+
+  private int compileBatch(Path... sources) throws IOException {
+    PrintStream out = System.out;
+    PrintStream err = System.err;
+    System.setOut(new PrintStream(stdout, true));
+    System.setErr(new PrintStream(stderr, true));
+    try {
+      return Compiler.compileBatch(List.of(sources), CompilerOptions.parse(new String[0]));
+    } finally {
+      System.setOut(out);
+      System.setErr(err);
+    }
+  }
+
+  /* What the batch prints for a rejected source: its path, then the messages it is rejected with
+     when compiled on its own. */
+  private static String report(Path source) throws IOException {
+    try {
+      Compiler.writeAssembly(source, CompilerOptions.parse(new String[0]),
+          CompileStats.DISABLED);
+    } catch (CompileError e) {
+      return source + ":\n" + String.join("\n", e.getErrorMsgs()) + "\n";
+    }
+    fail(source + " was not rejected");
+    return null;
+  }
+
+}
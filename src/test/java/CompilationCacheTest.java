@@ -0,0 +1,197 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompilationCacheTest {
+
+  /* Accepted with a lexer error, as the lexer skips the '$'. */
+  private static final String LEXER_ERROR_PROGRAM = "begin\n  int x = 3 $ ;\n  println x\nend\n";
+  private static final String LEXER_ERROR = "line 2:12 token recognition error at: '$'";
+
+  private static final String SYNTAX_ERROR_PROGRAM = "begin\n  int x = ;\n  println x\nend\n";
+  private static final String SEMANTIC_ERROR_PROGRAM = "begin\n  int x = 'c' $\nend\n";
+
+  private static final String LOOP_PROGRAM = "begin\n  int i = 0 ;\n  while i < 10 do\n"
+      + "    println i / 4 ;\n    i = i + 1\n  done\nend\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /* writeAssembly writes to the working directory, so the outputs are removed after each test. */
+  private static final List<String> OUTPUTS =
+      List.of("cacheLexer.s", "cacheSyntax.s", "cacheSemantic.s", "cacheLoop.s", "cacheLoop2.s");
+
+  @After
+  public void removeOutputs() throws IOException {
+    for (String output : OUTPUTS) {
+      Files.deleteIfExists(Path.of(output));
+    }
+  }
+
+  @Test
+  public void hitCopiesTheAssemblyAndReportsTheLexerErrorsAgain() throws IOException {
+
+    Path source = source("cacheLexer.wacc", LEXER_ERROR_PROGRAM);
+    CompilerOptions options = options();
+
+    CompileStats miss = new CompileStats(source.toString());
+    assertEquals(LEXER_ERROR + "\n", stderrOf(() -> Compiler.writeAssembly(source, options, miss)));
+    String assembly = Files.readString(Path.of("cacheLexer.s"));
+    Files.delete(Path.of("cacheLexer.s"));
+    assertFalse(isCached(miss));
+
+    CompileStats hit = new CompileStats(source.toString());
+    assertEquals(LEXER_ERROR + "\n", stderrOf(() -> Compiler.writeAssembly(source, options, hit)));
+    assertEquals(assembly, Files.readString(Path.of("cacheLexer.s")));
+    assertTrue(isCached(hit));
+  }
+
+  @Test
+  public void syntaxErrorsAreCachedWithTheirExitCodeAndStream() throws IOException {
+
+    Path source = source("cacheSyntax.wacc", SYNTAX_ERROR_PROGRAM);
+    CompilerOptions options = options();
+
+    CompileError first = rejection(source, options, new CompileStats(source.toString()));
+    CompileStats hit = new CompileStats(source.toString());
+    CompileError cached = rejection(source, options, hit);
+
+    assertTrue(isCached(hit));
+    assertEquals(100, cached.getExitCode());
+    assertTrue(cached.isFromParser());
+    assertEquals(first.getErrorMsgs(), cached.getErrorMsgs());
+  }
+
+  @Test
+  public void semanticErrorsAreCachedWithTheLexerErrorsBeforeThem() throws IOException {
+
+    Path source = source("cacheSemantic.wacc", SEMANTIC_ERROR_PROGRAM);
+    CompilerOptions options = options();
+
+    CompileError[] errors = new CompileError[2];
+    String missOutput = stderrOf(
+        () -> errors[0] = rejection(source, options, new CompileStats(source.toString())));
+    CompileStats hit = new CompileStats(source.toString());
+    String hitOutput = stderrOf(() -> errors[1] = rejection(source, options, hit));
+
+    assertTrue(isCached(hit));
+    assertTrue(missOutput.contains("token recognition error at: '$'"));
+    assertEquals(missOutput, hitOutput);
+    assertEquals(200, errors[1].getExitCode());
+    assertFalse(errors[1].isFromParser());
+    assertEquals(errors[0].getErrorMsgs(), errors[1].getErrorMsgs());
+  }
+
+  @Test
+  public void entriesPastTheCacheSizeAreEvictedLeastRecentlyUsedFirst() throws IOException {
+
+    Path first = source("cacheLoop.wacc", LOOP_PROGRAM);
+    Path second = source("cacheLoop2.wacc", LOOP_PROGRAM.replace("10", "20"));
+    Path directory = folder.getRoot().toPath().resolve("cache");
+
+    Compiler.writeAssembly(first, options(), CompileStats.DISABLED);
+    Path firstEntry = entries(directory).get(0);
+    Files.setLastModifiedTime(firstEntry, FileTime.fromMillis(0));
+
+    /* Room for one entry but not two. */
+    long size = Files.size(firstEntry) * 3 / 2;
+    CompilerOptions small = CompilerOptions.parse(
+        new String[] {"--cache=" + directory, "--cache-size=" + size});
+    Compiler.writeAssembly(second, small, CompileStats.DISABLED);
+
+    List<Path> entries = entries(directory);
+    assertEquals(1, entries.size());
+    assertNotEquals(firstEntry, entries.get(0));
+
+    CompileStats again = new CompileStats(first.toString());
+    Compiler.writeAssembly(first, small, again);
+    assertFalse(isCached(again));
+  }
+
+  @Test
+  public void theOptimisationLevelIsPartOfTheKey() throws IOException {
+
+    Path source = source("cacheLoop.wacc", LOOP_PROGRAM);
+    CompilerOptions optimised = options();
+    CompilerOptions unoptimised = CompilerOptions.parse(new String[] {
+        "--cache=" + folder.getRoot().toPath().resolve("cache"), "--opt-level=0"});
+
+    byte[] bytes = Files.readAllBytes(source);
+    assertNotEquals(optimised.getCache().key(bytes, optimised.getCodegenFlags()),
+        unoptimised.getCache().key(bytes, unoptimised.getCodegenFlags()));
+
+    Compiler.writeAssembly(source, optimised, CompileStats.DISABLED);
+    CompileStats other = new CompileStats(source.toString());
+    Compiler.writeAssembly(source, unoptimised, other);
+    assertFalse(isCached(other));
+
+    CompileStats same = new CompileStats(source.toString());
+    Compiler.writeAssembly(source, unoptimised, same);
+    assertTrue(isCached(same));
+  }
+
+  private Path source(String name, String program) throws IOException {
+    Path source = folder.getRoot().toPath().resolve(name);
+    Files.writeString(source, program);
+    return source;
+  }
+
+  private CompilerOptions options() throws IOException {
+    return CompilerOptions.parse(
+        new String[] {"--cache=" + folder.getRoot().toPath().resolve("cache")});
+  }
+
+  private static List<Path> entries(Path directory) throws IOException {
+    try (Stream<Path> list = Files.list(directory)) {
+      return list.collect(Collectors.toList());
+    }
+  }
+
+  private static CompileError rejection(Path source, CompilerOptions options, CompileStats stats)
+      throws IOException {
+    try {
+      Compiler.writeAssembly(source, options, stats);
+    } catch (CompileError e) {
+      return e;
+    }
+    fail(source + " was not rejected");
+    return null;
+  }
+
+  private static boolean isCached(CompileStats stats) {
+    return CompileStats.toJson(List.of(stats)).contains("\"cached\": true");
+  }
+
+  private interface Compilation {
+    void run() throws IOException;
+  }
+
+  private static String stderrOf(Compilation compilation) throws IOException {
+    PrintStream stderr = System.err;
+    ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(captured, true));
+    try {
+      compilation.run();
+    } finally {
+      System.setErr(stderr);
+    }
+    return captured.toString();
+  }
+
+}
@@ -0,0 +1,183 @@
+import assembly.instructions.Instruction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/* Compiles x / d and x % d for constant divisors d and runs the generated instructions on an
+   interpreter of the few ARM instructions they use, checking the results against Java's / and %,
+   which round towards zero as __aeabi_idiv does. */
+public class DivisionByConstantTest {
+
+  private static final int SP = 13;
+
+  @Test
+  public void quotientsAndRemaindersMatchJava() {
+
+    List<Long> divisors = new ArrayList<>(List.of(1L, -1L, 7L, -7L, 3L, 10L, -2147483648L));
+    for (int k = 1; k <= 30; k++) {
+      divisors.add(1L << k);
+      divisors.add(-(1L << k));
+    }
+
+    List<Integer> dividends = new ArrayList<>(List.of(0, 1, -1, 6, -6, 7, -7, 8, -8, 13, -13,
+        Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE + 1, Integer.MAX_VALUE - 1));
+    Random random = new Random(0);
+    for (int i = 0; i < 200; i++) {
+      dividends.add(random.nextInt());
+      dividends.add(random.nextInt(1000) - 500);
+    }
+
+    for (long divisor : divisors) {
+      String literal = divisor < 0 ? "(" + divisor + ")" : String.valueOf(divisor);
+      List<Instruction> program = Compiler.generateAssembly(CharStreams.fromString(
+          "begin\n"
+          + "  int quotient(int x) is\n    return x / " + literal + "\n  end\n"
+          + "  int remainder(int x) is\n    return x % " + literal + "\n  end\n"
+          + "  int q = call quotient(1) ;\n"
+          + "  int r = call remainder(1) ;\n"
+          + "  println q + r\n"
+          + "end\n"), Converter.DEFAULT_OPTIMISATION_LEVEL, warning -> { });
+      List<String> quotient = function(program, "quotient");
+      List<String> remainder = function(program, "remainder");
+
+      for (int dividend : dividends) {
+        String division = dividend + " / " + divisor;
+        assertEquals(division, dividend / (int) divisor, run(quotient, dividend));
+        assertEquals(dividend + " % " + divisor, dividend % (int) divisor,
+            run(remainder, dividend));
+      }
+    }
+  }
+
+  /* The instructions of a function, from its label to the POP that returns. */
+  private static List<String> function(List<Instruction> program, String name) {
+    List<String> body = new ArrayList<>();
+    boolean inside = false;
+    for (Instruction instruction : program) {
+      String line = instruction.toString();
+      if (line.endsWith("_f_" + name + ":")) {
+        inside = true;
+      } else if (inside) {
+        body.add(line);
+        if (line.startsWith("POP")) {
+          return body;
+        }
+      }
+    }
+    fail("no function " + name);
+    return null;
+  }
+
+  /* Calls a function of one int argument, pushed as the caller pushes it, and returns r0. */
+  private static int run(List<String> function, int argument) {
+
+    int[] registers = new int[16];
+    Map<Integer, Integer> memory = new HashMap<>();
+    registers[SP] = 4096;
+    memory.put(registers[SP], argument);
+
+    for (String line : function) {
+      String mnemonic = line.substring(0, line.indexOf(' '));
+      String[] operands = line.substring(line.indexOf(' ') + 1).split(", ");
+
+      switch (mnemonic) {
+        case "PUSH":
+          String[] pushed = line.substring(line.indexOf('{') + 1, line.indexOf('}')).split(", ");
+          registers[SP] -= 4 * pushed.length;
+          for (int i = 0; i < pushed.length; i++) {
+            memory.put(registers[SP] + 4 * i, registers[register(pushed[i])]);
+          }
+          break;
+        case "POP":
+          return registers[0];
+        case "LDR":
+          if (operands[1].startsWith("=")) {
+            registers[register(operands[0])] = Integer.parseInt(operands[1].substring(1));
+          } else {
+            int offset = operands.length > 2
+                ? Integer.parseInt(operands[2].substring(1, operands[2].length() - 1)) : 0;
+            registers[register(operands[0])] =
+                memory.get(registers[register(operands[1].replaceAll("[\\[\\]]", ""))] + offset);
+          }
+          break;
+        case "MOV":
+          registers[register(operands[0])] = operand2(registers, operands, 1);
+          break;
+        case "ADD":
+          registers[register(operands[0])] =
+              registers[register(operands[1])] + operand2(registers, operands, 2);
+          break;
+        case "SUB":
+          registers[register(operands[0])] =
+              registers[register(operands[1])] - operand2(registers, operands, 2);
+          break;
+        case "RSB":
+          registers[register(operands[0])] =
+              operand2(registers, operands, 2) - registers[register(operands[1])];
+          break;
+        case "MUL":
+          registers[register(operands[0])] =
+              registers[register(operands[1])] * registers[register(operands[2])];
+          break;
+        case "SMULL":
+          long product =
+              (long) registers[register(operands[2])] * registers[register(operands[3])];
+          registers[register(operands[0])] = (int) product;
+          registers[register(operands[1])] = (int) (product >> 32);
+          break;
+        default:
+          fail("unexpected instruction " + line);
+      }
+    }
+    fail("no return");
+    return 0;
+  }
+
+  /* The value of the flexible second operand starting at operands[first]: an immediate, a
+     register, or a register shifted by a constant. */
+  private static int operand2(int[] registers, String[] operands, int first) {
+
+    if (operands[first].startsWith("#")) {
+      return Integer.parseInt(operands[first].substring(1));
+    }
+    int value = registers[register(operands[first])];
+    if (operands.length == first + 1) {
+      return value;
+    }
+
+    String[] shift = operands[first + 1].split(" #");
+    int amount = Integer.parseInt(shift[1]);
+    switch (shift[0]) {
+      case "LSL":
+        return value << amount;
+      case "LSR":
+        return value >>> amount;
+      case "ASR":
+        return value >> amount;
+      default:
+        fail("unexpected shift " + operands[first + 1]);
+        return 0;
+    }
+  }
+
+  private static int register(String name) {
+    switch (name) {
+      case "sp":
+        return SP;
+      case "lr":
+        return 14;
+      case "pc":
+        return 15;
+      default:
+        return Integer.parseInt(name.substring(1));
+    }
+  }
+
+}
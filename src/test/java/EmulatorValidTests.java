@@ -430,4 +430,15 @@ public class EmulatorValidTests {
     assert examples != null;
     runTests(examples);
   }
+
+  @Test
+  public void optimisationTests() throws IOException {
+    System.setSecurityManager(securityManager);
+
+    File directory = new File("wacc_examples/valid/optimisation/");
+    File[] examples = directory.listFiles();
+
+    assert examples != null;
+    runTests(examples);
+  }
 }
@@ -0,0 +1,131 @@
+import antlr.BasicLexer;
+import antlr.BasicParser;
+import ast.Program;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParserFallbackTest {
+
+  private static final String LEXER_ERROR_PROGRAM =
+      "begin\n  int x = 3 $ ;\n  if x > 2 then\n    println x\n  else\n    skip\n  fi\nend\n";
+
+  /* A token stream whose first parse is cancelled once the parser reaches a given token, as the
+     SLL pass is when it rejects a program. The grammar has no program that SLL prediction rejects
+     and full LL accepts, so this stands in for one. */
+  private static class RejectedBySll extends LexedTokenStream {
+
+    private final int rejectAt;
+    private boolean rejected = false;
+
+    RejectedBySll(CharStream input, int rejectAt) {
+      super(input);
+      this.rejectAt = rejectAt;
+    }
+
+    @Override
+    public int LA(int i) {
+      if (!rejected && index() >= rejectAt) {
+        rejected = true;
+        throw new ParseCancellationException();
+      }
+      return super.LA(i);
+    }
+
+  }
+
+  @Test
+  public void programRejectedBySllIsParsedAgainInFullLl() {
+
+    RejectedBySll tokens = new RejectedBySll(CharStreams.fromString(LEXER_ERROR_PROGRAM), 8);
+    List<String> warnings = new ArrayList<>();
+    ParseTree tree = Compiler.parse(tokens, warnings::add);
+
+    assertTrue(tokens.rejected);
+    assertEquals(llTree(LEXER_ERROR_PROGRAM), tree.toStringTree());
+    assertEquals(List.of("line 2:12 token recognition error at: '$'"), warnings);
+
+    Program ast = (Program) new ASTBuilder().visit(tree);
+    SemanticAnalysis semanticAnalysis = new SemanticAnalysis();
+    semanticAnalysis.traverse(ast);
+    assertEquals(0, (int) semanticAnalysis.getNumberOfErrors());
+  }
+
+  @Test
+  public void validProgramsParseAsInFullLl() throws IOException {
+    for (File file : examples(new File("wacc_examples/valid"))) {
+      String program = CharStreams.fromFileName(file.toString()).toString();
+      ParseTree tree =
+          Compiler.parse(Compiler.tokenize(CharStreams.fromString(program)), warning -> { });
+      assertEquals(file.toString(), llTree(program), tree.toStringTree());
+    }
+  }
+
+  @Test
+  public void lexerAndParserErrorsAreReportedAsByThePlainParser() {
+    assertReportedAsByThePlainParser("begin\n  int x = 3 $ ;\n  int y = ;\n  println x\nend\n");
+    assertReportedAsByThePlainParser("begin\n  int y = ;\n  int x = 3 $ ;\n  println # x\nend\n");
+    assertReportedAsByThePlainParser("begin\n  int x = $ ;\n  println x ~\nend\n");
+    assertReportedAsByThePlainParser("begin\n  skip ;\nend ?\n");
+  }
+
+  /* Compares the errors against a parse with ANTLR's default listeners, which print each of them
+     to stderr as it is found, the lexer's among the parser's. */
+  private static void assertReportedAsByThePlainParser(String program) {
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    PrintStream stderr = System.err;
+    System.setErr(new PrintStream(expected, true));
+    try {
+      new BasicParser(new CommonTokenStream(new BasicLexer(CharStreams.fromString(program))))
+          .prog();
+    } finally {
+      System.setErr(stderr);
+    }
+
+    try {
+      Compiler.analyse(CharStreams.fromString(program));
+    } catch (CompileError e) {
+      assertEquals(100, e.getExitCode());
+      assertTrue(e.isFromParser());
+      assertEquals(expected.toString(), String.join("\n", e.getErrorMsgs()) + "\n");
+      return;
+    }
+    fail(program + " was not rejected");
+  }
+
+  private static String llTree(String program) {
+    BasicParser parser =
+        new BasicParser(new CommonTokenStream(new BasicLexer(CharStreams.fromString(program))));
+    parser.removeErrorListeners();
+    return parser.prog().toStringTree();
+  }
+
+  private static List<File> examples(File directory) {
+    List<File> files = new ArrayList<>();
+    File[] entries = directory.listFiles();
+    assert entries != null;
+    for (File entry : entries) {
+      if (entry.isDirectory()) {
+        files.addAll(examples(entry));
+      } else if (entry.getName().endsWith(".wacc")) {
+        files.add(entry);
+      }
+    }
+    return files;
+  }
+
+}
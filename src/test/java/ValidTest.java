@@ -258,6 +258,17 @@ public class ValidTest {
     runTests(examples);
   }
 
+  @Test
+  public void optimisationTests() throws IOException {
+    System.setSecurityManager(securityManager);
+
+    File directory = new File("wacc_examples/valid/optimisation/");
+    File[] examples = directory.listFiles();
+
+    assert examples != null;
+    runTests(examples);
+  }
+
   @Test
   public void functionOverloadingTests() throws IOException {
     System.setSecurityManager(securityManager);
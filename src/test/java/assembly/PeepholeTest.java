@@ -0,0 +1,123 @@
+package assembly;
+
+import assembly.instructions.ADD;
+import assembly.instructions.Branch;
+import assembly.instructions.Instruction;
+import assembly.instructions.LABEL;
+import assembly.instructions.LDR;
+import assembly.instructions.MOV;
+import assembly.instructions.STR;
+import assembly.instructions.SUB;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PeepholeTest {
+
+  private static final Register R4 = new Register(4);
+  private static final Register R5 = new Register(5);
+  private static final Register R6 = new Register(6);
+  private static final Register SP = new Register(13);
+
+  @Test
+  public void selfMoveIsDeleted() {
+    assertRewrites(List.of(new MOV(R4, new Operand2(R4))));
+  }
+
+  @Test
+  public void shiftedOrConditionalSelfMoveIsKept() {
+    List<Instruction> shifted = List.of(new MOV(R4, new Operand2(R4, Shift.LSL, 2)));
+    assertRewrites(shifted, "MOV r4, r4, LSL #2");
+    List<Instruction> conditional = List.of(new MOV(R4, new Operand2(R4), Conditionals.EQ));
+    assertRewrites(conditional, "MOVEQ r4, r4");
+  }
+
+  @Test
+  public void moveBackIsDeleted() {
+    assertRewrites(List.of(new MOV(R4, new Operand2(R5)), new MOV(R5, new Operand2(R4))),
+        "MOV r4, r5");
+  }
+
+  @Test
+  public void moveToAThirdRegisterIsKept() {
+    assertRewrites(List.of(new MOV(R4, new Operand2(R5)), new MOV(R6, new Operand2(R4))),
+        "MOV r4, r5", "MOV r6, r4");
+  }
+
+  @Test
+  public void loadOfAWordJustStoredBecomesAMove() {
+    assertRewrites(List.of(new STR(R4, new Operand2(SP, 4)), new LDR(R5, new Operand2(SP, 4))),
+        "STR r4, [sp, #4]", "MOV r5, r4");
+    assertRewrites(List.of(new STR(R4, new Operand2(SP, 4)), new LDR(R4, new Operand2(SP, 4))),
+        "STR r4, [sp, #4]");
+  }
+
+  @Test
+  public void loadsOfBytesOtherAddressesOrAfterAPushAreKept() {
+    assertRewrites(
+        List.of(new STR(R4, new Operand2(SP, 4), "B"), new LDR(R5, new Operand2(SP, 4), "SB")),
+        "STRB r4, [sp, #4]", "LDRSB r5, [sp, #4]");
+    assertRewrites(List.of(new STR(R4, new Operand2(SP, 4)), new LDR(R5, new Operand2(SP, 8))),
+        "STR r4, [sp, #4]", "LDR r5, [sp, #8]");
+    assertRewrites(
+        List.of(new STR(R4, new Operand2(SP, -4)).setExclaim(), new LDR(R5, new Operand2(SP, -4))),
+        "STR r4, [sp, #-4]!", "LDR r5, [sp, #-4]");
+  }
+
+  @Test
+  public void branchToTheNextLabelIsDeleted() {
+    assertRewrites(List.of(new Branch("L0"), new LABEL("L0:")), "L0:");
+    assertRewrites(List.of(new Branch("L0", Conditionals.EQ), new LABEL("L0:")), "L0:");
+  }
+
+  @Test
+  public void callsAndBranchesElsewhereAreKept() {
+    assertRewrites(List.of(new Branch("L0").setSuffix("L"), new LABEL("L0:")), "BL L0", "L0:");
+    assertRewrites(List.of(new Branch("L1"), new LABEL("L0:")), "B L1", "L0:");
+  }
+
+  @Test
+  public void stackAdjustmentsAreCombined() {
+    assertRewrites(List.of(new SUB(SP, SP, new Operand2(4)), new ADD(SP, SP, new Operand2(4))));
+    assertRewrites(List.of(new ADD(SP, SP, new Operand2(4)), new ADD(SP, SP, new Operand2(8))),
+        "ADD sp, sp, #12");
+    assertRewrites(List.of(new SUB(SP, SP, new Operand2(8)), new ADD(SP, SP, new Operand2(4))),
+        "SUB sp, sp, #4");
+  }
+
+  @Test
+  public void stackAdjustmentsThatCannotBeEncodedTogetherAreKept() {
+    assertRewrites(List.of(new ADD(SP, SP, new Operand2(256)), new ADD(SP, SP, new Operand2(1))),
+        "ADD sp, sp, #256", "ADD sp, sp, #1");
+    assertRewrites(
+        List.of(new ADD(SP, SP, new Operand2(4), Flags.S), new ADD(SP, SP, new Operand2(4))),
+        "ADDS sp, sp, #4", "ADD sp, sp, #4");
+  }
+
+  @Test
+  public void rewritesExposingOthersAreCaughtInOnePass() {
+
+    /* Deleting the self move leaves the two adjustments of sp next to each other. */
+    Peephole peephole = new Peephole(Peephole.standardRules());
+    List<Instruction> output = peephole.optimise(List.of(new SUB(SP, SP, new Operand2(4)),
+        new MOV(R4, new Operand2(R4)), new ADD(SP, SP, new Operand2(4)), new Branch("L0"),
+        new LABEL("L0:")));
+
+    assertEquals(List.of("L0:"), text(output));
+    assertEquals(1, (int) peephole.getHits().get("selfMove"));
+    assertEquals(1, (int) peephole.getHits().get("stackAdjust"));
+    assertEquals(1, (int) peephole.getHits().get("branchToNext"));
+  }
+
+  private static void assertRewrites(List<Instruction> input, String... expected) {
+    assertEquals(List.of(expected),
+        text(new Peephole(Peephole.standardRules()).optimise(input)));
+  }
+
+  private static List<String> text(List<Instruction> instructions) {
+    return instructions.stream().map(Instruction::toString).collect(Collectors.toList());
+  }
+
+}
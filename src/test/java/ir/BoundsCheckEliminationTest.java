@@ -0,0 +1,95 @@
+package ir;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/* Each graph is the loop while i < len a do ... done, laid out as IRBuilder lays it out, with the
+   index i in a temp written before the loop and possibly in the body. */
+public class BoundsCheckEliminationTest {
+
+  private final ControlFlowGraph graph = new ControlFlowGraph("main", 1, new int[0]);
+  private final BasicBlock start = graph.newBlock();
+  private final BasicBlock body = graph.newBlock();
+  private final BasicBlock test = graph.newBlock();
+  private final BasicBlock exit = graph.newBlock();
+  private final Temp array = graph.newTemp();
+  private final Temp index = graph.newTemp();
+  private final Temp one = graph.newTemp();
+
+  @Test
+  public void checkOfAnIndexCountingUpFromZeroIsDeleted() {
+    buildLoop(0);
+    body.add(Quad.checkBounds(index, array));
+    increment(Quad.Opcode.ADD);
+
+    assertEquals(0, checksLeft());
+  }
+
+  @Test
+  public void checkAfterIncrementingTheIndexIsKept() {
+    buildLoop(0);
+    body.add(Quad.checkBounds(index, array));
+    increment(Quad.Opcode.ADD);
+    body.add(Quad.checkBounds(index, array));
+
+    assertEquals(1, checksLeft());
+  }
+
+  @Test
+  public void checksOfAnIndexCountingDownAreKept() {
+    buildLoop(0);
+    body.add(Quad.checkBounds(index, array));
+    increment(Quad.Opcode.SUB);
+    body.add(Quad.checkBounds(index, array));
+
+    assertEquals(2, checksLeft());
+  }
+
+  @Test
+  public void checkOfAnIndexStartingNegativeIsKept() {
+    buildLoop(-1);
+    body.add(Quad.checkBounds(index, array));
+    increment(Quad.Opcode.ADD);
+
+    assertEquals(1, checksLeft());
+  }
+
+  private void buildLoop(long first) {
+    start.add(Quad.loadSlot(array, 0, 4));
+    start.add(Quad.constant(index, first));
+    start.add(Quad.constant(one, 1));
+    start.add(Quad.jump(test));
+  }
+
+  private void increment(Quad.Opcode opcode) {
+    body.add(Quad.binary(opcode, index, index, one));
+  }
+
+  /* Ends the body and the loop, runs the pass and counts the checks still in the body. */
+  private int checksLeft() {
+    Temp length = graph.newTemp();
+    Temp condition = graph.newTemp();
+    body.add(Quad.jump(test));
+    test.add(Quad.length(length, array));
+    test.add(Quad.compare(Condition.LT, condition, index, length));
+    test.add(Quad.branch(condition, body, exit));
+    exit.add(Quad.exit(one));
+
+    graph.addBlock(start);
+    graph.addBlock(body);
+    graph.addBlock(test);
+    graph.addBlock(exit);
+
+    new BoundsCheckElimination().eliminate(graph);
+
+    int checks = 0;
+    for (Quad quad : body.getQuads()) {
+      if (quad.getOpcode() == Quad.Opcode.CHECK_BOUNDS) {
+        checks++;
+      }
+    }
+    return checks;
+  }
+
+}
@@ -0,0 +1,131 @@
+package ir;
+
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/* Each graph is a while loop laid out as IRBuilder lays it out: the start jumps to the test after
+   the body, which branches back to the body or on to the exit. The loop reads slot 0 in its test
+   and stores to slot 1 in its body. */
+public class LoopInvariantCodeMotionTest {
+
+  private ControlFlowGraph graph;
+  private BasicBlock start;
+  private BasicBlock body;
+  private BasicBlock test;
+  private BasicBlock exit;
+  private Temp zero;
+  private Temp ten;
+
+  @Before
+  public void buildStart() {
+    graph = new ControlFlowGraph("main", 2, new int[0]);
+    start = graph.newBlock();
+    body = graph.newBlock();
+    test = graph.newBlock();
+    exit = graph.newBlock();
+
+    zero = graph.newTemp();
+    ten = graph.newTemp();
+    start.add(Quad.constant(zero, 0));
+    start.add(Quad.constant(ten, 10));
+    start.add(Quad.jump(test));
+  }
+
+  @Test
+  public void trappingQuadIsNotHoistedFromTheBody() {
+
+    /* The body may never run, and dividing by zero ahead of the loop would trap when it did not. */
+    Quad division = Quad.binary(Quad.Opcode.DIV, graph.newTemp(), ten, zero);
+    body.add(division);
+    body.add(Quad.storeSlot(1, division.getDest(), 4));
+    body.add(Quad.jump(test));
+    addTest();
+
+    new LoopInvariantCodeMotion().hoist(graph);
+
+    assertTrue(body.getQuads().contains(division));
+    assertFalse(start.getQuads().contains(division));
+  }
+
+  @Test
+  public void trappingQuadIsHoistedFromTheTest() {
+
+    body.add(Quad.jump(test));
+    Quad division = Quad.binary(Quad.Opcode.DIV, graph.newTemp(), ten, zero);
+    test.add(division);
+    addTest();
+    body.getQuads().add(0, Quad.storeSlot(1, division.getDest(), 4));
+
+    new LoopInvariantCodeMotion().hoist(graph);
+
+    assertFalse(test.getQuads().contains(division));
+    assertTrue(start.getQuads().contains(division));
+  }
+
+  @Test
+  public void trappingQuadAfterAnEffectIsNotHoisted() {
+
+    body.add(Quad.jump(test));
+    test.add(Quad.runtime("p_print_int", ten));
+    Quad division = Quad.binary(Quad.Opcode.DIV, graph.newTemp(), ten, zero);
+    test.add(division);
+    addTest();
+    body.getQuads().add(0, Quad.storeSlot(1, division.getDest(), 4));
+
+    new LoopInvariantCodeMotion().hoist(graph);
+
+    assertTrue(test.getQuads().contains(division));
+  }
+
+  @Test
+  public void quadThatCannotTrapIsHoistedFromTheBody() {
+
+    Quad comparison = Quad.compare(Condition.LT, graph.newTemp(), ten, zero);
+    body.add(comparison);
+    body.add(Quad.storeSlot(1, comparison.getDest(), 4));
+    body.add(Quad.jump(test));
+    addTest();
+
+    new LoopInvariantCodeMotion().hoist(graph);
+
+    assertFalse(body.getQuads().contains(comparison));
+    assertTrue(start.getQuads().contains(comparison));
+  }
+
+  @Test
+  public void quadReadingATempWrittenInTheLoopStays() {
+
+    Quad counter = Quad.loadSlot(graph.newTemp(), 1, 4);
+    Quad increment = Quad.binary(Quad.Opcode.ADD, graph.newTemp(), counter.getDest(), ten);
+    body.add(counter);
+    body.add(increment);
+    body.add(Quad.storeSlot(1, increment.getDest(), 4));
+    body.add(Quad.jump(test));
+    addTest();
+
+    new LoopInvariantCodeMotion().hoist(graph);
+
+    assertEquals(List.of(counter, increment), body.getQuads().subList(0, 2));
+  }
+
+  /* Ends the test with a branch on slot 0 being below zero and adds the blocks in layout order. */
+  private void addTest() {
+    Temp variable = graph.newTemp();
+    Temp condition = graph.newTemp();
+    test.add(Quad.loadSlot(variable, 0, 4));
+    test.add(Quad.compare(Condition.LT, condition, variable, zero));
+    test.add(Quad.branch(condition, body, exit));
+    exit.add(Quad.exit(zero));
+
+    graph.addBlock(start);
+    graph.addBlock(body);
+    graph.addBlock(test);
+    graph.addBlock(exit);
+  }
+
+}
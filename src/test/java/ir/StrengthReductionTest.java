@@ -0,0 +1,86 @@
+package ir;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class StrengthReductionTest {
+
+  private final ControlFlowGraph graph = new ControlFlowGraph("main", 1, new int[0]);
+  private final BasicBlock block = graph.newBlock();
+  private final Temp variable = graph.newTemp();
+
+  {
+    graph.addBlock(block);
+    block.add(Quad.loadSlot(variable, 0, 4));
+  }
+
+  @Test
+  public void divisionAndModuloByAConstantTakeItAsAValue() {
+    for (long divisor : new long[] {1, -1, 2, -2, 1 << 30, Integer.MIN_VALUE, 7, -7}) {
+      for (Quad.Opcode opcode : new Quad.Opcode[] {Quad.Opcode.DIV, Quad.Opcode.MOD}) {
+        Quad reduced = reduce(opcode, divisor, false);
+        assertSame(variable, reduced.getSrc1());
+        assertNull(reduced.getSrc2());
+        assertEquals(divisor, reduced.getValue());
+      }
+    }
+  }
+
+  @Test
+  public void divisionByZeroIsLeftToTrap() {
+    Quad reduced = reduce(Quad.Opcode.DIV, 0, false);
+    assertEquals(Quad.Opcode.DIV, reduced.getOpcode());
+    assertEquals(2, reduced.getUses().size());
+  }
+
+  @Test
+  public void multiplicationByAPowerOfTwoTakesItAsAValueOnEitherSide() {
+    for (long multiplier : new long[] {0, 1, -1, 2, 8, 1 << 30}) {
+      for (boolean constantFirst : new boolean[] {false, true}) {
+        Quad reduced = reduce(Quad.Opcode.MUL, multiplier, constantFirst);
+        assertSame(variable, reduced.getSrc1());
+        assertNull(reduced.getSrc2());
+        assertEquals(multiplier, reduced.getValue());
+      }
+    }
+  }
+
+  @Test
+  public void otherMultiplicationsAreLeftAlone() {
+    for (long multiplier : new long[] {3, 7, -2, 1L << 31}) {
+      assertEquals(2, reduce(Quad.Opcode.MUL, multiplier, false).getUses().size());
+    }
+  }
+
+  @Test
+  public void tempWrittenTwiceIsNotAConstant() {
+    Temp divisor = graph.newTemp();
+    block.add(Quad.constant(divisor, 7));
+    block.add(Quad.loadSlot(divisor, 0, 4));
+    Quad division = Quad.binary(Quad.Opcode.DIV, graph.newTemp(), variable, divisor);
+    block.add(division);
+
+    new StrengthReduction().reduce(graph);
+
+    assertSame(division, block.getQuads().get(block.getQuads().size() - 1));
+    assertSame(divisor, division.getSrc2());
+  }
+
+  /* Runs the pass over opcode applied to the variable and a CONST of value, in that order unless
+     constantFirst is set, and returns what the quad became. */
+  private Quad reduce(Quad.Opcode opcode, long value, boolean constantFirst) {
+    Temp constant = graph.newTemp();
+    block.add(Quad.constant(constant, value));
+    Temp dest = graph.newTemp();
+    block.add(constantFirst ? Quad.binary(opcode, dest, constant, variable)
+        : Quad.binary(opcode, dest, variable, constant));
+
+    new StrengthReduction().reduce(graph);
+
+    return block.getQuads().get(block.getQuads().size() - 1);
+  }
+
+}